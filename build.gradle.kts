@@ -3,6 +3,7 @@ plugins {
     id("application")
     id("maven-publish")
     id("com.github.johnrengelman.shadow") version "7.1.2"
+    id("me.champeau.jmh") version "0.7.2"
 }
 
 
@@ -48,10 +49,47 @@ tasks.compileTestJava {
 }
 
 tasks.test {
-    useJUnitPlatform()
+    useJUnitPlatform {
+        // wall clock assertions, too noisy for shared machines, -Ptiming to run them
+        if (!project.hasProperty("timing")) {
+            excludeTags("timing")
+        }
+    }
+    javaLauncher.set(javaToolchains.launcherFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
+}
+
+// round trips every class of the jdk it runs on, e.g. -Pmodules=java.base,java.desktop to only do some
+tasks.register<JavaExec>("jdkRoundTrip") {
+    group = "verification"
+    description = "Round trips every class in the jdk's jrt:/ filesystem and reports throughput, per module timing and failures"
+    classpath = sourceSets.main.get().runtimeClasspath
+    mainClass.set(application.mainClass)
     javaLauncher.set(javaToolchains.launcherFor {
         languageVersion.set(JavaLanguageVersion.of(21))
     })
+    args("--jdk")
+    if (project.hasProperty("modules")) {
+        args("--modules", project.property("modules") as String)
+    }
+}
+
+jmh {
+    // the test1..test9 World classes are part of the corpus
+    includeTests.set(true)
+    profilers.add("gc")
+    resultFormat.set("JSON")
+    // e.g. -PjmhIncludes=TokenReader to only run some of them
+    if (project.hasProperty("jmhIncludes")) {
+        includes.add(project.property("jmhIncludes") as String)
+    }
+}
+
+tasks.named<JavaCompile>("compileJmhJava") {
+    javaCompiler.set(javaToolchains.compilerFor {
+        languageVersion.set(JavaLanguageVersion.of(21))
+    })
 }
 
 tasks.jar {
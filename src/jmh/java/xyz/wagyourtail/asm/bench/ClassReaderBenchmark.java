@@ -0,0 +1,39 @@
+package xyz.wagyourtail.asm.bench;
+
+import org.objectweb.asm.ClassWriter;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.wagyourtail.asm.test.NoopClassVisitor;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.file.ClassReader;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class ClassReaderBenchmark {
+
+    @Benchmark
+    public void acceptNoop(Corpus corpus) throws IOException {
+        NoopClassVisitor visitor = new NoopClassVisitor();
+        for (String text : corpus.texts) {
+            new ClassReader(new TokenReader(new StringReader(text))).accept(visitor);
+        }
+    }
+
+    @Benchmark
+    public void acceptClassWriter(Corpus corpus, Blackhole bh) throws IOException {
+        for (String text : corpus.texts) {
+            ClassWriter writer = Main.classWriter(corpus.profile.writerFlags(), Corpus.class.getClassLoader());
+            new ClassReader(new TokenReader(new StringReader(text))).accept(writer);
+            bh.consume(writer.toByteArray());
+        }
+    }
+
+}
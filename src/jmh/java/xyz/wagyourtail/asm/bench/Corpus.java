@@ -0,0 +1,111 @@
+package xyz.wagyourtail.asm.bench;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import xyz.wagyourtail.asm.test.NoopClassVisitor;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.pipeline.ParallelDisassembler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Stream;
+
+// the inputs every benchmark runs over. "test" is the World classes TestReader round trips,
+// "jdk" is java.util.concurrent out of the running jdk, a few hundred real classes
+@State(Scope.Benchmark)
+public class Corpus {
+    @Param({"test", "jdk"})
+    public String corpus;
+
+    @Param({"full", "compact"})
+    public String profileName;
+
+    public TextifierProfile profile;
+    public List<byte[]> classes;
+    public List<String> texts;
+    public List<String> methods;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        profile = TextifierProfile.of(profileName);
+        classes = new ArrayList<>();
+        texts = new ArrayList<>();
+        methods = new ArrayList<>();
+        for (byte[] bytes : corpus.equals("jdk") ? jdk() : test()) {
+            ClassNode node = new ClassNode();
+            new ClassReader(bytes).accept(node, profile.readerFlags());
+            String text = Main.classToTextify(node::accept, profile);
+            // everything round trips, a class or method that doesn't parse is a regression rather than something
+            // to quietly leave out, a smaller corpus would make the numbers incomparable between runs
+            try {
+                Main.compileJavasm(text, new NoopClassVisitor());
+            } catch (Exception e) {
+                throw new IOException("Corpus " + corpus + ": " + node.name + " doesn't parse", e);
+            }
+            classes.add(bytes);
+            texts.add(text);
+            for (MethodNode method : node.methods) {
+                StringBuilder sb = new StringBuilder();
+                append(sb, ParallelDisassembler.textifyMethod(node, method, profile));
+                try {
+                    Main.compileJavasmMethod(sb.toString(), new NoopClassVisitor());
+                } catch (Exception e) {
+                    throw new IOException("Corpus " + corpus + ": " + node.name + "." + method.name + method.desc + " doesn't parse", e);
+                }
+                methods.add(sb.toString());
+            }
+        }
+        if (classes.isEmpty()) {
+            throw new IllegalStateException("Empty corpus " + corpus);
+        }
+    }
+
+    private static List<byte[]> test() throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            try (InputStream is = Corpus.class.getResourceAsStream("/xyz/wagyourtail/asm/test/test" + i + "/World.class")) {
+                if (is == null) {
+                    throw new IllegalStateException("Missing test" + i + "/World.class, is includeTests on?");
+                }
+                classes.add(is.readAllBytes());
+            }
+        }
+        return classes;
+    }
+
+    private static List<byte[]> jdk() throws IOException {
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        List<byte[]> classes = new ArrayList<>();
+        try (Stream<Path> walk = Files.walk(jrt.getPath("/modules/java.base/java/util/concurrent"))) {
+            for (Path file : walk.filter(e -> e.toString().endsWith(".class")).sorted().toList()) {
+                classes.add(Files.readAllBytes(file));
+            }
+        }
+        return classes;
+    }
+
+    private static void append(StringBuilder sb, Object o) {
+        if (o instanceof List<?> list) {
+            for (Object e : list) {
+                append(sb, e);
+            }
+        } else {
+            sb.append(o);
+        }
+    }
+
+}
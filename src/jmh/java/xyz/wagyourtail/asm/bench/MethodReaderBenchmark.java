@@ -0,0 +1,27 @@
+package xyz.wagyourtail.asm.bench;
+
+import org.openjdk.jmh.annotations.*;
+import xyz.wagyourtail.asm.test.NoopClassVisitor;
+import xyz.wagyourtail.asmreader.file.MethodReader;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class MethodReaderBenchmark {
+
+    @Benchmark
+    public void acceptWithHeader(Corpus corpus) throws IOException {
+        NoopClassVisitor visitor = new NoopClassVisitor();
+        for (String method : corpus.methods) {
+            new MethodReader(new TokenReader(new StringReader(method))).acceptWithHeader(visitor::visitMethod);
+        }
+    }
+
+}
@@ -0,0 +1,53 @@
+package xyz.wagyourtail.asm.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.wagyourtail.asm.test.NoopClassVisitor;
+import xyz.wagyourtail.asm.test.StressCorpus;
+import xyz.wagyourtail.asmreader.file.ClassReader;
+import xyz.wagyourtail.asmreader.token.Token;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+import xyz.wagyourtail.asmreader.token.TokenType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+// one generated class per run, at a few fractions of its default size. time per char should stay flat
+// across the fractions of a kind, if it climbs with the size something in the readers is super-linear
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+@State(Scope.Benchmark)
+public class StressBenchmark {
+    @Param({"LONG_METHOD", "TABLESWITCH", "LOOKUPSWITCH", "MEMBERS", "ANNOTATIONS", "INDY", "CONDY"})
+    public StressCorpus.Kind kind;
+
+    @Param({"0.25", "0.5", "1"})
+    public double scale;
+
+    public String text;
+
+    @Setup(Level.Trial)
+    public void setup() throws IOException {
+        text = StressCorpus.javasm(kind, Math.max((int) (kind.defaultSize * scale), 1));
+    }
+
+    @Benchmark
+    public void acceptNoop() throws IOException {
+        new ClassReader(new TokenReader(new StringReader(text))).accept(new NoopClassVisitor());
+    }
+
+    @Benchmark
+    public void tokenize(Blackhole bh) throws IOException {
+        try (TokenReader reader = new TokenReader(new StringReader(text))) {
+            Token tk;
+            while ((tk = reader.pop()).type != TokenType.EOF) {
+                bh.consume(tk);
+            }
+        }
+    }
+
+}
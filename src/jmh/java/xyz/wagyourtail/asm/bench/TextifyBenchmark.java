@@ -0,0 +1,37 @@
+package xyz.wagyourtail.asm.bench;
+
+import org.objectweb.asm.ClassReader;
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.wagyourtail.asmreader.Main;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TextifyBenchmark {
+
+    @Benchmark
+    public void classToTextify(Corpus corpus, Blackhole bh) throws IOException {
+        for (byte[] bytes : corpus.classes) {
+            ClassReader reader = new ClassReader(bytes);
+            bh.consume(Main.classToTextify(e -> reader.accept(e, corpus.profile.readerFlags()), corpus.profile));
+        }
+    }
+
+    // the streaming path the directory and --stream modes use
+    @Benchmark
+    public void classToTextifyStreaming(Corpus corpus) throws IOException {
+        Writer out = Writer.nullWriter();
+        for (byte[] bytes : corpus.classes) {
+            ClassReader reader = new ClassReader(bytes);
+            Main.classToTextify(e -> reader.accept(e, corpus.profile.readerFlags()), out, corpus.profile);
+        }
+    }
+
+}
@@ -0,0 +1,45 @@
+package xyz.wagyourtail.asm.bench;
+
+import org.openjdk.jmh.annotations.*;
+import org.openjdk.jmh.infra.Blackhole;
+import xyz.wagyourtail.asmreader.token.Token;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+import xyz.wagyourtail.asmreader.token.TokenType;
+
+import java.io.IOException;
+import java.io.StringReader;
+import java.util.concurrent.TimeUnit;
+
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.SECONDS)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+@Fork(1)
+public class TokenReaderBenchmark {
+
+    // shows up as tokens/s next to the corpus passes/s
+    @State(Scope.Thread)
+    @AuxCounters(AuxCounters.Type.OPERATIONS)
+    public static class Tokens {
+        public long tokens;
+
+        @Setup(Level.Iteration)
+        public void reset() {
+            tokens = 0;
+        }
+    }
+
+    @Benchmark
+    public void tokenize(Corpus corpus, Tokens tokens, Blackhole bh) throws IOException {
+        for (String text : corpus.texts) {
+            try (TokenReader reader = new TokenReader(new StringReader(text))) {
+                Token tk;
+                while ((tk = reader.pop()).type != TokenType.EOF) {
+                    bh.consume(tk);
+                    tokens.tokens++;
+                }
+            }
+        }
+    }
+
+}
@@ -40,6 +40,13 @@ public class ArgHandler {
         return arg;
     }
 
+    // takes count values after the name
+    public Arg args(String desc, int count, String... names) {
+        Arg arg = new Arg(names, desc, count + 1);
+        args.add(arg);
+        return arg;
+    }
+
     public Map<Arg, Integer> parse(String[] args) {
         Map<Arg, Integer> parsed = new HashMap<>();
         for (int i = 0; i < args.length; ) {
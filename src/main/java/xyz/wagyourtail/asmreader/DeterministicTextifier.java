@@ -2,22 +2,34 @@ package xyz.wagyourtail.asmreader;
 
 import org.objectweb.asm.ConstantDynamic;
 import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
 import org.objectweb.asm.Opcodes;
 import org.objectweb.asm.Type;
-import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.TypePath;
 import org.objectweb.asm.util.Printer;
 import org.objectweb.asm.util.Textifier;
-import org.objectweb.asm.util.TraceSignatureVisitor;
 
 public class DeterministicTextifier extends Textifier {
     private static final String CLASS_SUFFIX = ".class";
     private static final String DEPRECATED = "// DEPRECATED\n";
 
+    protected final FormatCache cache;
+    protected final TextifierProfile profile;
     private int access;
     private String condyIndent = tab2;
 
     public DeterministicTextifier() {
+        this(FormatCache.DEFAULT);
+    }
+
+    public DeterministicTextifier(FormatCache cache) {
+        this(cache, TextifierProfile.FULL);
+    }
+
+    public DeterministicTextifier(FormatCache cache, TextifierProfile profile) {
         super(Opcodes.ASM9);
+        this.cache = cache;
+        this.profile = profile;
     }
 
     @Override
@@ -27,76 +39,34 @@ public class DeterministicTextifier extends Textifier {
     }
 
     private void appendRawAccess(final int accessFlags) {
-        stringBuilder
-                .append("// access flags 0x")
-                .append(Integer.toHexString(accessFlags).toUpperCase())
-                .append('\n');
+        stringBuilder.append(cache.rawAccess(accessFlags));
     }
 
     private void visitType(final Type value) {
-        stringBuilder.append(value.getClassName()).append(CLASS_SUFFIX);
+        stringBuilder.append(cache.className(value)).append(CLASS_SUFFIX);
     }
 
     private void appendJavaDeclaration(final String name, final String signature) {
-        TraceSignatureVisitor traceSignatureVisitor = new TraceSignatureVisitor(access);
-        new SignatureReader(signature).accept(traceSignatureVisitor);
+        FormatCache.Declaration declaration = cache.declaration(signature, access);
         stringBuilder.append("// declaration: ");
-        if (traceSignatureVisitor.getReturnType() != null) {
-            stringBuilder.append(traceSignatureVisitor.getReturnType());
+        if (declaration.returnType() != null) {
+            stringBuilder.append(declaration.returnType());
             stringBuilder.append(' ');
         }
         stringBuilder.append(name);
-        stringBuilder.append(traceSignatureVisitor.getDeclaration());
-        if (traceSignatureVisitor.getExceptions() != null) {
-            stringBuilder.append(" throws ").append(traceSignatureVisitor.getExceptions());
+        stringBuilder.append(declaration.declaration());
+        if (declaration.exceptions() != null) {
+            stringBuilder.append(" throws ").append(declaration.exceptions());
         }
         stringBuilder.append('\n');
     }
 
     private void appendAccess(final int accessFlags) {
-        if ((accessFlags & Opcodes.ACC_PUBLIC) != 0) {
-            stringBuilder.append("public ");
-        }
-        if ((accessFlags & Opcodes.ACC_PRIVATE) != 0) {
-            stringBuilder.append("private ");
-        }
-        if ((accessFlags & Opcodes.ACC_PROTECTED) != 0) {
-            stringBuilder.append("protected ");
-        }
-        if ((accessFlags & Opcodes.ACC_FINAL) != 0) {
-            stringBuilder.append("final ");
-        }
-        if ((accessFlags & Opcodes.ACC_STATIC) != 0) {
-            stringBuilder.append("static ");
-        }
-        if ((accessFlags & Opcodes.ACC_SYNCHRONIZED) != 0) {
-            stringBuilder.append("synchronized ");
-        }
-        if ((accessFlags & Opcodes.ACC_VOLATILE) != 0) {
-            stringBuilder.append("volatile ");
-        }
-        if ((accessFlags & Opcodes.ACC_TRANSIENT) != 0) {
-            stringBuilder.append("transient ");
-        }
-        if ((accessFlags & Opcodes.ACC_ABSTRACT) != 0) {
-            stringBuilder.append("abstract ");
-        }
-        if ((accessFlags & Opcodes.ACC_STRICT) != 0) {
-            stringBuilder.append("strictfp ");
-        }
-        if ((accessFlags & Opcodes.ACC_SYNTHETIC) != 0) {
-            stringBuilder.append("synthetic ");
-        }
-        if ((accessFlags & Opcodes.ACC_MANDATED) != 0) {
-            stringBuilder.append("mandated ");
-        }
-        if ((accessFlags & Opcodes.ACC_ENUM) != 0) {
-            stringBuilder.append("enum ");
-        }
+        stringBuilder.append(cache.access(accessFlags));
     }
 
-    private Textifier addNewTextifier(final String endText) {
-        Textifier textifier = createTextifier();
+    private DeterministicTextifier addNewTextifier(final String endText) {
+        DeterministicTextifier textifier = createTextifier();
         text.add(textifier.getText());
         if (endText != null) {
             text.add(endText);
@@ -238,9 +208,95 @@ public class DeterministicTextifier extends Textifier {
         return addNewTextifier(null);
     }
 
+    // same as Textifier.visitMethod, but through the cache
     @Override
-    protected Textifier createTextifier() {
-        return new DeterministicTextifier();
+    public DeterministicTextifier visitMethod(
+            final int access,
+            final String name,
+            final String descriptor,
+            final String signature,
+            final String[] exceptions) {
+        stringBuilder.setLength(0);
+        stringBuilder.append('\n');
+        if ((access & Opcodes.ACC_DEPRECATED) != 0) {
+            stringBuilder.append(tab).append(DEPRECATED);
+        }
+        stringBuilder.append(tab);
+        appendRawAccess(access);
+
+        if (signature != null) {
+            stringBuilder.append(tab);
+            appendDescriptor(METHOD_SIGNATURE, signature);
+            stringBuilder.append(tab);
+            appendJavaDeclaration(name, signature);
+        }
+
+        stringBuilder.append(tab);
+        appendAccess(access & ~(Opcodes.ACC_VOLATILE | Opcodes.ACC_TRANSIENT));
+        if ((access & Opcodes.ACC_NATIVE) != 0) {
+            stringBuilder.append("native ");
+        }
+        if ((access & Opcodes.ACC_VARARGS) != 0) {
+            stringBuilder.append("varargs ");
+        }
+        if ((access & Opcodes.ACC_BRIDGE) != 0) {
+            stringBuilder.append("bridge ");
+        }
+        if ((this.access & Opcodes.ACC_INTERFACE) != 0
+                && (access & (Opcodes.ACC_ABSTRACT | Opcodes.ACC_STATIC)) == 0) {
+            stringBuilder.append("default ");
+        }
+
+        stringBuilder.append(name);
+        appendDescriptor(METHOD_DESCRIPTOR, descriptor);
+        if (exceptions != null && exceptions.length > 0) {
+            stringBuilder.append(" throws ");
+            for (String exception : exceptions) {
+                appendDescriptor(INTERNAL_NAME, exception);
+                stringBuilder.append(' ');
+            }
+        }
+
+        stringBuilder.append('\n');
+        text.add(stringBuilder.toString());
+        return addNewTextifier(null);
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        if (profile == TextifierProfile.COMPACT) return;
+        super.visitFrame(type, numLocal, local, numStack, stack);
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        if (profile == TextifierProfile.COMPACT) return;
+        super.visitLineNumber(line, start);
+    }
+
+    @Override
+    public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+        if (profile == TextifierProfile.COMPACT) return;
+        super.visitLocalVariable(name, descriptor, signature, start, end, index);
+    }
+
+    @Override
+    public Printer visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+        if (profile == TextifierProfile.COMPACT) {
+            // still needs a printer for the annotation's values, it just never ends up in the text
+            return createTextifier();
+        }
+        return super.visitLocalVariableAnnotation(typeRef, typePath, start, end, index, descriptor, visible);
+    }
+
+    @Override
+    protected DeterministicTextifier createTextifier() {
+        return new DeterministicTextifier(cache, profile);
+    }
+
+    // what a method whose code was written to a shared body prints in place of it, see SharedBodyVisitor
+    public void visitBodyRef(String hash) {
+        text.add(tab2 + "BODYREF " + hash + "\n");
     }
 
 }
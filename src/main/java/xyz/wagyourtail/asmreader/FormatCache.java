@@ -0,0 +1,120 @@
+package xyz.wagyourtail.asmreader;
+
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.signature.SignatureReader;
+import org.objectweb.asm.util.TraceSignatureVisitor;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.Function;
+
+// strings the textifier rebuilds over and over (class names, java declarations of signatures, access modifiers),
+// thread safe so one cache can be shared by every textifier in a batch. each map is dropped once it fills up.
+public class FormatCache {
+    public static final int DEFAULT_MAX_SIZE = 16384;
+    public static final FormatCache DEFAULT = new FormatCache(DEFAULT_MAX_SIZE);
+
+    private final int maxSize;
+    private final Map<String, String> classNames = new ConcurrentHashMap<>();
+    private final Map<String, Declaration> classDeclarations = new ConcurrentHashMap<>();
+    private final Map<String, Declaration> interfaceDeclarations = new ConcurrentHashMap<>();
+    private final Map<Integer, String> access = new ConcurrentHashMap<>();
+    private final Map<Integer, String> rawAccess = new ConcurrentHashMap<>();
+
+    public FormatCache(int maxSize) {
+        this.maxSize = maxSize;
+    }
+
+    private <K, V> V get(Map<K, V> map, K key, Function<K, V> compute) {
+        // no cache at all, every lookup formats from scratch
+        if (maxSize <= 0) {
+            return compute.apply(key);
+        }
+        V value = map.get(key);
+        if (value == null) {
+            if (map.size() >= maxSize) {
+                map.clear();
+            }
+            value = compute.apply(key);
+            map.put(key, value);
+        }
+        return value;
+    }
+
+    // Type.getClassName for a descriptor
+    public String className(Type type) {
+        return get(classNames, type.getDescriptor(), e -> type.getClassName());
+    }
+
+    // only the interface bit of the access changes how a signature is printed
+    public Declaration declaration(String signature, int access) {
+        if ((access & Opcodes.ACC_INTERFACE) != 0) {
+            return get(interfaceDeclarations, signature, e -> Declaration.of(e, Opcodes.ACC_INTERFACE));
+        }
+        return get(classDeclarations, signature, e -> Declaration.of(e, 0));
+    }
+
+    public String access(int flags) {
+        return get(access, flags, FormatCache::formatAccess);
+    }
+
+    public String rawAccess(int flags) {
+        return get(rawAccess, flags, e -> "// access flags 0x" + Integer.toHexString(e).toUpperCase() + '\n');
+    }
+
+    private static String formatAccess(int accessFlags) {
+        StringBuilder sb = new StringBuilder();
+        if ((accessFlags & Opcodes.ACC_PUBLIC) != 0) {
+            sb.append("public ");
+        }
+        if ((accessFlags & Opcodes.ACC_PRIVATE) != 0) {
+            sb.append("private ");
+        }
+        if ((accessFlags & Opcodes.ACC_PROTECTED) != 0) {
+            sb.append("protected ");
+        }
+        if ((accessFlags & Opcodes.ACC_FINAL) != 0) {
+            sb.append("final ");
+        }
+        if ((accessFlags & Opcodes.ACC_STATIC) != 0) {
+            sb.append("static ");
+        }
+        if ((accessFlags & Opcodes.ACC_SYNCHRONIZED) != 0) {
+            sb.append("synchronized ");
+        }
+        if ((accessFlags & Opcodes.ACC_VOLATILE) != 0) {
+            sb.append("volatile ");
+        }
+        if ((accessFlags & Opcodes.ACC_TRANSIENT) != 0) {
+            sb.append("transient ");
+        }
+        if ((accessFlags & Opcodes.ACC_ABSTRACT) != 0) {
+            sb.append("abstract ");
+        }
+        if ((accessFlags & Opcodes.ACC_STRICT) != 0) {
+            sb.append("strictfp ");
+        }
+        if ((accessFlags & Opcodes.ACC_SYNTHETIC) != 0) {
+            sb.append("synthetic ");
+        }
+        if ((accessFlags & Opcodes.ACC_MANDATED) != 0) {
+            sb.append("mandated ");
+        }
+        if ((accessFlags & Opcodes.ACC_ENUM) != 0) {
+            sb.append("enum ");
+        }
+        return sb.toString();
+    }
+
+    public record Declaration(String returnType, String declaration, String exceptions) {
+
+        public static Declaration of(String signature, int access) {
+            TraceSignatureVisitor traceSignatureVisitor = new TraceSignatureVisitor(access);
+            new SignatureReader(signature).accept(traceSignatureVisitor);
+            return new Declaration(traceSignatureVisitor.getReturnType(), traceSignatureVisitor.getDeclaration(), traceSignatureVisitor.getExceptions());
+        }
+
+    }
+
+}
@@ -3,22 +3,48 @@ package xyz.wagyourtail.asmreader;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.ClassWriter;
 import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.tree.MethodNode;
 import org.objectweb.asm.util.TraceClassVisitor;
+import xyz.wagyourtail.asmreader.dedup.DedupDisassembler;
+import xyz.wagyourtail.asmreader.diff.ClassSet;
+import xyz.wagyourtail.asmreader.diff.JarDiff;
 import xyz.wagyourtail.asmreader.file.ClassReader;
 import xyz.wagyourtail.asmreader.file.MethodReader;
+import xyz.wagyourtail.asmreader.grep.InsnPattern;
+import xyz.wagyourtail.asmreader.grep.JarGrep;
+import xyz.wagyourtail.asmreader.incremental.IncrementalDisassembler;
+import xyz.wagyourtail.asmreader.index.JavasmIndex;
 import xyz.wagyourtail.asmreader.iofunction.IOConsumer;
+import xyz.wagyourtail.asmreader.metrics.Metrics;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.JarSink;
+import xyz.wagyourtail.asmreader.pipeline.JdkVerifier;
+import xyz.wagyourtail.asmreader.pipeline.ParallelDisassembler;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+import xyz.wagyourtail.asmreader.pipeline.StreamFormat;
+import xyz.wagyourtail.asmreader.pipeline.Verifier;
+import xyz.wagyourtail.asmreader.stats.JarStats;
+import xyz.wagyourtail.asmreader.token.ShardedTokenReader;
 import xyz.wagyourtail.asmreader.token.TokenReader;
 
 import java.io.*;
 import java.net.URL;
 import java.net.URLClassLoader;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Files;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Iterator;
+import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.zip.Deflater;
+import java.util.zip.ZipFile;
 
 public class Main {
 
@@ -49,12 +75,83 @@ public class Main {
     }
 
     public static void main(String[] args) throws IOException {
+        try {
+            run(args);
+        } finally {
+            // turned on by --stats, printed even when the run fails
+            if (Metrics.enabled()) {
+                System.err.println(Metrics.snapshot());
+            }
+        }
+    }
+
+    private static void run(String[] args) throws IOException {
         ArgHandler argHandler = new ArgHandler();
         ArgHandler.Arg input = argHandler.arg("Input", "--input", "-i");
         ArgHandler.Arg output = argHandler.arg("Output", "--output", "-o");
         ArgHandler.Arg disassemble = argHandler.flag("Disassemble", "--disassemble", "-d");
         ArgHandler.Arg classpath = argHandler.arg("Classpath", "--classpath", "-cp");
+        ArgHandler.Arg stream = argHandler.flag("Stream classes from stdin to stdout", "--stream", "-s");
+        ArgHandler.Arg format = argHandler.arg("Stream format (frames, jar)", "--format", "-f");
+        ArgHandler.Arg verify = argHandler.flag("Round trip every class in the input jar and report mismatches", "--verify", "-v");
+        ArgHandler.Arg jdk = argHandler.flag("Round trip every class of the running jdk (from jrt:/) and report throughput, per module timing, the slowest classes and mismatches", "--jdk");
+        ArgHandler.Arg modules = argHandler.arg("Comma separated modules for --jdk, e.g. java.base,java.desktop", "--modules");
+        ArgHandler.Arg threads = argHandler.arg("Worker threads", "--threads", "-t");
+        ArgHandler.Arg compression = argHandler.arg("Jar compression level (0-9)", "--compression", "-c");
+        ArgHandler.Arg diff = argHandler.args("Diff the classes of two jars (or class files) method by method", 2, "--diff");
+        ArgHandler.Arg grep = argHandler.arg("Print the methods matching an instruction pattern, e.g. \"INVOKEVIRTUAL java/util/Map.get *\"", "--grep", "-g");
+        ArgHandler.Arg dedup = argHandler.flag("Write method bodies that occur more than once to a shared .bodies directory (jar to directory only)", "--dedup");
+        ArgHandler.Arg incremental = argHandler.flag("Only redo classes whose crc changed since the last run into the same directory (jar to directory only)", "--incremental");
+        ArgHandler.Arg index = argHandler.flag("Write a byte offset index of every class, field and method next to the output (jar to .javasm only)", "--index");
+        ArgHandler.Arg profileArg = argHandler.arg("Textifier profile (full, compact), compact leaves out frames/line numbers/local variables", "--profile", "-p");
+        ArgHandler.Arg stats = argHandler.flag("Print counters and per phase timings to stderr when done", "--stats");
+        ArgHandler.Arg jarStatsArg = argHandler.flag("Print opcode/method size/constant pool/bootstrap statistics of a jar (or class) input", "--jar-stats");
         Map<ArgHandler.Arg, Integer> parsed = argHandler.parse(args);
+        if (parsed.containsKey(stats)) {
+            Metrics.setEnabled(true);
+        }
+        int workers = parsed.containsKey(threads) ? threads.intValue(args, parsed.get(threads)) : Pipeline.defaultWorkers();
+        TextifierProfile profile = parsed.containsKey(profileArg) ? TextifierProfile.of(profileArg.value(args, parsed.get(profileArg))) : TextifierProfile.FULL;
+        if (parsed.containsKey(stream)) {
+            StreamFormat streamFormat = parsed.containsKey(format) ? StreamFormat.of(format.value(args, parsed.get(format))) : StreamFormat.FRAMES;
+            if (parsed.containsKey(disassemble)) {
+                Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                ClassStreams.disassemble(System.in, out, streamFormat, profile, workers);
+                out.flush();
+            } else {
+                ClassLoader loader = classLoader(parsed.containsKey(classpath) ? classpath.value(args, parsed.get(classpath)) : null);
+                Reader in = new InputStreamReader(System.in, StandardCharsets.UTF_8);
+                ClassStreams.assemble(in, System.out, streamFormat, loader, profile, workers);
+                System.out.flush();
+            }
+            return;
+        }
+        if (parsed.containsKey(diff)) {
+            String[] files = diff.values(args, parsed.get(diff));
+            JarDiff.Result result;
+            try (ClassSet oldSet = ClassSet.open(Path.of(files[0])); ClassSet newSet = ClassSet.open(Path.of(files[1]))) {
+                JarDiff jarDiff = new JarDiff(workers, profile);
+                if (parsed.containsKey(output)) {
+                    try (Writer out = Files.newBufferedWriter(Path.of(output.value(args, parsed.get(output))), StandardCharsets.UTF_8)) {
+                        result = jarDiff.diff(oldSet, newSet, out);
+                    }
+                } else {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                    result = jarDiff.diff(oldSet, newSet, out);
+                    out.flush();
+                }
+            }
+            System.err.println(result);
+            return;
+        }
+        if (parsed.containsKey(jdk)) {
+            JdkVerifier.Result result = new JdkVerifier(workers, System.out, 20).verify(JdkVerifier.modules(parsed.containsKey(modules) ? modules.value(args, parsed.get(modules)) : null));
+            System.out.println(result);
+            if (result.total().mismatches() != 0) {
+                throw new IllegalStateException(result.total().mismatches() + " classes failed to round trip");
+            }
+            return;
+        }
         if (!parsed.containsKey(input)) {
             argHandler.printUsage();
             throw new IllegalArgumentException("Missing input");
@@ -63,54 +160,217 @@ public class Main {
         if (!Files.exists(inputPath)) {
             throw new IllegalArgumentException("Input file \"" + inputPath + "\" does not exist");
         }
-        if (parsed.containsKey(disassemble)) {
-            try (InputStream is = Files.newInputStream(inputPath)) {
-                org.objectweb.asm.ClassReader reader = new org.objectweb.asm.ClassReader(is);
-                String value = classToTextify(e -> reader.accept(e, 0));
+        if (parsed.containsKey(verify)) {
+            Verifier.Result result;
+            try (ZipFile zip = new ZipFile(inputPath.toFile())) {
+                result = new Verifier(workers, System.out).verify(ClassStreams.classEntries(zip));
+            }
+            System.out.println(result);
+            if (result.mismatches() != 0) {
+                throw new IllegalStateException(result.mismatches() + " classes failed to round trip");
+            }
+            return;
+        }
+        if (parsed.containsKey(grep)) {
+            JarGrep jarGrep = new JarGrep(InsnPattern.compile(grep.value(args, parsed.get(grep))), workers, profile);
+            Writer out = parsed.containsKey(output) ? Files.newBufferedWriter(Path.of(output.value(args, parsed.get(output))), StandardCharsets.UTF_8) : new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+            JarGrep.Result result;
+            try {
+                if (inputPath.toString().endsWith(".class")) {
+                    byte[] bytes = Files.readAllBytes(inputPath);
+                    Iterator<ClassEntry> single = List.of(new ClassEntry(new org.objectweb.asm.ClassReader(bytes).getClassName(), bytes)).iterator();
+                    result = jarGrep.grep(() -> single.hasNext() ? single.next() : null, out);
+                } else {
+                    try (ZipFile zip = new ZipFile(inputPath.toFile())) {
+                        result = jarGrep.grep(ClassStreams.classEntries(zip), out);
+                    }
+                }
+            } finally {
+                if (parsed.containsKey(output)) {
+                    out.close();
+                } else {
+                    out.flush();
+                }
+            }
+            System.err.println(result);
+            return;
+        }
+        if (parsed.containsKey(jarStatsArg)) {
+            JarStats jarStats = new JarStats(workers);
+            JarStats.Result result;
+            if (inputPath.toString().endsWith(".class")) {
+                byte[] bytes = Files.readAllBytes(inputPath);
+                Iterator<ClassEntry> single = List.of(new ClassEntry(null, bytes)).iterator();
+                result = jarStats.analyze(() -> single.hasNext() ? single.next() : null);
+            } else {
+                try (ZipFile zip = new ZipFile(inputPath.toFile())) {
+                    result = jarStats.analyze(ClassStreams.classEntries(zip));
+                }
+            }
+            System.out.println(result);
+            return;
+        }
+        boolean jarToFiles = parsed.containsKey(disassemble) && inputPath.toString().endsWith(".jar") && parsed.containsKey(output);
+        boolean concatenated = jarToFiles && output.value(args, parsed.get(output)).endsWith(".javasm");
+        if (parsed.containsKey(index) && !concatenated) {
+            throw new IllegalArgumentException("--index only works disassembling a jar to a .javasm file");
+        }
+        if (parsed.containsKey(dedup) && (!jarToFiles || concatenated)) {
+            throw new IllegalArgumentException("--dedup only works disassembling a jar to a directory");
+        }
+        if (parsed.containsKey(incremental) && (!jarToFiles || concatenated)) {
+            throw new IllegalArgumentException("--incremental only works disassembling a jar to a directory");
+        }
+        if (parsed.containsKey(incremental) && parsed.containsKey(dedup)) {
+            throw new IllegalArgumentException("--incremental can't be combined with --dedup");
+        }
+        if (parsed.containsKey(disassemble) && inputPath.toString().endsWith(".jar")) {
+            // whole jar, to a directory of .javasm files, a single concatenated file or stdout
+            try (ZipFile zip = new ZipFile(inputPath.toFile())) {
+                if (!parsed.containsKey(output)) {
+                    Writer out = new BufferedWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                    ClassStreams.disassemble(ClassStreams.classEntries(zip), e -> out.write(e.text()), profile, workers);
+                    out.flush();
+                    return;
+                }
+                Path outputPath = Path.of(output.value(args, parsed.get(output)));
+                if (outputPath.toString().endsWith(".javasm") && parsed.containsKey(index)) {
+                    JavasmIndex.write(ClassStreams.classEntries(zip), outputPath, profile, workers);
+                } else if (outputPath.toString().endsWith(".javasm")) {
+                    try (Writer out = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
+                        ClassStreams.disassemble(ClassStreams.classEntries(zip), e -> out.write(e.text()), profile, workers);
+                    }
+                } else if (parsed.containsKey(incremental)) {
+                    System.out.println(new IncrementalDisassembler(workers, profile).disassemble(zip, outputPath));
+                } else if (parsed.containsKey(dedup)) {
+                    System.out.println(new DedupDisassembler(workers, profile).disassemble(() -> ClassStreams.classEntries(zip), outputPath));
+                } else {
+                    ClassStreams.disassembleToDirectory(ClassStreams.classEntries(zip), outputPath, profile, workers);
+                }
+            }
+        } else if (parsed.containsKey(disassemble)) {
+            byte[] bytes = Files.readAllBytes(inputPath);
+            Metrics.count(Metrics.Counter.BYTES_IN, bytes.length);
+            // big classes get their methods split across the workers, anything else streams without a pool
+            boolean split = new ParallelDisassembler(null, workers, profile).splits(bytes);
+            ExecutorService executor = split ? Executors.newFixedThreadPool(workers, Pipeline.daemonFactory("asmreader-worker")) : null;
+            try {
+                ParallelDisassembler disassembler = new ParallelDisassembler(executor, split ? workers : 1, profile);
                 if (parsed.containsKey(output)) {
                     Path outputPath = Path.of(output.value(args, parsed.get(output)));
-                    Files.writeString(outputPath, value, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                    try (Writer out = Files.newBufferedWriter(outputPath, StandardCharsets.UTF_8)) {
+                        disassembler.textify(bytes, out);
+                    }
                 } else {
-                    System.out.println(value);
+                    PrintWriter out = new PrintWriter(new OutputStreamWriter(System.out, StandardCharsets.UTF_8));
+                    disassembler.textify(bytes, out);
+                    out.println();
+                    out.flush();
+                }
+            } finally {
+                if (executor != null) {
+                    executor.shutdown();
                 }
             }
         } else {
-            ClassLoader loader;
-            if (parsed.containsKey(classpath)) {
-                loader = new URLClassLoader(Arrays.stream(classpath.value(args, parsed.get(classpath)).split(File.pathSeparator)).map(Path::of).map(Path::toUri).map(e -> {
-                    try {
-                        return e.toURL();
-                    } catch (Exception ex) {
-                        throw new RuntimeException(ex);
+            ClassLoader loader = classLoader(parsed.containsKey(classpath) ? classpath.value(args, parsed.get(classpath)) : null);
+            if (!parsed.containsKey(output)) {
+                argHandler.printUsage();
+                throw new IllegalArgumentException("Missing output");
+            }
+            Path outputPath = Path.of(output.value(args, parsed.get(output)));
+
+            // directory of .javasm files or multiple classes in one file, write them all to a jar
+            if (Files.isDirectory(inputPath) || outputPath.toString().endsWith(".jar")) {
+                int level = parsed.containsKey(compression) ? compression.intValue(args, parsed.get(compression)) : Deflater.DEFAULT_COMPRESSION;
+                try (OutputStream os = new BufferedOutputStream(Files.newOutputStream(outputPath, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING))) {
+                    JarSink sink = new JarSink(os, level);
+                    if (Files.isDirectory(inputPath)) {
+                        ClassStreams.assembleDirectory(inputPath, sink, loader, profile, workers);
+                    } else {
+                        // bundles get big enough that lexing them is worth spreading over the workers
+                        try (TokenReader reader = ShardedTokenReader.open(inputPath, workers)) {
+                            ClassStreams.assemble(reader, sink, loader, profile, workers);
+                        }
                     }
-                }).toArray(URL[]::new), Main.class.getClassLoader());
-            } else {
-                loader = Main.class.getClassLoader();
+                }
+                return;
             }
 
             // read in input.javasm
             try (TokenReader reader = new TokenReader(Files.newBufferedReader(inputPath))) {
                 ClassReader asmReader = new ClassReader(reader);
-                ClassWriter writer = new ClassWriter(0) {
-                    @Override
-                    protected ClassLoader getClassLoader() {
-                        return loader;
-                    }
-                };
-                asmReader.accept(writer);
-                Path outputPath = Path.of(output.value(args, parsed.get(output)));
-                Files.write(outputPath, writer.toByteArray(), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
+                ClassNode node = new ClassNode();
+                asmReader.accept(node);
+                Files.write(outputPath, ClassStreams.write(node, classWriter(profile.writerFlags(), loader)), StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING);
             }
         }
 
     }
 
+    public static ClassLoader classLoader(String classpath) {
+        if (classpath == null) {
+            return Main.class.getClassLoader();
+        }
+        return new URLClassLoader(Arrays.stream(classpath.split(File.pathSeparator)).map(Path::of).map(Path::toUri).map(e -> {
+            try {
+                return e.toURL();
+            } catch (Exception ex) {
+                throw new RuntimeException(ex);
+            }
+        }).toArray(URL[]::new), Main.class.getClassLoader());
+    }
+
+    public static ClassWriter classWriter(int flags, ClassLoader loader) {
+        return new ClassWriter(flags) {
+            @Override
+            protected ClassLoader getClassLoader() {
+                return loader;
+            }
+        };
+    }
+
     public static String classToTextify(IOConsumer<ClassVisitor> visitor) throws IOException {
+        return classToTextify(visitor, TextifierProfile.FULL);
+    }
+
+    public static String classToTextify(IOConsumer<ClassVisitor> visitor, TextifierProfile profile) throws IOException {
         ByteArrayOutputStream baos = new ByteArrayOutputStream();
         PrintWriter pw = new PrintWriter(baos);
-        TraceClassVisitor traceClassVisitor = new TraceClassVisitor(null, new DeterministicTextifier(), pw);
+        TraceClassVisitor traceClassVisitor = new TraceClassVisitor(null, new DeterministicTextifier(FormatCache.DEFAULT, profile), pw);
+        long start = System.nanoTime();
         visitor.accept(traceClassVisitor);
-        return baos.toString();
+        String text = baos.toString();
+        disassembled(start, text.length());
+        return text;
+    }
+
+    // same text as above, but written out member by member instead of held in memory, returns the chars written
+    public static long classToTextify(IOConsumer<ClassVisitor> visitor, Writer out) throws IOException {
+        return classToTextify(visitor, out, TextifierProfile.FULL);
+    }
+
+    public static long classToTextify(IOConsumer<ClassVisitor> visitor, Writer out, TextifierProfile profile) throws IOException {
+        return classToTextify(visitor, new StreamingTextifier(out, FormatCache.DEFAULT, profile));
+    }
+
+    // for visitors that print parts of the class through the textifier themselves
+    public static long classToTextify(IOConsumer<ClassVisitor> visitor, StreamingTextifier textifier) throws IOException {
+        TraceClassVisitor traceClassVisitor = new TraceClassVisitor(null, textifier, null);
+        long start = System.nanoTime();
+        try {
+            visitor.accept(traceClassVisitor);
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        disassembled(start, textifier.written());
+        return textifier.written();
+    }
+
+    private static void disassembled(long start, long chars) {
+        Metrics.time(Metrics.Phase.VISIT, System.nanoTime() - start);
+        Metrics.count(Metrics.Counter.CLASSES_DISASSEMBLED, 1);
+        Metrics.count(Metrics.Counter.BYTES_OUT, chars);
     }
 
 }
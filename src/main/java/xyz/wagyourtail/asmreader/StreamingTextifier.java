@@ -0,0 +1,85 @@
+package xyz.wagyourtail.asmreader;
+
+import java.io.IOException;
+import java.io.UncheckedIOException;
+import java.io.Writer;
+import java.util.List;
+
+// writes the class text out every time a field or method is finished instead of holding the whole class,
+// use with a TraceClassVisitor without a PrintWriter
+public class StreamingTextifier extends DeterministicTextifier {
+    private final Writer out;
+    private long written;
+
+    public StreamingTextifier(Writer out) {
+        this(out, FormatCache.DEFAULT);
+    }
+
+    public StreamingTextifier(Writer out, FormatCache cache) {
+        this(out, cache, TextifierProfile.FULL);
+    }
+
+    public StreamingTextifier(Writer out, FormatCache cache, TextifierProfile profile) {
+        super(cache, profile);
+        this.out = out;
+    }
+
+    @Override
+    public void visitClassEnd() {
+        super.visitClassEnd();
+        flush();
+    }
+
+    // everything in text before the member that just ended is complete, so it can all go
+    void flush() {
+        try {
+            write(text);
+        } catch (IOException e) {
+            throw new UncheckedIOException(e);
+        }
+        text.clear();
+    }
+
+    private void write(List<?> list) throws IOException {
+        for (Object o : list) {
+            if (o instanceof List<?> l) {
+                write(l);
+            } else {
+                String s = o.toString();
+                out.write(s);
+                written += s.length();
+            }
+        }
+    }
+
+    // chars written out so far
+    public long written() {
+        return written;
+    }
+
+    @Override
+    protected DeterministicTextifier createTextifier() {
+        return new MemberTextifier();
+    }
+
+    private class MemberTextifier extends DeterministicTextifier {
+
+        MemberTextifier() {
+            super(StreamingTextifier.this.cache, StreamingTextifier.this.profile);
+        }
+
+        @Override
+        public void visitFieldEnd() {
+            super.visitFieldEnd();
+            flush();
+        }
+
+        @Override
+        public void visitMethodEnd() {
+            super.visitMethodEnd();
+            flush();
+        }
+
+    }
+
+}
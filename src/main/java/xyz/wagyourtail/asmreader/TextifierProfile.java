@@ -0,0 +1,30 @@
+package xyz.wagyourtail.asmreader;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassWriter;
+
+import java.util.Locale;
+
+public enum TextifierProfile {
+    FULL,
+    // no FRAME, LINENUMBER or LOCALVARIABLE lines, frames/maxs have to be recomputed when assembling
+    COMPACT;
+
+    // flags for the asm ClassReader feeding the textifier, frames aren't even expanded for compact
+    public int readerFlags() {
+        return this == COMPACT ? ClassReader.SKIP_FRAMES : 0;
+    }
+
+    public int writerFlags() {
+        return this == COMPACT ? ClassWriter.COMPUTE_FRAMES : 0;
+    }
+
+    public static TextifierProfile of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown profile \"" + name + "\"");
+        }
+    }
+
+}
@@ -0,0 +1,48 @@
+package xyz.wagyourtail.asmreader.dedup;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Attribute;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+
+// the other half of SharedBodyVisitor, only the code goes through
+public class BodyOnlyVisitor extends MethodVisitor {
+
+    public BodyOnlyVisitor(MethodVisitor delegate) {
+        super(Opcodes.ASM9, delegate);
+    }
+
+    @Override
+    public void visitParameter(String name, int access) {
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotationDefault() {
+        return null;
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        return null;
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return null;
+    }
+
+    @Override
+    public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+    }
+
+    @Override
+    public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+        return null;
+    }
+
+    @Override
+    public void visitAttribute(Attribute attribute) {
+    }
+
+}
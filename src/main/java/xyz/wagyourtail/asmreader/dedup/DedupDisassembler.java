@@ -0,0 +1,198 @@
+package xyz.wagyourtail.asmreader.dedup;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.TraceMethodVisitor;
+import xyz.wagyourtail.asmreader.DeterministicTextifier;
+import xyz.wagyourtail.asmreader.FormatCache;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.StreamingTextifier;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.fingerprint.Fingerprint;
+import xyz.wagyourtail.asmreader.fingerprint.FingerprintMethodVisitor;
+import xyz.wagyourtail.asmreader.iofunction.IOFunction;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.MemoryGovernor;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.io.StringWriter;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+
+// disassembles to a directory like ClassStreams.disassembleToDirectory, but every method body that shows up
+// more than once is written once to .bodies/<hash>.javasm and the methods only get a BODYREF <hash> line.
+// the first pass only hashes bodies, the second formats each shared body a single time
+public class DedupDisassembler {
+    public static final String BODIES = ".bodies";
+    // smaller bodies aren't worth a file of their own
+    public static final int DEFAULT_MIN_INSTRUCTIONS = 4;
+
+    private final int workers;
+    private final TextifierProfile profile;
+    private final int minInstructions;
+
+    public DedupDisassembler(int workers, TextifierProfile profile) {
+        this(workers, profile, DEFAULT_MIN_INSTRUCTIONS);
+    }
+
+    public DedupDisassembler(int workers, TextifierProfile profile, int minInstructions) {
+        this.workers = workers;
+        this.profile = profile;
+        this.minInstructions = minInstructions;
+    }
+
+    // source is read twice
+    public Result disassemble(IOSupplier<IOSupplier<ClassEntry>> source, Path dir) throws IOException {
+        long start = System.nanoTime();
+        Map<Fingerprint, Integer> counts = new HashMap<>();
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, List<Fingerprint>>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source.get(), entry -> {
+                List<Fingerprint> bodies = new ArrayList<>();
+                for (Fingerprint body : bodies(read(entry.bytes()))) {
+                    if (body != null) {
+                        bodies.add(body);
+                    }
+                }
+                return bodies;
+            }, bodies -> {
+                for (Fingerprint body : bodies) {
+                    counts.merge(body, 1, Integer::sum);
+                }
+            });
+        }
+        counts.values().removeIf(e -> e < 2);
+        Set<Fingerprint> shared = counts.keySet();
+        Set<Fingerprint> written = ConcurrentHashMap.newKeySet();
+        Path bodiesDir = dir.resolve(BODIES);
+        Files.createDirectories(bodiesDir);
+        long[] totals = new long[3];
+        Map<String, String> claimed = new ConcurrentHashMap<>();
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, long[]>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source.get(), entry -> {
+                ClassNode node = read(entry.bytes());
+                Fingerprint[] bodies = bodies(node);
+                long refs = 0;
+                for (int i = 0; i < bodies.length; i++) {
+                    if (bodies[i] == null || !shared.contains(bodies[i])) {
+                        bodies[i] = null;
+                        continue;
+                    }
+                    refs++;
+                    // whoever gets to a body first writes it, nobody else formats it
+                    if (written.add(bodies[i])) {
+                        Files.writeString(bodiesDir.resolve(bodies[i] + ".javasm"), bodyText(node.methods.get(i)), StandardCharsets.UTF_8);
+                    }
+                }
+                String output = ClassStreams.outputName(entry.name(), node.name);
+                ClassStreams.claim(claimed, output, entry.name() == null ? node.name : entry.name());
+                Path file = dir.resolve(output);
+                Files.createDirectories(file.getParent());
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    StreamingTextifier textifier = new StreamingTextifier(out, FormatCache.DEFAULT, profile);
+                    Main.classToTextify(v -> node.accept(new ClassVisitor(Opcodes.ASM9, v) {
+                        private int index;
+
+                        @Override
+                        public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                            Fingerprint body = bodies[index++];
+                            if (body == null) {
+                                return super.visitMethod(access, name, descriptor, signature, exceptions);
+                            }
+                            // what TraceClassVisitor would do, but keeping hold of the method's printer for the BODYREF
+                            DeterministicTextifier printer = textifier.visitMethod(access, name, descriptor, signature, exceptions);
+                            return new SharedBodyVisitor(new TraceMethodVisitor(printer), printer, body.toString());
+                        }
+                    }), textifier);
+                }
+                return new long[]{node.methods.size(), refs};
+            }, counted -> {
+                totals[0]++;
+                totals[1] += counted[0];
+                totals[2] += counted[1];
+            });
+        }
+        // bodies an earlier run into the same directory wrote that nothing refers to anymore
+        Set<String> current = new HashSet<>();
+        for (Fingerprint body : written) {
+            current.add(body + ".javasm");
+        }
+        try (Stream<Path> files = Files.list(bodiesDir)) {
+            for (Path file : (Iterable<Path>) files::iterator) {
+                if (!current.contains(file.getFileName().toString())) {
+                    Files.delete(file);
+                }
+            }
+        }
+        return new Result(totals[0], totals[1], totals[2], shared.size(), System.nanoTime() - start);
+    }
+
+    private ClassNode read(byte[] bytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, profile.readerFlags());
+        return node;
+    }
+
+    // body hash per method, null if it has no code or too little of it
+    private Fingerprint[] bodies(ClassNode node) {
+        Fingerprint[] bodies = new Fingerprint[node.methods.size()];
+        for (int i = 0; i < bodies.length; i++) {
+            MethodNode method = node.methods.get(i);
+            int instructions = 0;
+            for (AbstractInsnNode insn : method.instructions) {
+                if (insn.getOpcode() >= 0) {
+                    instructions++;
+                }
+            }
+            if (instructions >= minInstructions) {
+                bodies[i] = FingerprintMethodVisitor.fingerprint(method, profile).body();
+            }
+        }
+        return bodies;
+    }
+
+    private String bodyText(MethodNode method) {
+        DeterministicTextifier textifier = new DeterministicTextifier(FormatCache.DEFAULT, profile);
+        method.accept(new BodyOnlyVisitor(new TraceMethodVisitor(textifier)));
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        textifier.print(pw);
+        pw.flush();
+        return sw.toString();
+    }
+
+    // what ClassReader.setBodies wants for a directory written by this
+    public static IOFunction<String, String> bodies(Path dir) {
+        Path bodiesDir = dir.resolve(BODIES);
+        return hash -> {
+            if (!hash.matches("[0-9a-f]{32}")) {
+                return null;
+            }
+            Path file = bodiesDir.resolve(hash + ".javasm");
+            return Files.exists(file) ? Files.readString(file, StandardCharsets.UTF_8) : null;
+        };
+    }
+
+    public record Result(long classes, long methods, long refs, long bodies, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("%d classes, %d methods in %.2fs, %d methods share %d bodies", classes, methods, nanos / 1e9, refs, bodies);
+        }
+
+    }
+
+}
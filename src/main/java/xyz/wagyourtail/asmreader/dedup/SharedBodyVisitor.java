@@ -0,0 +1,124 @@
+package xyz.wagyourtail.asmreader.dedup;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.TypePath;
+import xyz.wagyourtail.asmreader.DeterministicTextifier;
+
+// passes the method header and annotations through but none of the code, which is replaced with
+// a BODYREF line pointing at the shared body. printer is the one the delegate prints the method with
+public class SharedBodyVisitor extends MethodVisitor {
+    private final DeterministicTextifier printer;
+    private final String hash;
+
+    public SharedBodyVisitor(MethodVisitor delegate, DeterministicTextifier printer, String hash) {
+        super(Opcodes.ASM9, delegate);
+        this.printer = printer;
+        this.hash = hash;
+    }
+
+    @Override
+    public void visitCode() {
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+    }
+
+    @Override
+    public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return null;
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+    }
+
+    @Override
+    public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return null;
+    }
+
+    @Override
+    public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+    }
+
+    @Override
+    public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+        return null;
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+    }
+
+    @Override
+    public void visitEnd() {
+        printer.visitBodyRef(hash);
+        super.visitEnd();
+    }
+
+}
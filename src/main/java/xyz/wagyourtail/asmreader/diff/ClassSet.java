@@ -0,0 +1,82 @@
+package xyz.wagyourtail.asmreader.diff;
+
+import org.objectweb.asm.ClassReader;
+
+import java.io.Closeable;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Enumeration;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// one side of a diff, a jar or a single class file. classes are only read when asked for,
+// ZipFile is safe to read from several workers at once
+public class ClassSet implements Closeable {
+    private final ZipFile zip;
+    private final Map<String, ZipEntry> entries;
+    private final String className;
+    private final byte[] classBytes;
+
+    private ClassSet(ZipFile zip, Map<String, ZipEntry> entries, String className, byte[] classBytes) {
+        this.zip = zip;
+        this.entries = entries;
+        this.className = className;
+        this.classBytes = classBytes;
+    }
+
+    public static ClassSet open(Path path) throws IOException {
+        if (path.toString().endsWith(".class")) {
+            byte[] bytes = Files.readAllBytes(path);
+            return new ClassSet(null, null, new ClassReader(bytes).getClassName(), bytes);
+        }
+        ZipFile zip = new ZipFile(path.toFile());
+        Map<String, ZipEntry> entries = new TreeMap<>();
+        Enumeration<? extends ZipEntry> e = zip.entries();
+        while (e.hasMoreElements()) {
+            ZipEntry entry = e.nextElement();
+            if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                String name = entry.getName();
+                entries.put(name.substring(0, name.length() - ".class".length()), entry);
+            }
+        }
+        return new ClassSet(zip, entries, null, null);
+    }
+
+    public boolean isSingleClass() {
+        return zip == null;
+    }
+
+    public Iterable<String> names() {
+        return zip == null ? List.of(className) : entries.keySet();
+    }
+
+    public boolean contains(String name) {
+        return zip == null ? className.equals(name) : entries.containsKey(name);
+    }
+
+    public byte[] read(String name) throws IOException {
+        if (zip == null) {
+            return className.equals(name) ? classBytes : null;
+        }
+        ZipEntry entry = entries.get(name);
+        if (entry == null) {
+            return null;
+        }
+        try (InputStream is = zip.getInputStream(entry)) {
+            return is.readAllBytes();
+        }
+    }
+
+    @Override
+    public void close() throws IOException {
+        if (zip != null) {
+            zip.close();
+        }
+    }
+
+}
@@ -0,0 +1,189 @@
+package xyz.wagyourtail.asmreader.diff;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.fingerprint.ClassFingerprint;
+import xyz.wagyourtail.asmreader.fingerprint.FingerprintClassVisitor;
+import xyz.wagyourtail.asmreader.fingerprint.MemberFingerprint;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.ParallelDisassembler;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+// compares two jars (or two class files) class by class and method by method. fingerprints are compared
+// on the workers, only methods whose fingerprints differ get textified, everything is written in class name order
+public class JarDiff {
+    private final int workers;
+    private final TextifierProfile profile;
+
+    public JarDiff(int workers, TextifierProfile profile) {
+        this.workers = workers;
+        this.profile = profile;
+    }
+
+    public Result diff(ClassSet oldSet, ClassSet newSet, Writer out) throws IOException {
+        long start = System.nanoTime();
+        long[] totals = new long[5];
+        new Pipeline<Pair, ClassDiff>(workers, ClassStreams.DEFAULT_CAPACITY).run(pairs(oldSet, newSet), pair -> diff(oldSet, newSet, pair), diff -> {
+            totals[0]++;
+            switch (diff.status()) {
+                case CHANGED -> totals[1]++;
+                case ADDED -> totals[2]++;
+                case REMOVED -> totals[3]++;
+            }
+            totals[4] += diff.methods();
+            out.write(diff.text());
+        });
+        return new Result(totals[0], totals[1], totals[2], totals[3], totals[4], System.nanoTime() - start);
+    }
+
+    private static IOSupplier<Pair> pairs(ClassSet oldSet, ClassSet newSet) {
+        if (oldSet.isSingleClass() && newSet.isSingleClass()) {
+            // two class files are compared even if the class was renamed
+            Iterator<Pair> single = List.of(new Pair(oldSet.names().iterator().next(), newSet.names().iterator().next())).iterator();
+            return () -> single.hasNext() ? single.next() : null;
+        }
+        SortedSet<String> names = new TreeSet<>();
+        oldSet.names().forEach(names::add);
+        newSet.names().forEach(names::add);
+        Iterator<String> it = names.iterator();
+        return () -> {
+            if (!it.hasNext()) {
+                return null;
+            }
+            String name = it.next();
+            return new Pair(oldSet.contains(name) ? name : null, newSet.contains(name) ? name : null);
+        };
+    }
+
+    private ClassDiff diff(ClassSet oldSet, ClassSet newSet, Pair pair) throws IOException {
+        if (pair.oldName() == null) {
+            return new ClassDiff(Status.ADDED, "Only in new: " + pair.newName() + "\n", 0);
+        }
+        if (pair.newName() == null) {
+            return new ClassDiff(Status.REMOVED, "Only in old: " + pair.oldName() + "\n", 0);
+        }
+        byte[] oldBytes = oldSet.read(pair.oldName());
+        byte[] newBytes = newSet.read(pair.newName());
+        if (Arrays.equals(oldBytes, newBytes)) {
+            return new ClassDiff(Status.UNCHANGED, "", 0);
+        }
+        ClassFingerprint oldPrint = FingerprintClassVisitor.fingerprint(oldBytes, profile);
+        ClassFingerprint newPrint = FingerprintClassVisitor.fingerprint(newBytes, profile);
+        if (oldPrint.fingerprint().equals(newPrint.fingerprint())) {
+            return new ClassDiff(Status.UNCHANGED, "", 0);
+        }
+        ClassNode oldNode = read(oldBytes);
+        ClassNode newNode = read(newBytes);
+        StringBuilder sb = new StringBuilder();
+        sb.append("--- a/").append(pair.oldName()).append(".javasm\n");
+        sb.append("+++ b/").append(pair.newName()).append(".javasm\n");
+        if (!oldPrint.header().equals(newPrint.header()) || !oldPrint.fields().equals(newPrint.fields())) {
+            sb.append(UnifiedDiff.diff(skeleton(oldNode), skeleton(newNode), null));
+        }
+        Map<String, MemberFingerprint> oldMethods = oldPrint.methodsByKey();
+        Map<String, MemberFingerprint> newMethods = newPrint.methodsByKey();
+        // moving methods around changes the class text without changing any method, the methods both sides have
+        // are listed in order so that still shows up
+        String oldOrder = order(oldMethods.keySet(), newMethods.keySet());
+        String newOrder = order(newMethods.keySet(), oldMethods.keySet());
+        if (!oldOrder.equals(newOrder)) {
+            sb.append(UnifiedDiff.diff(oldOrder, newOrder, "method order"));
+        }
+        Set<String> keys = new LinkedHashSet<>(oldMethods.keySet());
+        keys.addAll(newMethods.keySet());
+        int changed = 0;
+        for (String key : keys) {
+            MemberFingerprint oldMethod = oldMethods.get(key);
+            MemberFingerprint newMethod = newMethods.get(key);
+            if (oldMethod != null && newMethod != null && oldMethod.fingerprint().equals(newMethod.fingerprint())) {
+                continue;
+            }
+            String oldText = oldMethod == null ? "" : methodText(oldNode, key);
+            String newText = newMethod == null ? "" : methodText(newNode, key);
+            sb.append(UnifiedDiff.diff(oldText, newText, key));
+            changed++;
+        }
+        return new ClassDiff(Status.CHANGED, sb.toString(), changed);
+    }
+
+    private static String order(Set<String> keys, Set<String> other) {
+        StringBuilder sb = new StringBuilder();
+        for (String key : keys) {
+            if (other.contains(key)) {
+                sb.append(key).append('\n');
+            }
+        }
+        return sb.toString();
+    }
+
+    private ClassNode read(byte[] bytes) {
+        ClassNode node = new ClassNode();
+        new ClassReader(bytes).accept(node, profile.readerFlags());
+        return node;
+    }
+
+    // the class without its methods, fields are small enough to just go along with the header
+    private String skeleton(ClassNode node) throws IOException {
+        return Main.classToTextify(v -> node.accept(new ClassVisitor(Opcodes.ASM9, v) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return null;
+            }
+        }), profile);
+    }
+
+    private String methodText(ClassNode owner, String key) {
+        for (MethodNode method : owner.methods) {
+            if (key.equals(method.name + method.desc)) {
+                StringBuilder sb = new StringBuilder();
+                append(sb, ParallelDisassembler.textifyMethod(owner, method, profile));
+                return sb.toString();
+            }
+        }
+        throw new IllegalStateException("Method " + key + " not found in " + owner.name);
+    }
+
+    private static void append(StringBuilder sb, List<?> text) {
+        for (Object o : text) {
+            if (o instanceof List<?> l) {
+                append(sb, l);
+            } else {
+                sb.append(o);
+            }
+        }
+    }
+
+    private record Pair(String oldName, String newName) {
+    }
+
+    private record ClassDiff(Status status, String text, int methods) {
+    }
+
+    public enum Status {
+        UNCHANGED,
+        CHANGED,
+        ADDED,
+        REMOVED
+    }
+
+    public record Result(long classes, long changed, long added, long removed, long methods, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("%d classes compared in %.2fs, %d changed (%d methods), %d added, %d removed", classes, nanos / 1e9, changed, methods, added, removed);
+        }
+
+    }
+
+}
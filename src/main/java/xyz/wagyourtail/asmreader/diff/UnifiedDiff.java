@@ -0,0 +1,172 @@
+package xyz.wagyourtail.asmreader.diff;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+// myers' O(ND) line diff, formatted like diff -u
+public class UnifiedDiff {
+    public static final int DEFAULT_CONTEXT = 3;
+
+    public static List<String> lines(String text) {
+        if (text.isEmpty()) {
+            return List.of();
+        }
+        List<String> lines = new ArrayList<>(Arrays.asList(text.split("\n", -1)));
+        // trailing newline doesn't make an extra empty line
+        if (lines.get(lines.size() - 1).isEmpty()) {
+            lines.remove(lines.size() - 1);
+        }
+        return lines;
+    }
+
+    public static List<Edit> edits(List<String> a, List<String> b) {
+        // common prefix/suffix are cheap to strip and keep the trace small
+        int prefix = 0;
+        while (prefix < a.size() && prefix < b.size() && a.get(prefix).equals(b.get(prefix))) {
+            prefix++;
+        }
+        int suffix = 0;
+        while (suffix < a.size() - prefix && suffix < b.size() - prefix && a.get(a.size() - 1 - suffix).equals(b.get(b.size() - 1 - suffix))) {
+            suffix++;
+        }
+        List<Edit> edits = new ArrayList<>(Math.max(a.size(), b.size()));
+        for (int i = 0; i < prefix; i++) {
+            edits.add(new Edit(' ', a.get(i)));
+        }
+        myers(a.subList(prefix, a.size() - suffix), b.subList(prefix, b.size() - suffix), edits);
+        for (int i = a.size() - suffix; i < a.size(); i++) {
+            edits.add(new Edit(' ', a.get(i)));
+        }
+        return edits;
+    }
+
+    private static void myers(List<String> a, List<String> b, List<Edit> out) {
+        int n = a.size();
+        int m = b.size();
+        int max = n + m;
+        int offset = max + 1;
+        int[] v = new int[2 * max + 3];
+        // step d only reads diagonals -(d-1)..d-1 of the step before, so that's all that's kept of it,
+        // the trace grows with the edit distance squared rather than with it times the input size
+        List<int[]> trace = new ArrayList<>();
+        int end = -1;
+        for (int d = 0; d <= max && end < 0; d++) {
+            trace.add(Arrays.copyOfRange(v, offset - Math.max(d - 1, 0), offset + d));
+            for (int k = -d; k <= d; k += 2) {
+                int x;
+                if (k == -d || (k != d && v[offset + k - 1] < v[offset + k + 1])) {
+                    x = v[offset + k + 1];
+                } else {
+                    x = v[offset + k - 1] + 1;
+                }
+                int y = x - k;
+                while (x < n && y < m && a.get(x).equals(b.get(y))) {
+                    x++;
+                    y++;
+                }
+                v[offset + k] = x;
+                if (x >= n && y >= m) {
+                    end = d;
+                    break;
+                }
+            }
+        }
+        // walk the trace back from (n, m), edits come out reversed
+        List<Edit> reversed = new ArrayList<>();
+        int x = n;
+        int y = m;
+        for (int d = end; d > 0; d--) {
+            // prev[0] is diagonal -(d-1)
+            int[] prev = trace.get(d);
+            int base = d - 1;
+            int k = x - y;
+            int prevK;
+            if (k == -d || (k != d && prev[base + k - 1] < prev[base + k + 1])) {
+                prevK = k + 1;
+            } else {
+                prevK = k - 1;
+            }
+            int prevX = prev[base + prevK];
+            int prevY = prevX - prevK;
+            while (x > prevX && y > prevY) {
+                reversed.add(new Edit(' ', a.get(--x)));
+                y--;
+            }
+            if (x == prevX) {
+                reversed.add(new Edit('+', b.get(--y)));
+            } else {
+                reversed.add(new Edit('-', a.get(--x)));
+            }
+        }
+        while (x > 0 && y > 0) {
+            reversed.add(new Edit(' ', a.get(--x)));
+            y--;
+        }
+        for (int i = reversed.size() - 1; i >= 0; i--) {
+            out.add(reversed.get(i));
+        }
+    }
+
+    // hunks only, the ---/+++ header is up to the caller. empty if nothing changed
+    public static String format(List<Edit> edits, int context, String heading) {
+        StringBuilder sb = new StringBuilder();
+        int i = 0;
+        int oldLine = 0;
+        int newLine = 0;
+        while (i < edits.size()) {
+            // find the next change
+            int change = i;
+            while (change < edits.size() && edits.get(change).op() == ' ') {
+                change++;
+            }
+            if (change == edits.size()) {
+                break;
+            }
+            int start = Math.max(i, change - context);
+            oldLine += start - i;
+            newLine += start - i;
+            // extend the hunk while the gap between changes is small enough to share context
+            int end = change;
+            int lastChange = change;
+            while (end < edits.size()) {
+                if (edits.get(end).op() != ' ') {
+                    lastChange = end;
+                } else if (end - lastChange > 2 * context) {
+                    break;
+                }
+                end++;
+            }
+            end = Math.min(edits.size(), lastChange + context + 1);
+            int oldCount = 0;
+            int newCount = 0;
+            for (int j = start; j < end; j++) {
+                char op = edits.get(j).op();
+                if (op != '+') oldCount++;
+                if (op != '-') newCount++;
+            }
+            sb.append("@@ -").append(oldCount == 0 ? oldLine : oldLine + 1).append(',').append(oldCount);
+            sb.append(" +").append(newCount == 0 ? newLine : newLine + 1).append(',').append(newCount).append(" @@");
+            if (heading != null) {
+                sb.append(' ').append(heading);
+            }
+            sb.append('\n');
+            for (int j = start; j < end; j++) {
+                Edit edit = edits.get(j);
+                sb.append(edit.op()).append(edit.line()).append('\n');
+            }
+            oldLine += oldCount;
+            newLine += newCount;
+            i = end;
+        }
+        return sb.toString();
+    }
+
+    public static String diff(String a, String b, String heading) {
+        return format(edits(lines(a), lines(b)), DEFAULT_CONTEXT, heading);
+    }
+
+    public record Edit(char op, String line) {
+    }
+
+}
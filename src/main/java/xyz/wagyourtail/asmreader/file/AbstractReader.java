@@ -2,6 +2,7 @@ package xyz.wagyourtail.asmreader.file;
 
 import org.objectweb.asm.*;
 import org.objectweb.asm.util.Printer;
+import xyz.wagyourtail.asmreader.token.Keyword;
 import xyz.wagyourtail.asmreader.token.Token;
 import xyz.wagyourtail.asmreader.token.TokenReader;
 import xyz.wagyourtail.asmreader.token.TokenType;
@@ -46,10 +47,14 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
             "LOCALVARIABLE",
             "MAXSTACK",
             "MAXLOCALS",
-            "TRYCATCHBLOCK"
+            "TRYCATCHBLOCK",
+            "BODYREF"
     );
     public static final Pattern ANNOTABLE_PARAMETER_COUNT = Pattern.compile("^\\s*annotable\\s*parameter\\s*count:?\\s*(?<count>\\d+)\\s*\\((?<invisible>invisible|visible)\\)", Pattern.CASE_INSENSITIVE);
     public static final Pattern HANDLE_KIND = Pattern.compile("^\\s*handle\\s*kind:?\\s*0x(?<kind>[\\da-fA-F]+)\\s*:\\s*(?<type>.*)", Pattern.CASE_INSENSITIVE);
+    // what can follow an annotation on its line, "invisible", "parameter 0" or "invisible, parameter 0"
+    public static final Pattern ANNOTATION_TRAILER = Pattern.compile("^\\s*(?:invisible\\b|parameter\\s+\\d+\\s*$)", Pattern.CASE_INSENSITIVE);
+    public static final Pattern CONSTANT_DYNAMIC = Pattern.compile("^\\s*constant\\s*dynamic:?", Pattern.CASE_INSENSITIVE);
     public static final Set<Integer> CLASS_TYPE_REF = Set.of(TypeReference.CLASS_TYPE_PARAMETER, TypeReference.CLASS_TYPE_PARAMETER_BOUND, TypeReference.CLASS_EXTENDS);
     protected static final Map<String, Integer> ACCESS_MAP = Map.ofEntries(
             Map.entry("PUBLIC", Opcodes.ACC_PUBLIC),
@@ -108,17 +113,70 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
 
     public static int getAccess(TokenReader lister) throws IOException {
         int access = 0;
-        Token tk;
-        while ((tk = lister.popIf(t -> t.type == TokenType.TOKEN && ACCESS_MAP.containsKey(t.value.toUpperCase()))) != null) {
-            access |= ACCESS_MAP.get(tk.value.toUpperCase());
+        while (true) {
+            Token tk = lister.peek();
+            Integer flag = tk.type == TokenType.TOKEN ? ACCESS_MAP.get(tk.value.toUpperCase()) : null;
+            if (flag == null) {
+                return access;
+            }
+            lister.pop();
+            access |= flag;
         }
-        return access;
+    }
+
+    // a throws list has no end marker, it stops at whatever starts the method's content
+    public static boolean isException(String value) {
+        return !value.equals("}") && !value.startsWith("@") && !isLabel(value) && !OPCODES.containsKey(value.toUpperCase()) && !SPECIAL_OPCODES.contains(value.toUpperCase());
+    }
+
+    // L0, L1, ... without a regex, labels are on every jump and there's a lot of those
+    public static boolean isLabel(String value) {
+        if (value.length() < 2 || value.charAt(0) != 'L') {
+            return false;
+        }
+        for (int i = 1; i < value.length(); i++) {
+            char c = value.charAt(i);
+            if (c < '0' || c > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // <type>.class, ldc and bootstrap args print the descriptor, annotation values the java name (int, java.lang.String[])
+    public static Type classLiteral(String value) {
+        value = value.substring(0, value.length() - ".class".length());
+        if (value.startsWith("[") || value.endsWith(";")) {
+            return Type.getType(value);
+        }
+        int dims = 0;
+        while (value.endsWith("[]")) {
+            value = value.substring(0, value.length() - 2);
+            dims++;
+        }
+        Type type = switch (value) {
+            case "void" -> Type.VOID_TYPE;
+            case "boolean" -> Type.BOOLEAN_TYPE;
+            case "char" -> Type.CHAR_TYPE;
+            case "byte" -> Type.BYTE_TYPE;
+            case "short" -> Type.SHORT_TYPE;
+            case "int" -> Type.INT_TYPE;
+            case "float" -> Type.FLOAT_TYPE;
+            case "long" -> Type.LONG_TYPE;
+            case "double" -> Type.DOUBLE_TYPE;
+            default -> Type.getObjectType(value.replace('.', '/'));
+        };
+        return dims == 0 ? type : Type.getType("[".repeat(dims) + type.getDescriptor());
     }
 
     public static int indexOfFirst(String val, char... c) {
+        return indexOfFirst(val, 0, c);
+    }
+
+    public static int indexOfFirst(String val, int from, char... c) {
         int min = -1;
         for (char ch : c) {
-            int i = val.indexOf(ch);
+            int i = val.indexOf(ch, from);
             if (i != -1 && (min == -1 || i < min)) {
                 min = i;
             }
@@ -127,7 +185,7 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
     }
 
     protected String readSignature() throws IOException {
-        Token tk = reader.popIf(t -> t.type == TokenType.COMMENT && SIGNATURE.matcher(t.value).find());
+        Token tk = reader.popIf(Keyword.SIGNATURE, SIGNATURE);
         if (tk == null) {
             return null;
         }
@@ -136,7 +194,7 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
         return m.group("signature");
     }
 
-    private static final Predicate<String> DOUBLE_VALUE = Pattern.compile("[\\-+]?(?:\\d+[fd](?:e\\d+)?|(?:\\d*\\.\\d+(?:e\\d+)?|infinity|nan)[fd]?)", Pattern.CASE_INSENSITIVE).asMatchPredicate();
+    private static final Predicate<String> DOUBLE_VALUE = Pattern.compile("[\\-+]?(?:\\d+[fd](?:e[\\-+]?\\d+)?|(?:\\d*\\.\\d+(?:e[\\-+]?\\d+)?|infinity|nan)[fd]?)", Pattern.CASE_INSENSITIVE).asMatchPredicate();
 
     protected Object readPrimitive(Token tk, int offset) throws IOException {
         if (tk.type == TokenType.STRING) {
@@ -153,7 +211,7 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
         String value = tk.value;
         if (value.endsWith(".class")) {
             // class
-            return Type.getType(value.substring(0, value.length() - 6).replace('.', '/'));
+            return classLiteral(value);
         }
         if (value.endsWith(",")) {
             value = value.substring(0, value.length() - 1);
@@ -218,12 +276,14 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
         Integer handleType = null;
         List<Object> args = new ArrayList<>();
         while (reader.peekExpect(TokenType.TOKEN, Set.of("]", "],")) == null) {
-            Token handleKind = reader.popIf(t -> t.type == TokenType.COMMENT && HANDLE_KIND.matcher(t.value).find());
+            Token handleKind = reader.popIf(Keyword.HANDLE_KIND, HANDLE_KIND);
             if (handleKind != null) {
                 Matcher m = HANDLE_KIND.matcher(handleKind.value);
                 m.find();
                 handleType = Integer.parseInt(m.group("kind"), 16);
             }
+            // condy with a primitive descriptor only gives itself away through the comment
+            Token condy = reader.popIf(Keyword.CONSTANT_DYNAMIC, CONSTANT_DYNAMIC);
             Token nextTk = reader.popNonComment();
             Object next = null;
             if (nextTk.type == TokenType.TOKEN && nextTk.value.equals(",")) {
@@ -275,15 +335,16 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
                 }
                 next = new Handle(handleType, owner, hname, hdesc, itf);
                 handleType = null;
-            } else if (nextTk.type == TokenType.TOKEN && nextTk.value.startsWith("L") && nextTk.value.endsWith(";")) {
+            } else if (condy != null || nextTk.type == TokenType.TOKEN && nextTk.value.startsWith("L") && nextTk.value.endsWith(";")) {
                 next = readCondy(nextTk);
             } else {
                 String ivalue = nextTk.value;
                 if (ivalue.endsWith(",")) {
                     ivalue = ivalue.substring(0, ivalue.length() - 1);
                 }
-                if (ivalue.endsWith(".class")) {
-                    next = Type.getObjectType(ivalue.substring(0, ivalue.length() - 6).replace('.', '/'));
+                // a string recipe can end in .class too
+                if (nextTk.type == TokenType.TOKEN && ivalue.endsWith(".class")) {
+                    next = classLiteral(ivalue);
                 } else {
                     try {
                         next = readPrimitive(nextTk, 0);
@@ -358,25 +419,25 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
                 value = tk.value;
             }
         }
-        Token typeAnnotation = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals(":"));
+        Token typeAnnotation = reader.popIf(TokenType.TOKEN, ":");
         AnnotationVisitor av;
         if (typeAnnotation != null) {
             int typeRef = reverseTypeRef();
             TypePath typePath = reverseTypePath();
-            Token lvAnnotation = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("["));
+            Token lvAnnotation = reader.popIf(TokenType.TOKEN, "[");
             if (lvAnnotation != null) {
                 List<Label> start = new ArrayList<>();
                 List<Label> end = new ArrayList<>();
                 List<Integer> index = new ArrayList<>();
                 do {
                     Token startL = reader.popNonCommentExpect(TokenType.TOKEN);
-                    if (!startL.value.matches("L\\d+")) {
+                    if (!isLabel(startL.value)) {
                         reader.throwAtPos("Expected label");
                     }
                     start.add(labels.computeIfAbsent(Integer.parseInt(startL.value.substring(1)), e -> new Label()));
                     reader.popNonCommentExpect(TokenType.TOKEN, "-");
                     Token endL = reader.popNonCommentExpect(TokenType.TOKEN);
-                    if (!endL.value.matches("L\\d+")) {
+                    if (!isLabel(endL.value)) {
                         reader.throwAtPos("Expected label");
                     }
                     end.add(labels.computeIfAbsent(Integer.parseInt(endL.value.substring(1)), e -> new Label()));
@@ -387,21 +448,21 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
                     }
                     index.add(Integer.parseInt(indexL.value));
                     reader.popNonCommentExpect(TokenType.TOKEN, "]");
-                } while (reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("[")) != null);
-                Token invis = reader.popIf(t -> t.type == TokenType.COMMENT);
+                } while (reader.popIf(TokenType.TOKEN, "[") != null);
+                Token invis = reader.popIf(TokenType.COMMENT, ANNOTATION_TRAILER);
                 av = visitor.visitLocalVariableAnnotation(typeRef, typePath, start.toArray(new Label[0]), end.toArray(new Label[0]), index.stream().mapToInt(e -> e).toArray(), type.getDescriptor(), invis);
             } else {
                 // read to see if we have an "invisible" comment
-                Token invis = reader.popIf(t -> t.type == TokenType.COMMENT);
+                Token invis = reader.popIf(TokenType.COMMENT, ANNOTATION_TRAILER);
                 av = visitor.visitTypeAnnotation(typeRef, typePath, type.getDescriptor(), invis);
             }
         } else {
             // read to see if we have an "invisible" comment
-            Token invis = reader.popIf(t -> t.type == TokenType.COMMENT);
+            Token invis = reader.popIf(TokenType.COMMENT, ANNOTATION_TRAILER);
             av = visitor.visitAnnotation(type.getDescriptor(), invis);
         }
-        String content = readAnnotationContent(sb.toString().trim(), av);
-        if (!content.isEmpty()) {
+        String content = sb.toString().trim();
+        if (readAnnotationContent(content, 0, av) != content.length()) {
             reader.throwAtPos("Unexpected content after annotation )");
         }
         av.visitEnd();
@@ -529,76 +590,75 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
         return TypePath.fromString(tk.value);
     }
 
-    protected String readAnnotationContent(String annotation, AnnotationVisitor visitor) throws IOException {
+    // everything below works on an index into the one annotation string, slicing off what was read
+    // copied the rest of it every time, which made deeply nested annotations quadratic
+    protected int readAnnotationContent(String annotation, int pos, AnnotationVisitor visitor) throws IOException {
         // annotation should look like (name=value,name2={arr1,arr2}), values can be annotations, or primitives
         // remove first/last char, check if ()
-        if (annotation.charAt(0) != '(') {
-            reader.throwAtPos("Expected annotation to start with ( and end with )", -annotation.length());
+        if (!annotation.startsWith("(", pos)) {
+            reader.throwAtPos("Expected annotation to start with ( and end with )", pos - annotation.length());
         }
-        annotation = annotation.substring(1);
-        while (!annotation.startsWith(")")) {
+        pos++;
+        while (!annotation.startsWith(")", pos)) {
             // read name
-            int eq = annotation.indexOf('=');
+            int eq = annotation.indexOf('=', pos);
             if (eq == -1) {
-                reader.throwAtPos("Expected = in annotation", -annotation.length());
+                reader.throwAtPos("Expected = in annotation", pos - annotation.length());
             }
-            if (annotation.startsWith(",")) {
+            if (annotation.startsWith(",", pos)) {
                 // skip comma
-                annotation = annotation.substring(1);
-                eq--;
+                pos++;
             }
-            String name = annotation.substring(0, eq).trim();
-            annotation = readAnnotationValue(annotation.substring(eq + 1).trim(), name, visitor);
+            String name = annotation.substring(pos, eq).trim();
+            pos = readAnnotationValue(annotation, eq + 1, name, visitor);
         }
-        return annotation.substring(1);
+        return pos + 1;
     }
 
-    protected String readAnnotationArray(String annotationContent, AnnotationVisitor visitor) throws IOException {
-        while (!annotationContent.startsWith("}")) {
-            if (annotationContent.startsWith("{")) {
-                annotationContent = readAnnotationArray(annotationContent.substring(1), visitor.visitArray(null));
-            } else if (!annotationContent.startsWith(",")) {
-                annotationContent = readAnnotationValue(annotationContent, null, visitor);
+    protected int readAnnotationArray(String annotation, int pos, AnnotationVisitor visitor) throws IOException {
+        while (!annotation.startsWith("}", pos)) {
+            if (annotation.startsWith("{", pos)) {
+                pos = readAnnotationArray(annotation, pos + 1, visitor.visitArray(null));
+            } else if (!annotation.startsWith(",", pos)) {
+                pos = readAnnotationValue(annotation, pos, null, visitor);
             } else {
                 // skip comma
-                annotationContent = annotationContent.substring(1);
+                pos++;
             }
         }
         visitor.visitEnd();
-        return annotationContent.substring(1);
+        return pos + 1;
     }
 
-    protected String readAnnotationValue(String annotationContent, String name, AnnotationVisitor visitor) throws IOException {
-        annotationContent = annotationContent.stripLeading();
+    protected int readAnnotationValue(String annotation, int pos, String name, AnnotationVisitor visitor) throws IOException {
+        pos = skipWhitespace(annotation, pos);
         // enum, annotation, or primitive
-        if (annotationContent.startsWith("@")) {
+        if (annotation.startsWith("@", pos)) {
             // annotation
-            int semi = annotationContent.indexOf(';');
+            int semi = annotation.indexOf(';', pos);
             if (semi == -1) {
-                reader.throwAtPos("Expected Type Descriptor after @", -annotationContent.length());
+                reader.throwAtPos("Expected Type Descriptor after @", pos - annotation.length());
             }
-            Type type = Type.getType(annotationContent.substring(1, semi + 1));
-            annotationContent = annotationContent.substring(semi + 1).trim();
-            return readAnnotationContent(annotationContent, visitor.visitAnnotation(name, type.getDescriptor()));
-        } else if (annotationContent.startsWith("\"")) {
+            Type type = Type.getType(annotation.substring(pos + 1, semi + 1));
+            return readAnnotationContent(annotation, skipWhitespace(annotation, semi + 1), visitor.visitAnnotation(name, type.getDescriptor()));
+        } else if (annotation.startsWith("\"", pos)) {
             // string
-            annotationContent = annotationContent.substring(1);
-            Matcher m = TokenReader.STRING_CHAR.matcher(annotationContent);
-            if (!m.find()) {
-                reader.throwAtPos("Expected end of string", -annotationContent.length());
-            }
-            visitor.visit(name, annotationContent.substring(0, m.end() - 1).translateEscapes());
-            return annotationContent.substring(m.end());
-        } else if (annotationContent.startsWith("{")) {
+            int end = TokenReader.closingQuote(annotation, pos + 1, '"');
+            if (end == -1) {
+                reader.throwAtPos("Expected end of string", pos + 1 - annotation.length());
+            }
+            visitor.visit(name, annotation.substring(pos + 1, end).translateEscapes());
+            return end + 1;
+        } else if (annotation.startsWith("{", pos)) {
             // array
-            return readAnnotationArray(annotationContent.substring(1), visitor.visitArray(name));
+            return readAnnotationArray(annotation, pos + 1, visitor.visitArray(name));
         } else {
             // primitive
-            int end = indexOfFirst(annotationContent, ',', '}', ')');
+            int end = indexOfFirst(annotation, pos, ',', '}', ')');
             if (end == -1) {
-                reader.throwAtPos("Expected ',', '}' or ')' in annotation", -annotationContent.length());
+                reader.throwAtPos("Expected ',', '}' or ')' in annotation", pos - annotation.length());
             }
-            String value = annotationContent.substring(0, end).trim();
+            String value = annotation.substring(pos, end).trim();
             // class, enum, string or primitive
             if (value.matches("L([^;]+);\\s*\\.\\s*.+")) {
                 // enum
@@ -608,16 +668,15 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
                 visitor.visitEnum(name, enumType.getDescriptor(), enumValue);
             } else if (value.endsWith(".class")) {
                 // class
-                Type type = Type.getObjectType(value.substring(0, value.length() - 6).replace('.', '/'));
-                visitor.visit(name, type);
+                visitor.visit(name, classLiteral(value));
             } else {
                 if (value.startsWith("(")) {
-                    int end2 = indexOfFirst(annotationContent.substring(end + 1), ')', ',', '}');
+                    int end2 = indexOfFirst(annotation, end + 1, ')', ',', '}');
                     if (end2 == -1) {
-                        reader.throwAtPos("Expected ',', '}' or ')' in annotation", -annotationContent.length());
+                        reader.throwAtPos("Expected ',', '}' or ')' in annotation", pos - annotation.length());
                     }
-                    value += annotationContent.substring(end, end + end2 + 1);
-                    end = end + end2 + 1;
+                    value += annotation.substring(end, end2);
+                    end = end2;
                 }
                 TokenType type = TokenType.TOKEN;
                 if (value.startsWith("\"")) {
@@ -627,9 +686,16 @@ public abstract class AbstractReader implements AnnotationVisitorSupplier {
                     type = TokenType.CHAR;
                     value = value.substring(1, value.length() - 1);
                 }
-                visitor.visit(name, readPrimitive(new Token(value, type), -annotationContent.length()));
+                visitor.visit(name, readPrimitive(new Token(value, type), pos - annotation.length()));
             }
-            return annotationContent.substring(end);
+            return end;
+        }
+    }
+
+    private static int skipWhitespace(String val, int pos) {
+        while (pos < val.length() && Character.isWhitespace(val.charAt(pos))) {
+            pos++;
         }
+        return pos;
     }
 }
@@ -1,6 +1,11 @@
 package xyz.wagyourtail.asmreader.file;
 
 import org.objectweb.asm.*;
+import xyz.wagyourtail.asmreader.index.JavasmIndex;
+import xyz.wagyourtail.asmreader.iofunction.IOFunction;
+import xyz.wagyourtail.asmreader.jfr.AssembleClassEvent;
+import xyz.wagyourtail.asmreader.metrics.Metrics;
+import xyz.wagyourtail.asmreader.token.Keyword;
 import xyz.wagyourtail.asmreader.token.Token;
 import xyz.wagyourtail.asmreader.token.TokenReader;
 import xyz.wagyourtail.asmreader.token.TokenType;
@@ -15,23 +20,71 @@ import static org.objectweb.asm.Opcodes.*;
 
 public class ClassReader extends AbstractReader {
     ClassVisitor visitor;
+    IOFunction<String, String> bodies;
+    String name;
+    int methods;
 
     public ClassReader(TokenReader reader) {
         super(reader);
     }
 
+    // needed for classes written by DedupDisassembler, their methods may only have a BODYREF
+    public void setBodies(IOFunction<String, String> bodies) {
+        this.bodies = bodies;
+    }
+
     public void accept(ClassVisitor visitor) throws IOException {
         if (this.visitor != null) throw new IllegalStateException("Already accepted");
         this.visitor = visitor;
+        boolean timed = Metrics.enabled();
+        long start = timed ? System.nanoTime() : 0;
+        long lexStart = reader.lexNanos();
+        AssembleClassEvent event = new AssembleClassEvent();
+        event.begin();
+        long charsStart = reader.charsRead();
         int access = readHeader();
         readContent(access);
         readFooter();
+        if (event.shouldCommit()) {
+            event.className = name;
+            event.methods = methods;
+            event.inputSize = reader.charsRead() - charsStart;
+            event.commit();
+        }
+        if (timed) {
+            // the reader pulls tokens as it goes, so lexing is taken back out of the parse time
+            long lex = reader.lexNanos() - lexStart;
+            Metrics.count(Metrics.Counter.CLASSES_ASSEMBLED, 1);
+            Metrics.time(Metrics.Phase.LEX, lex);
+            Metrics.time(Metrics.Phase.PARSE, System.nanoTime() - start - lex);
+        }
+    }
+
+    // fields and methods without the class around them, e.g. a single member cut out by JavasmIndex.
+    // there's no class header to say so, ACC_ANNOTATION just lets an annotation default through
+    public void acceptMembers(ClassVisitor visitor) throws IOException {
+        if (this.visitor != null) throw new IllegalStateException("Already accepted");
+        this.visitor = visitor;
+        readContent(ACC_ANNOTATION);
+    }
+
+    // a class, or just one of its fields/methods (without a visit call for the class), out of an indexed file
+    public static void accept(JavasmIndex index, String key, ClassVisitor visitor) throws IOException {
+        try (TokenReader reader = index.reader(key)) {
+            ClassReader classReader = new ClassReader(reader);
+            if (JavasmIndex.isClassKey(key)) {
+                classReader.accept(visitor);
+            } else {
+                classReader.acceptMembers(visitor);
+            }
+        }
     }
 
     private int readHeader() throws IOException {
         int version = 0;
         String signature = null;
         int access = 0;
+        Integer accessFlags = null;
         while (reader.peek().type == TokenType.COMMENT) {
             Token tk = reader.pop();
             Matcher m = AbstractReader.CLASS_VERSION.matcher(tk.value);
@@ -39,6 +92,11 @@ public class ClassReader extends AbstractReader {
                 version = Integer.parseInt(m.group("minor")) << 16 | Integer.parseInt(m.group("major"));
                 continue;
             }
+            m = AbstractReader.ACCESS_FLAGS.matcher(tk.value);
+            if (m.find()) {
+                accessFlags = Integer.parseInt(m.group("accessFlags"), 16);
+                continue;
+            }
             m = AbstractReader.SIGNATURE.matcher(tk.value);
             if (m.find()) {
                 signature = m.group("signature");
@@ -60,7 +118,7 @@ public class ClassReader extends AbstractReader {
         Token nameTk = reader.popNonCommentExpect(TokenType.TOKEN);
         Type type = Type.getObjectType(nameTk.value);
 
-        Token extendsTk = reader.popNonCommentIf(e -> e.type == TokenType.TOKEN && e.value.equals("extends"));
+        Token extendsTk = reader.popNonCommentIf(TokenType.TOKEN, "extends");
         Type superType;
         if (extendsTk != null) {
             Token superTk = reader.popExpect(TokenType.TOKEN);
@@ -72,14 +130,16 @@ public class ClassReader extends AbstractReader {
             superType = Type.getObjectType("java/lang/Object");
         }
 
-        Token implementsTk = reader.popNonCommentIf(e -> e.type == TokenType.TOKEN && e.value.equals("implements"));
+        Token implementsTk = reader.popNonCommentIf(TokenType.TOKEN, "implements");
         List<Type> interfaces = new ArrayList<>();
         if (implementsTk != null) {
             while (true) {
-                Token tk = reader.popNonCommentIf(t -> t.type == TokenType.TOKEN && !t.value.equals("{"));
-                if (tk == null) {
+                reader.skipComments();
+                Token tk = reader.peek();
+                if (tk.type != TokenType.TOKEN || tk.value.equals("{")) {
                     break;
                 }
+                reader.pop();
                 interfaces.add(Type.getObjectType(tk.value));
             }
         }
@@ -89,7 +149,12 @@ public class ClassReader extends AbstractReader {
         if ((access & ACC_ABSTRACT) == 0 && (access & ACC_INTERFACE) == 0) {
             access |= ACC_SUPER;
         }
-        visitor.visit(version, access, type.getInternalName(), signature, superType.getInternalName(), interfaces.stream().map(Type::getInternalName).toArray(String[]::new));
+        // the comment is exact, abstract classes javac compiled still have ACC_SUPER
+        if (accessFlags != null) {
+            access = accessFlags;
+        }
+        name = type.getInternalName();
+        visitor.visit(version, access, name, signature, superType.getInternalName(), interfaces.stream().map(Type::getInternalName).toArray(String[]::new));
         return access;
     }
 
@@ -98,112 +163,137 @@ public class ClassReader extends AbstractReader {
         AnnotationVisitorSupplier lastAnnotationVisitor = this;
         int access = 0;
         Integer accessFlags = null;
-        while (!reader.peekExpect(TokenType.TOKEN, "}")) {
-            // comments
-            Token sourceComment = reader.popIf(t -> t.type == TokenType.COMMENT && AbstractReader.COMPILED_FROM.matcher(t.value).find());
-            if (sourceComment != null) {
-                Matcher m = AbstractReader.COMPILED_FROM.matcher(sourceComment.value);
-                if (m.find()) {
-                    visitor.visitSource(m.group("compiledFrom"), null);
-                }
-                continue;
-            }
-            // deprecated comment
-            Token deprecatedComment = reader.popIf(t -> t.type == TokenType.COMMENT && t.value.trim().equals("DEPRECATED"));
-            if (deprecatedComment != null) {
-                access |= ACC_DEPRECATED;
-                continue;
-            }
-            {
-                String sig = readSignature();
-                if (sig != null) {
-                    signature = sig;
-                    continue;
-                }
-            }
-            // access flags
-            Token accessComment = reader.popIf(t -> t.type == TokenType.COMMENT && AbstractReader.ACCESS_FLAGS.matcher(t.value).find());
-            if (accessComment != null) {
-                Matcher m = AbstractReader.ACCESS_FLAGS.matcher(accessComment.value);
-                if (m.find()) {
-                    accessFlags = Integer.parseInt(m.group("accessFlags"), 16);
+        // EOF only ends it for acceptMembers, readFooter complains otherwise
+        while (!reader.peekExpect(TokenType.TOKEN, "}") && reader.peek().type != TokenType.EOF) {
+            Token next = reader.peek();
+            if (next.type == TokenType.COMMENT) {
+                // comments that don't mean anything are dropped
+                Keyword comment = reader.peekKeyword();
+                reader.pop();
+                if (comment != null) {
+                    switch (comment) {
+                        case COMPILED_FROM -> {
+                            Matcher m = AbstractReader.COMPILED_FROM.matcher(next.value);
+                            if (m.find()) {
+                                visitor.visitSource(m.group("compiledFrom"), null);
+                            }
+                        }
+                        case DEPRECATED -> {
+                            if (next.value.trim().equals("DEPRECATED")) {
+                                access |= ACC_DEPRECATED;
+                            }
+                        }
+                        case SIGNATURE -> {
+                            Matcher m = AbstractReader.SIGNATURE.matcher(next.value);
+                            if (m.find()) {
+                                signature = m.group("signature");
+                            }
+                        }
+                        case ACCESS_FLAGS -> {
+                            Matcher m = AbstractReader.ACCESS_FLAGS.matcher(next.value);
+                            if (m.find()) {
+                                accessFlags = Integer.parseInt(m.group("accessFlags"), 16);
+                            }
+                        }
+                    }
                 }
                 continue;
             }
             // tokens
-            reader.popNonCommentIf(e -> false);
             int a = AbstractReader.getAccess(reader);
-            Token enumm = reader.popIf(e -> e.type == TokenType.TOKEN && e.value.equalsIgnoreCase("ENUM"));
-            if (enumm != null) {
+            next = reader.peek();
+            if (next.type == TokenType.TOKEN && next.value.equalsIgnoreCase("ENUM")) {
+                reader.pop();
                 access |= ACC_ENUM;
             }
             access |= a;
             if (a != 0) {
                 continue;
             }
-            Token annotation = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.startsWith("@"));
-            if (annotation != null) {
+            reader.skipComments();
+            next = reader.peek();
+            if (next.type == TokenType.TOKEN && next.value.startsWith("@")) {
+                reader.pop();
                 if (access != 0 || accessFlags != null) {
                     reader.throwAtPos("Didn't expect access modifier with annotation");
                 }
-                readAnnotation(annotation, null, lastAnnotationVisitor);
-                continue;
-            }
-            Token nestMember = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("NESTMEMBER"));
-            if (nestMember != null) {
-                if (access != 0 || accessFlags != null) {
-                    reader.throwAtPos("Didn't expect access modifier with NESTMEMBER");
-                }
-                Token tk = reader.popNonCommentExpect(TokenType.TOKEN);
-                visitor.visitNestMember(tk.value);
+                readAnnotation(next, null, lastAnnotationVisitor);
                 continue;
             }
-            Token nestHost = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("NESTHOST"));
-            if (nestHost != null) {
-                if (access != 0) {
-                    reader.throwAtPos("Didn't expect access modifier with NESTHOST");
-                }
-                Token tk = reader.popExpect(TokenType.TOKEN);
-                visitor.visitNestHost(tk.value);
-                continue;
-            }
-            Token recordComponent = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("RECORDCOMPONENT"));
-            if (recordComponent != null) {
-                lastAnnotationVisitor.visitEnd();
-                if (access != 0 || accessFlags != null) {
-                    reader.throwAtPos("Didn't expect access modifier with RECORDCOMPONENT");
-                }
-                String sig = null;
-                while (reader.peekExpect(TokenType.COMMENT) != null) {
-                    String s = readSignature();
-                    if (s != null) {
-                        sig = s;
+            Keyword keyword = reader.peekKeyword();
+            if (keyword != null) {
+                reader.pop();
+                switch (keyword) {
+                    case NESTMEMBER -> {
+                        if (access != 0 || accessFlags != null) {
+                            reader.throwAtPos("Didn't expect access modifier with NESTMEMBER");
+                        }
+                        Token tk = reader.popNonCommentExpect(TokenType.TOKEN);
+                        visitor.visitNestMember(tk.value);
                     }
+                    case PERMITTEDSUBCLASS -> {
+                        if (access != 0 || accessFlags != null) {
+                            reader.throwAtPos("Didn't expect access modifier with PERMITTEDSUBCLASS");
+                        }
+                        Token tk = reader.popNonCommentExpect(TokenType.TOKEN);
+                        visitor.visitPermittedSubclass(tk.value);
+                    }
+                    case NESTHOST -> {
+                        if (access != 0) {
+                            reader.throwAtPos("Didn't expect access modifier with NESTHOST");
+                        }
+                        Token tk = reader.popExpect(TokenType.TOKEN);
+                        visitor.visitNestHost(tk.value);
+                    }
+                    case RECORDCOMPONENT -> {
+                        lastAnnotationVisitor.visitEnd();
+                        if (access != 0 || accessFlags != null) {
+                            reader.throwAtPos("Didn't expect access modifier with RECORDCOMPONENT");
+                        }
+                        String sig = null;
+                        while (reader.peekExpect(TokenType.COMMENT) != null) {
+                            String s = readSignature();
+                            if (s != null) {
+                                sig = s;
+                            } else {
+                                // the declaration comment after the signature
+                                reader.pop();
+                            }
+                        }
+                        Token type = reader.popExpect(TokenType.TOKEN);
+                        Token name = reader.popNonCommentExpect(TokenType.TOKEN);
+                        RecordComponentReader recordComponentReader = new RecordComponentReader(reader);
+                        recordComponentReader.accept(visitor.visitRecordComponent(name.value, type.value, sig));
+                        lastAnnotationVisitor = recordComponentReader;
+                    }
+                    case INNERCLASS -> {
+                        Token name = reader.popNonCommentExpect(TokenType.TOKEN);
+                        Token outerName = reader.popNonCommentExpect(TokenType.TOKEN);
+                        Token innerName = reader.popNonCommentExpect(TokenType.TOKEN);
+                        visitor.visitInnerClass(name.value, outerName.value, innerName.value, accessFlags == null ? access : accessFlags);
+                        access = 0;
+                        accessFlags = null;
+                    }
+                    case OUTERCLASS -> {
+                        if (access != 0 || accessFlags != null) {
+                            reader.throwAtPos("Didn't expect access modifier with OUTERCLASS");
+                        }
+                        Token owner = reader.popNonCommentExpect(TokenType.TOKEN);
+                        // "OUTERCLASS owner null" when it's not inside a method, "OUTERCLASS owner name desc" when it is
+                        Token name = reader.popExpect(TokenType.TOKEN);
+                        if (name.value.equals("null")) {
+                            visitor.visitOuterClass(owner.value, null, null);
+                        } else {
+                            Token desc = reader.popExpect(TokenType.TOKEN);
+                            visitor.visitOuterClass(owner.value, name.value, desc.value);
+                        }
+                    }
+                    default -> throw new IllegalStateException("Unexpected member keyword " + keyword);
                 }
-                Token type = reader.popExpect(TokenType.TOKEN);
-                Token name = reader.popNonCommentExpect(TokenType.TOKEN);
-                RecordComponentReader recordComponentReader = new RecordComponentReader(reader);
-                recordComponentReader.accept(visitor.visitRecordComponent(name.value, type.value, sig));
-                lastAnnotationVisitor = recordComponentReader;
                 continue;
             }
-            Token innerClass = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("INNERCLASS"));
-            if (innerClass != null) {
-                Token name = reader.popNonCommentExpect(TokenType.TOKEN);
-                Token outerName = reader.popNonCommentExpect(TokenType.TOKEN);
-                Token innerName = reader.popNonCommentExpect(TokenType.TOKEN);
-                visitor.visitInnerClass(name.value, outerName.value, innerName.value, accessFlags == null ? access : accessFlags);
-                access = 0;
-                accessFlags = null;
-                continue;
-            }
-//            Token outerClass = reader.popIf(t -> t.type == Token.TokenType.TOKEN && t.value.equals("OUTERCLASS"));
-//            if (outerClass != null) {
-//                Token name = reader.popNonCommentExpect(Token.TokenType.TOKEN);
-//                visitor.visitOuterClass(name.value, null, null);
-//            }
             // detect field/method
-            Token type = reader.popNonCommentIf(e -> e.type == TokenType.TOKEN);
+            Token type = reader.popNonCommentIf(TokenType.TOKEN);
             if (type != null) {
                 if (type.value.equals("}")) {
                     if (access != 0 || accessFlags != null) {
@@ -218,20 +308,23 @@ public class ClassReader extends AbstractReader {
                     int paren = type.value.lastIndexOf('(');
                     String name = type.value.substring(0, paren);
                     String desc = type.value.substring(paren);
-                    Token thro = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("throws"));
+                    Token thro = reader.popIf(TokenType.TOKEN, "throws");
                     List<Type> exceptions = new ArrayList<>();
                     if (thro != null) {
-                        while (true) {
-                            Token tk = reader.popIf(e -> e.type == TokenType.TOKEN && !AbstractReader.OPCODES.containsKey(e.value.toUpperCase()) && !e.value.matches("L\\d+") && !AbstractReader.SPECIAL_OPCODES.contains(e.value.toUpperCase()) && !e.value.startsWith("@"));
-                            if (tk == null) {
-                                break;
-                            }
+                        Token tk;
+                        while ((tk = reader.peek()).type == TokenType.TOKEN && AbstractReader.isException(tk.value)) {
+                            reader.pop();
                             exceptions.add(Type.getObjectType(tk.value));
                         }
                     }
                     MethodReader methodReader = new MethodReader(reader);
-                    methodReader.accept(visitor.visitMethod(accessFlags == null ? access : accessFlags, name, desc, signature, exceptions.stream().map(Type::getInternalName).toArray(String[]::new)), (access & ACC_ABSTRACT) != 0, (classAccess & ACC_ANNOTATION) != 0);
+                    methodReader.setBodies(bodies);
+                    methodReader.owner = this.name;
+                    methodReader.method = name + desc;
+                    methodReader.accept(visitor.visitMethod(accessFlags == null ? access : accessFlags, name, desc, signature, exceptions.stream().map(Type::getInternalName).toArray(String[]::new)), ((accessFlags == null ? access : accessFlags) & (ACC_ABSTRACT | ACC_NATIVE)) != 0, (classAccess & ACC_ANNOTATION) != 0);
                     methodReader.visitEnd();
+                    Metrics.count(Metrics.Counter.METHODS_ASSEMBLED, 1);
+                    methods++;
                     lastAnnotationVisitor = AnnotationVisitorSupplier.nullSupplier(() -> {
                         methodReader.reader.throwAtPos("Unexpected annotation after method");
                         return null;
@@ -245,7 +338,7 @@ public class ClassReader extends AbstractReader {
                     // get name
                     Token name = reader.popNonCommentExpect(TokenType.TOKEN);
                     // check if has =
-                    Token equals = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("="));
+                    Token equals = reader.popIf(TokenType.TOKEN, "=");
                     Object value = null;
                     if (equals != null) {
                         // read value
@@ -269,6 +362,9 @@ public class ClassReader extends AbstractReader {
                     access = 0;
                     accessFlags = null;
                 }
+            } else {
+                // a string or char nothing above takes would otherwise go around forever
+                reader.throwAtPos("Expected a field or method, got " + reader.peek().type);
             }
         }
         lastAnnotationVisitor.visitEnd();
@@ -1,11 +1,17 @@
 package xyz.wagyourtail.asmreader.file;
 
 import org.objectweb.asm.*;
+import xyz.wagyourtail.asmreader.index.JavasmIndex;
+import xyz.wagyourtail.asmreader.iofunction.IOFunction;
+import xyz.wagyourtail.asmreader.jfr.AssembleMethodEvent;
+import xyz.wagyourtail.asmreader.metrics.Metrics;
+import xyz.wagyourtail.asmreader.token.Keyword;
 import xyz.wagyourtail.asmreader.token.Token;
 import xyz.wagyourtail.asmreader.token.TokenReader;
 import xyz.wagyourtail.asmreader.token.TokenType;
 
 import java.io.IOException;
+import java.io.StringReader;
 import java.util.*;
 import java.util.regex.Matcher;
 import java.util.stream.Collectors;
@@ -17,6 +23,12 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
     MethodVisitor visitor;
     boolean abstractFlag;
     boolean interfaceFlag;
+    // resolves BODYREF hashes to the shared body text, see DedupDisassembler
+    IOFunction<String, String> bodies;
+    // for the jfr event, owner is only known when the method is read as part of a class
+    String owner;
+    String method;
+    int instructions;
 
     public MethodReader(TokenReader reader) {
         super(reader);
@@ -24,18 +36,41 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
 
     public void acceptWithHeader(IMethodVisitorConstructor cv) throws IOException {
         if (this.visitor != null) throw new IllegalStateException("Already accepted");
+        AssembleMethodEvent event = new AssembleMethodEvent();
+        event.begin();
+        long charsStart = reader.charsRead();
         readMethodHeader(cv);
         readMethodContent();
         visitEnd();
+        Metrics.count(Metrics.Counter.METHODS_ASSEMBLED, 1);
+        commit(event, charsStart);
+    }
+
+    // one method out of an indexed file, see JavasmIndex
+    public static void accept(JavasmIndex index, String key, IMethodVisitorConstructor cv) throws IOException {
+        try (TokenReader reader = index.reader(key)) {
+            new MethodReader(reader).acceptWithHeader(cv);
+        }
     }
 
     public void readMethodHeader(IMethodVisitorConstructor cv) throws IOException {
         int access = 0;
         Integer accessFlags = null;
+        String signature = null;
         // access flags
         int a;
         do {
-            Token accessComment = reader.popIf(t -> t.type == TokenType.COMMENT && AbstractReader.ACCESS_FLAGS.matcher(t.value).find());
+            if (reader.peekKeyword() == Keyword.DEPRECATED && reader.peek().value.trim().equals("DEPRECATED")) {
+                reader.pop();
+                access |= ACC_DEPRECATED;
+                continue;
+            }
+            String sig = readSignature();
+            if (sig != null) {
+                signature = sig;
+                continue;
+            }
+            Token accessComment = reader.popIf(Keyword.ACCESS_FLAGS, AbstractReader.ACCESS_FLAGS);
             if (accessComment != null) {
                 Matcher m = AbstractReader.ACCESS_FLAGS.matcher(accessComment.value);
                 if (m.find()) {
@@ -43,7 +78,7 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                 }
                 continue;
             }
-            reader.popNonCommentIf(e -> false);
+            reader.skipComments();
             a = AbstractReader.getAccess(reader);
             access |= a;
             if (a != 0) {
@@ -55,20 +90,20 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                 int paren = type.value.lastIndexOf('(');
                 String name = type.value.substring(0, paren);
                 String desc = type.value.substring(paren);
-                Token thro = reader.popIf(t -> t.type == TokenType.TOKEN && t.value.equals("throws"));
+                Token thro = reader.popIf(TokenType.TOKEN, "throws");
                 List<Type> exceptions = new ArrayList<>();
                 if (thro != null) {
-                    while (true) {
-                        Token tk = reader.popIf(e -> e.type == TokenType.TOKEN && !AbstractReader.OPCODES.containsKey(e.value.toUpperCase()) && !e.value.matches("L\\d+") && !AbstractReader.SPECIAL_OPCODES.contains(e.value.toUpperCase()) && !e.value.startsWith("@"));
-                        if (tk == null) {
-                            break;
-                        }
+                    Token tk;
+                    while ((tk = reader.peek()).type == TokenType.TOKEN && AbstractReader.isException(tk.value)) {
+                        reader.pop();
                         exceptions.add(Type.getObjectType(tk.value));
                     }
                 }
-                visitor = cv.visitMethod(accessFlags == null ? access : accessFlags, name, desc, null, exceptions.stream().map(Type::getInternalName).toArray(String[]::new));
-                this.abstractFlag = ((accessFlags == null ? access : accessFlags) & ACC_ABSTRACT) != 0;
-                this.interfaceFlag = ((accessFlags == null ? access : accessFlags) & ACC_INTERFACE) != 0;
+                method = name + desc;
+                visitor = cv.visitMethod(accessFlags == null ? access : accessFlags, name, desc, signature, exceptions.stream().map(Type::getInternalName).toArray(String[]::new));
+                this.abstractFlag = ((accessFlags == null ? access : accessFlags) & (ACC_ABSTRACT | ACC_NATIVE)) != 0;
+                // methods never have ACC_INTERFACE and there's no class to ask, default= only shows up on annotation methods anyway
+                this.interfaceFlag = true;
             } else {
                 throw new IllegalStateException("expected method type");
             }
@@ -81,21 +116,97 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
         this.visitor = visitor;
         this.abstractFlag = abstractFlag;
         this.interfaceFlag = interfaceFlag;
+        AssembleMethodEvent event = new AssembleMethodEvent();
+        event.begin();
+        long charsStart = reader.charsRead();
         readMethodContent();
+        commit(event, charsStart);
+    }
+
+    private void commit(AssembleMethodEvent event, long charsStart) {
+        if (event.shouldCommit()) {
+            event.className = owner;
+            event.method = method;
+            event.instructions = instructions;
+            event.inputSize = reader.charsRead() - charsStart;
+            event.commit();
+        }
+    }
+
+
+    // default=value is printed like a value inside an annotation, arrays and annotations can have strings with
+    // spaces in them so their tokens get glued back together and go through readAnnotationValue
+    protected void readAnnotationDefault(Token tk) throws IOException {
+        AnnotationVisitor def = visitor.visitAnnotationDefault();
+        String value = tk.value.substring("default=".length());
+        if (value.isEmpty()) {
+            tk = reader.popNonComment();
+            value = tk.value;
+        }
+        if (tk.type == TokenType.TOKEN && (value.startsWith("{") || value.startsWith("@"))) {
+            StringBuilder sb = new StringBuilder(value);
+            int depth = nesting(value);
+            while (depth > 0) {
+                Token next = reader.pop();
+                switch (next.type) {
+                    case TOKEN -> {
+                        sb.append(next.value);
+                        depth += nesting(next.value);
+                    }
+                    case STRING -> sb.append('"').append(next.value).append('"');
+                    case CHAR -> sb.append('\'').append(next.value).append('\'');
+                    case COMMENT -> {
+                        // no-op
+                    }
+                    case EOF -> reader.throwAtPos("Unexpected EOF while reading annotation default");
+                }
+            }
+            String content = sb.toString();
+            if (readAnnotationValue(content, 0, null, def) != content.length()) {
+                reader.throwAtPos("Unexpected content after annotation default");
+            }
+        } else if (tk.type == TokenType.TOKEN && value.matches("L([^;]+);\\s*\\.\\s*.+")) {
+            // enum
+            int dot = value.indexOf('.');
+            def.visitEnum(null, value.substring(0, dot), value.substring(dot + 1));
+        } else {
+            def.visit(null, readPrimitive(new Token(value, tk.type), 0));
+        }
+        def.visitEnd();
     }
 
+    private static int nesting(String value) {
+        int depth = 0;
+        for (char c : value.toCharArray()) {
+            if (c == '{' || c == '(') {
+                depth++;
+            } else if (c == '}' || c == ')') {
+                depth--;
+            }
+        }
+        return depth;
+    }
+
+    public void setBodies(IOFunction<String, String> bodies) {
+        this.bodies = bodies;
+    }
 
     protected void readMethodContent() throws IOException {
+        readMethodContent(false);
+    }
+
+    protected void readMethodContent(boolean visitCode) throws IOException {
         // read method content
-        boolean visitCode = false;
         Integer maxStack = null;
         Integer maxLocals = null;
         Map<Integer, Label> labels = new HashMap<>();
         boolean completed = false;
         while (!completed) {
+            Token peek = reader.peek();
+            Keyword comment = peek.type == TokenType.COMMENT ? reader.peekKeyword() : null;
             // parameter comment
-            Token parameterComment = reader.popIf(t -> t.type == TokenType.COMMENT && t.value.trim().startsWith("parameter"));
-            if (parameterComment != null) {
+            if (comment == Keyword.PARAMETER) {
+                Token parameterComment = reader.pop();
                 String[] parts = parameterComment.value.trim().substring(10).split(" ");
                 String name;
                 if (parameterComment.value.trim().endsWith("<no name>")) {
@@ -115,17 +226,21 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                 continue;
             }
             // annotable parameter comment
-            Token annotableParameterComment = reader.popIf(t -> t.type == TokenType.COMMENT && AbstractReader.ANNOTABLE_PARAMETER_COUNT.matcher(t.value).find());
-            if (annotableParameterComment != null) {
-                Matcher m = AbstractReader.ANNOTABLE_PARAMETER_COUNT.matcher(annotableParameterComment.value);
-                m.find();
+            Matcher m;
+            if (comment == Keyword.ANNOTABLE_PARAMETER_COUNT && (m = AbstractReader.ANNOTABLE_PARAMETER_COUNT.matcher(peek.value)).find()) {
+                reader.pop();
                 int count = Integer.parseInt(m.group("count"));
                 boolean invisible = m.group("invisible").equals("invisible");
                 visitor.visitAnnotableParameterCount(count, !invisible);
                 continue;
             }
-            Token annotation = reader.popNonCommentIf(t -> t.type == TokenType.TOKEN && t.value.startsWith("@"));
-            if (annotation != null) {
+            // without code the next member's comments come right after, they aren't ours to skip
+            if (!abstractFlag) {
+                reader.skipComments();
+            }
+            Token annotation = reader.peek();
+            if (annotation.type == TokenType.TOKEN && annotation.value.startsWith("@")) {
+                reader.pop();
                 boolean finalVisitCode = visitCode;
                 readAnnotation(annotation, labels, this);
                 continue;
@@ -133,18 +248,9 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
             if (!visitCode) {
                 if (interfaceFlag) {
                     // expect default=value
-                    Token tk = reader.popIf(e -> e.type == TokenType.TOKEN && e.value.startsWith("default="));
-                    if (tk != null) {
-                        if (!tk.value.startsWith("default=")) {
-                            reader.throwAtPos("Expected default=value");
-                        }
-                        if (tk.value.endsWith("=")) {
-                            tk = reader.popNonComment();
-                        }
-                        Object primitive = readPrimitive(tk, 0);
-                        AnnotationVisitor def = visitor.visitAnnotationDefault();
-                        def.visit(null, primitive);
-                        def.visitEnd();
+                    Token tk = reader.peek();
+                    if (tk.type == TokenType.TOKEN && tk.value.startsWith("default=")) {
+                        readAnnotationDefault(reader.pop());
                     }
                 }
                 if (abstractFlag) break;
@@ -153,8 +259,7 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
             }
             Token tk = reader.popNonCommentExpect(TokenType.TOKEN);
             String value = tk.value.toUpperCase();
-            if (value.matches("L\\d+")) {
-                // label
+            if (isLabel(value)) {
                 int label = Integer.parseInt(value.substring(1));
                 if (!labels.containsKey(label)) {
                     labels.put(label, new Label());
@@ -163,6 +268,25 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                 continue;
             }
             switch (value) {
+                case "BODYREF" -> {
+                    Token hash = reader.popNonCommentExpect(TokenType.TOKEN);
+                    if (bodies == null) {
+                        reader.throwAtPos("BODYREF without a bodies directory");
+                    }
+                    String body = bodies.apply(hash.value);
+                    if (body == null) {
+                        reader.throwAtPos("Unknown body " + hash.value);
+                    }
+                    // shared body has its own labels, it ends at MAXLOCALS like any other
+                    try (TokenReader bodyReader = new TokenReader(new StringReader(body))) {
+                        MethodReader methodReader = new MethodReader(bodyReader);
+                        methodReader.visitor = visitor;
+                        methodReader.bodies = bodies;
+                        methodReader.readMethodContent(true);
+                        instructions += methodReader.instructions;
+                    }
+                    completed = true;
+                }
                 case "FRAME" -> {
                     tk = reader.popNonCommentExpect(TokenType.TOKEN);
                     switch (tk.value) {
@@ -192,7 +316,7 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                         reader.throwAtPos("Expected line number");
                     }
                     Token label = reader.popNonCommentExpect(TokenType.TOKEN);
-                    if (!label.value.matches("L\\d+")) {
+                    if (!AbstractReader.isLabel(label.value)) {
                         reader.throwAtPos("Expected label");
                     }
                     visitor.visitLineNumber(Integer.parseInt(lineNum.value), labels.computeIfAbsent(Integer.parseInt(label.value.substring(1)), e -> new Label()));
@@ -204,11 +328,11 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                     } else {
                         Token descTk = reader.popNonCommentExpect(TokenType.TOKEN);
                         Token start = reader.popNonCommentExpect(TokenType.TOKEN);
-                        if (!start.value.matches("L\\d+")) {
+                        if (!AbstractReader.isLabel(start.value)) {
                             reader.throwAtPos("Expected label");
                         }
                         Token end = reader.popNonCommentExpect(TokenType.TOKEN);
-                        if (!end.value.matches("L\\d+")) {
+                        if (!AbstractReader.isLabel(end.value)) {
                             reader.throwAtPos("Expected label");
                         }
                         Token index = reader.popNonCommentExpect(TokenType.TOKEN);
@@ -250,15 +374,15 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                     if (start.value.startsWith("@")) {
                         readAnnotation(start, labels, this);
                     } else {
-                        if (!start.value.matches("L\\d+")) {
+                        if (!AbstractReader.isLabel(start.value)) {
                             reader.throwAtPos("Expected label");
                         }
                         Token end = reader.popNonCommentExpect(TokenType.TOKEN);
-                        if (!end.value.matches("L\\d+")) {
+                        if (!AbstractReader.isLabel(end.value)) {
                             reader.throwAtPos("Expected label");
                         }
                         Token handler = reader.popNonCommentExpect(TokenType.TOKEN);
-                        if (!handler.value.matches("L\\d+")) {
+                        if (!AbstractReader.isLabel(handler.value)) {
                             reader.throwAtPos("Expected label");
                         }
                         Token type = reader.popNonCommentExpect(TokenType.TOKEN);
@@ -271,21 +395,24 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                     }
                 }
                 default -> {
-                    if (!AbstractReader.OPCODES.containsKey(value)) {
+                    Integer opcode = AbstractReader.OPCODES.get(value);
+                    if (opcode == null) {
                         reader.throwAtPos("Expected a valid opcode");
                     }
-                    int opcode = AbstractReader.OPCODES.get(value);
+                    Metrics.instruction(opcode);
+                    instructions++;
                     switch (opcode) {
                         case BIPUSH, SIPUSH -> {
                             Token val = reader.popNonCommentExpect(TokenType.TOKEN);
-                            if (!val.value.matches("\\d+")) {
+                            if (!val.value.matches("-?\\d+")) {
                                 reader.throwAtPos("Expected integer");
                             }
                             visitor.visitIntInsn(opcode, Integer.parseInt(val.value));
                         }
                         case LDC -> {
-                            // TODO: support condy's
-                            visitor.visitLdcInsn(readPrimitive(reader.popNonComment(), 0));
+                            Token condy = reader.popIf(Keyword.CONSTANT_DYNAMIC, AbstractReader.CONSTANT_DYNAMIC);
+                            Token tk2 = reader.popNonComment();
+                            visitor.visitLdcInsn(condy != null ? readCondy(tk2) : readPrimitive(tk2, 0));
                         }
                         case ILOAD, ALOAD, FLOAD, DLOAD, LLOAD, ISTORE, ASTORE, FSTORE, DSTORE, LSTORE, RET -> {
                             Token index = reader.popNonCommentExpect(TokenType.TOKEN);
@@ -305,9 +432,9 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                             }
                             visitor.visitIincInsn(Integer.parseInt(index.value), Integer.parseInt(inc.value));
                         }
-                        case IFEQ, IFNE, IFLT, IFGT, IFLE, IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE, GOTO, JSR, IFNULL, IFNONNULL -> {
+                        case IFEQ, IFNE, IFLT, IFGE, IFGT, IFLE, IF_ICMPEQ, IF_ICMPNE, IF_ICMPLT, IF_ICMPGE, IF_ICMPGT, IF_ICMPLE, IF_ACMPEQ, IF_ACMPNE, GOTO, JSR, IFNULL, IFNONNULL -> {
                             Token label = reader.popNonCommentExpect(TokenType.TOKEN);
-                            if (!label.value.matches("L\\d+")) {
+                            if (!AbstractReader.isLabel(label.value)) {
                                 reader.throwAtPos("Expected label");
                             }
                             visitor.visitJumpInsn(opcode, labels.computeIfAbsent(Integer.parseInt(label.value.substring(1)), e -> new Label()));
@@ -337,12 +464,12 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                                 if (split.length == 1) {
                                     swtk = reader.popNonCommentExpect(TokenType.TOKEN);
                                     if (swtk.value.equals(":")) swtk = reader.popNonCommentExpect(TokenType.TOKEN);
-                                    if (!swtk.value.matches("L\\d+")) {
+                                    if (!AbstractReader.isLabel(swtk.value)) {
                                         reader.throwAtPos("Expected label");
                                     }
                                     label = labels.computeIfAbsent(Integer.parseInt(swtk.value.substring(1)), e -> new Label());
                                 } else {
-                                    if (!split[1].matches("L\\d+")) {
+                                    if (!AbstractReader.isLabel(split[1])) {
                                         reader.throwAtPos("Expected label");
                                     }
                                     label = labels.computeIfAbsent(Integer.parseInt(split[1].substring(1)), e -> new Label());
@@ -355,7 +482,8 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                             visitor.visitTableSwitchInsn(min == null ? 0 : min, current == null ? 0 : current, tableEntries.get(null), IntStream.range(min, current + 1).mapToObj(tableEntries::get).toArray(Label[]::new));
                         }
                         case LOOKUPSWITCH -> {
-                            Map<Integer, Label> tableEntries = new HashMap<>();
+                            // keys stay in the order they were written in
+                            Map<Integer, Label> tableEntries = new LinkedHashMap<>();
                             Integer current;
                             do {
                                 Token swtk = reader.popNonCommentExpect(TokenType.TOKEN);
@@ -369,12 +497,12 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                                 if (split.length == 1) {
                                     swtk = reader.popNonCommentExpect(TokenType.TOKEN);
                                     if (swtk.value.equals(":")) swtk = reader.popNonCommentExpect(TokenType.TOKEN);
-                                    if (!swtk.value.matches("L\\d+")) {
+                                    if (!AbstractReader.isLabel(swtk.value)) {
                                         reader.throwAtPos("Expected label");
                                     }
                                     tableEntries.put(current, labels.computeIfAbsent(Integer.parseInt(swtk.value.substring(1)), e -> new Label()));
                                 } else {
-                                    if (!split[1].matches("L\\d+")) {
+                                    if (!AbstractReader.isLabel(split[1])) {
                                         reader.throwAtPos("Expected label");
                                     }
                                     tableEntries.put(current, labels.computeIfAbsent(Integer.parseInt(split[1].substring(1)), e -> new Label()));
@@ -414,7 +542,7 @@ public class MethodReader extends AbstractReader implements AnnotationVisitorSup
                                 name = nameTk.value;
                             }
                             Token descTk = reader.popNonCommentExpect(TokenType.TOKEN);
-                            Token itf = reader.popIf(e -> e.type == TokenType.TOKEN && e.value.equals("(itf)"));
+                            Token itf = reader.popIf(TokenType.TOKEN, "(itf)");
                             visitor.visitMethodInsn(opcode, ownerStr, name, descTk.value, itf != null || opcode == INVOKEINTERFACE);
                         }
                         case INVOKEDYNAMIC -> {
@@ -0,0 +1,27 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+// header covers everything DeterministicTextifier prints outside of fields and methods,
+// fingerprint is the whole class: header plus every member in order
+public record ClassFingerprint(String name, Fingerprint header, Fingerprint fingerprint, List<MemberFingerprint> fields, List<MemberFingerprint> methods) {
+
+    public Map<String, MemberFingerprint> fieldsByKey() {
+        return byKey(fields);
+    }
+
+    public Map<String, MemberFingerprint> methodsByKey() {
+        return byKey(methods);
+    }
+
+    private static Map<String, MemberFingerprint> byKey(List<MemberFingerprint> members) {
+        Map<String, MemberFingerprint> map = new LinkedHashMap<>();
+        for (MemberFingerprint member : members) {
+            map.put(member.key(), member);
+        }
+        return map;
+    }
+
+}
@@ -0,0 +1,10 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+public record Fingerprint(long hi, long lo) {
+
+    @Override
+    public String toString() {
+        return String.format("%016x%016x", hi, lo);
+    }
+
+}
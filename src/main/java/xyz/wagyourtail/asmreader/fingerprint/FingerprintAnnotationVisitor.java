@@ -0,0 +1,42 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+import org.objectweb.asm.AnnotationVisitor;
+import org.objectweb.asm.Opcodes;
+
+// nested annotations and arrays are visited to completion before the parent continues, so they share one hasher
+public class FingerprintAnnotationVisitor extends AnnotationVisitor {
+    private final Hasher hasher;
+
+    public FingerprintAnnotationVisitor(Hasher hasher) {
+        super(Opcodes.ASM9);
+        this.hasher = hasher;
+    }
+
+    @Override
+    public void visit(String name, Object value) {
+        hasher.putTag('v').putString(name).putValue(value);
+    }
+
+    @Override
+    public void visitEnum(String name, String descriptor, String value) {
+        hasher.putTag('e').putString(name).putString(descriptor).putString(value);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String name, String descriptor) {
+        hasher.putTag('@').putString(name).putString(descriptor);
+        return this;
+    }
+
+    @Override
+    public AnnotationVisitor visitArray(String name) {
+        hasher.putTag('[').putString(name);
+        return this;
+    }
+
+    @Override
+    public void visitEnd() {
+        hasher.putTag(')');
+    }
+
+}
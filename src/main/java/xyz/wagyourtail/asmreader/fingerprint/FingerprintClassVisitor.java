@@ -0,0 +1,209 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+import org.objectweb.asm.*;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+
+import java.util.ArrayList;
+import java.util.List;
+
+// computes the same thing the textifier would print as 128 bit hashes, without building any text.
+// two classes with equal fingerprints textify the same (with the same profile)
+public class FingerprintClassVisitor extends ClassVisitor {
+    private final Hasher header = new Hasher();
+    private final TextifierProfile profile;
+    private final List<MemberFingerprint> fields = new ArrayList<>();
+    private final List<MemberFingerprint> methods = new ArrayList<>();
+    private String name;
+    private ClassFingerprint fingerprint;
+
+    public FingerprintClassVisitor() {
+        this(TextifierProfile.FULL);
+    }
+
+    public FingerprintClassVisitor(TextifierProfile profile) {
+        super(Opcodes.ASM9);
+        this.profile = profile;
+    }
+
+    public static ClassFingerprint fingerprint(byte[] bytes, TextifierProfile profile) {
+        FingerprintClassVisitor visitor = new FingerprintClassVisitor(profile);
+        new ClassReader(bytes).accept(visitor, profile.readerFlags());
+        return visitor.getFingerprint();
+    }
+
+    public ClassFingerprint getFingerprint() {
+        if (fingerprint == null) {
+            throw new IllegalStateException("Class not visited yet");
+        }
+        return fingerprint;
+    }
+
+    private AnnotationVisitor annotation(Hasher hasher, String descriptor, boolean visible) {
+        hasher.putTag('a').putString(descriptor).putBoolean(visible);
+        return new FingerprintAnnotationVisitor(hasher);
+    }
+
+    private AnnotationVisitor typeAnnotation(Hasher hasher, int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        hasher.putTag('t').putInt(typeRef).putString(typePath == null ? null : typePath.toString()).putString(descriptor).putBoolean(visible);
+        return new FingerprintAnnotationVisitor(hasher);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        this.name = name;
+        header.putTag('c').putInt(version).putInt(access).putString(name).putString(signature).putString(superName).putStrings(interfaces);
+    }
+
+    @Override
+    public void visitSource(String source, String debug) {
+        header.putTag('s').putString(source).putString(debug);
+    }
+
+    @Override
+    public ModuleVisitor visitModule(String name, int access, String version) {
+        header.putTag('m').putString(name).putInt(access).putString(version);
+        return new ModuleVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitMainClass(String mainClass) {
+                header.putTag('1').putString(mainClass);
+            }
+
+            @Override
+            public void visitPackage(String packaze) {
+                header.putTag('2').putString(packaze);
+            }
+
+            @Override
+            public void visitRequire(String module, int access, String version) {
+                header.putTag('3').putString(module).putInt(access).putString(version);
+            }
+
+            @Override
+            public void visitExport(String packaze, int access, String... modules) {
+                header.putTag('4').putString(packaze).putInt(access).putStrings(modules);
+            }
+
+            @Override
+            public void visitOpen(String packaze, int access, String... modules) {
+                header.putTag('5').putString(packaze).putInt(access).putStrings(modules);
+            }
+
+            @Override
+            public void visitUse(String service) {
+                header.putTag('6').putString(service);
+            }
+
+            @Override
+            public void visitProvide(String service, String... providers) {
+                header.putTag('7').putString(service).putStrings(providers);
+            }
+        };
+    }
+
+    @Override
+    public void visitNestHost(String nestHost) {
+        header.putTag('h').putString(nestHost);
+    }
+
+    @Override
+    public void visitOuterClass(String owner, String name, String descriptor) {
+        header.putTag('o').putString(owner).putString(name).putString(descriptor);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        return annotation(header, descriptor, visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return typeAnnotation(header, typeRef, typePath, descriptor, visible);
+    }
+
+    @Override
+    public void visitAttribute(Attribute attribute) {
+        header.putTag('A').putString(attribute.type);
+    }
+
+    @Override
+    public void visitNestMember(String nestMember) {
+        header.putTag('n').putString(nestMember);
+    }
+
+    @Override
+    public void visitPermittedSubclass(String permittedSubclass) {
+        header.putTag('p').putString(permittedSubclass);
+    }
+
+    @Override
+    public void visitInnerClass(String name, String outerName, String innerName, int access) {
+        header.putTag('i').putString(name).putString(outerName).putString(innerName).putInt(access);
+    }
+
+    @Override
+    public RecordComponentVisitor visitRecordComponent(String name, String descriptor, String signature) {
+        header.putTag('r').putString(name).putString(descriptor).putString(signature);
+        return new RecordComponentVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return annotation(header, descriptor, visible);
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+                return typeAnnotation(header, typeRef, typePath, descriptor, visible);
+            }
+
+            @Override
+            public void visitAttribute(Attribute attribute) {
+                header.putTag('A').putString(attribute.type);
+            }
+        };
+    }
+
+    @Override
+    public FieldVisitor visitField(int access, String name, String descriptor, String signature, Object value) {
+        Hasher hasher = new Hasher();
+        hasher.putTag('F').putInt(access).putString(name).putString(descriptor).putString(signature).putValue(value);
+        return new FieldVisitor(Opcodes.ASM9) {
+            @Override
+            public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+                return annotation(hasher, descriptor, visible);
+            }
+
+            @Override
+            public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+                return typeAnnotation(hasher, typeRef, typePath, descriptor, visible);
+            }
+
+            @Override
+            public void visitAttribute(Attribute attribute) {
+                hasher.putTag('A').putString(attribute.type);
+            }
+
+            @Override
+            public void visitEnd() {
+                fields.add(new MemberFingerprint(name, descriptor, hasher.finish(), null));
+            }
+        };
+    }
+
+    @Override
+    public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        return new FingerprintMethodVisitor(access, name, descriptor, signature, exceptions, profile, methods);
+    }
+
+    @Override
+    public void visitEnd() {
+        Fingerprint headerFingerprint = header.finish();
+        Hasher whole = new Hasher().putFingerprint(headerFingerprint);
+        for (MemberFingerprint field : fields) {
+            whole.putFingerprint(field.fingerprint());
+        }
+        for (MemberFingerprint method : methods) {
+            whole.putFingerprint(method.fingerprint());
+        }
+        fingerprint = new ClassFingerprint(name, headerFingerprint, whole.finish(), List.copyOf(fields), List.copyOf(methods));
+    }
+
+}
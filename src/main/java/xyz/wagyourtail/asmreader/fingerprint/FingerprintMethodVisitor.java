@@ -0,0 +1,248 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+import org.objectweb.asm.*;
+import org.objectweb.asm.tree.MethodNode;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// hashes a method the way DeterministicTextifier prints it, labels by order of first use like the L0, L1... names.
+// the code gets its own hash so identical bodies can be found regardless of the method they're in
+public class FingerprintMethodVisitor extends MethodVisitor {
+    private final Hasher hasher = new Hasher();
+    private final Hasher body = new Hasher();
+    private final Map<Label, Integer> labels = new HashMap<>();
+    private final TextifierProfile profile;
+    private final String name;
+    private final String descriptor;
+    private final List<MemberFingerprint> out;
+    private boolean code;
+
+    public FingerprintMethodVisitor(int access, String name, String descriptor, String signature, String[] exceptions, TextifierProfile profile, List<MemberFingerprint> out) {
+        super(Opcodes.ASM9);
+        this.profile = profile;
+        this.name = name;
+        this.descriptor = descriptor;
+        this.out = out;
+        hasher.putTag('M').putInt(access).putString(name).putString(descriptor).putString(signature).putStrings(exceptions);
+    }
+
+    // the same fingerprint FingerprintClassVisitor gives the method
+    public static MemberFingerprint fingerprint(MethodNode method, TextifierProfile profile) {
+        List<MemberFingerprint> out = new ArrayList<>(1);
+        String[] exceptions = method.exceptions.isEmpty() ? null : method.exceptions.toArray(new String[0]);
+        method.accept(new FingerprintMethodVisitor(method.access, method.name, method.desc, method.signature, exceptions, profile, out));
+        return out.get(0);
+    }
+
+    private int label(Label label) {
+        return labels.computeIfAbsent(label, l -> labels.size());
+    }
+
+    private AnnotationVisitor annotation(Hasher hasher, char tag, int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        hasher.putTag(tag).putInt(typeRef).putString(typePath == null ? null : typePath.toString()).putString(descriptor).putBoolean(visible);
+        return new FingerprintAnnotationVisitor(hasher);
+    }
+
+    private void putFrameTypes(int count, Object[] types) {
+        body.putInt(count);
+        // chop only has a count, and frames replayed from a FrameNode have no arrays when empty
+        if (types == null) {
+            return;
+        }
+        for (int i = 0; i < count; i++) {
+            if (types[i] instanceof Label l) {
+                body.putTag('L').putInt(label(l));
+            } else {
+                body.putValue(types[i]);
+            }
+        }
+    }
+
+    @Override
+    public void visitParameter(String name, int access) {
+        hasher.putTag('p').putString(name).putInt(access);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotationDefault() {
+        hasher.putTag('d');
+        return new FingerprintAnnotationVisitor(hasher);
+    }
+
+    @Override
+    public AnnotationVisitor visitAnnotation(String descriptor, boolean visible) {
+        hasher.putTag('a').putString(descriptor).putBoolean(visible);
+        return new FingerprintAnnotationVisitor(hasher);
+    }
+
+    @Override
+    public AnnotationVisitor visitTypeAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return annotation(hasher, 't', typeRef, typePath, descriptor, visible);
+    }
+
+    @Override
+    public void visitAnnotableParameterCount(int parameterCount, boolean visible) {
+        hasher.putTag('c').putInt(parameterCount).putBoolean(visible);
+    }
+
+    @Override
+    public AnnotationVisitor visitParameterAnnotation(int parameter, String descriptor, boolean visible) {
+        hasher.putTag('P').putInt(parameter).putString(descriptor).putBoolean(visible);
+        return new FingerprintAnnotationVisitor(hasher);
+    }
+
+    @Override
+    public void visitAttribute(Attribute attribute) {
+        hasher.putTag('A').putString(attribute.type);
+    }
+
+    @Override
+    public void visitCode() {
+        code = true;
+        body.putTag('{');
+    }
+
+    @Override
+    public void visitFrame(int type, int numLocal, Object[] local, int numStack, Object[] stack) {
+        if (profile == TextifierProfile.COMPACT) return;
+        body.putTag('F').putInt(type);
+        putFrameTypes(numLocal, local);
+        putFrameTypes(numStack, stack);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        body.putTag('i').putInt(opcode);
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        body.putTag('n').putInt(opcode).putInt(operand);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+        body.putTag('x').putInt(opcode).putInt(varIndex);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        body.putTag('y').putInt(opcode).putString(type);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        body.putTag('f').putInt(opcode).putString(owner).putString(name).putString(descriptor);
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        body.putTag('m').putInt(opcode).putString(owner).putString(name).putString(descriptor).putBoolean(isInterface);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+        body.putTag('D').putString(name).putString(descriptor).putHandle(bootstrapMethodHandle).putInt(bootstrapMethodArguments.length);
+        for (Object argument : bootstrapMethodArguments) {
+            body.putValue(argument);
+        }
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        body.putTag('j').putInt(opcode).putInt(label(label));
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+        body.putTag('L').putInt(label(label));
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        body.putTag('l').putValue(value);
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        body.putTag('+').putInt(varIndex).putInt(increment);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        body.putTag('T').putInt(min).putInt(max).putInt(label(dflt));
+        for (Label label : labels) {
+            body.putInt(label(label));
+        }
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        body.putTag('S').putInt(label(dflt)).putInt(keys.length);
+        for (int i = 0; i < keys.length; i++) {
+            body.putInt(keys[i]).putInt(label(labels[i]));
+        }
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        body.putTag('N').putString(descriptor).putInt(numDimensions);
+    }
+
+    @Override
+    public AnnotationVisitor visitInsnAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return annotation(body, 'I', typeRef, typePath, descriptor, visible);
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        body.putTag('C').putInt(label(start)).putInt(label(end)).putInt(label(handler)).putString(type);
+    }
+
+    @Override
+    public AnnotationVisitor visitTryCatchAnnotation(int typeRef, TypePath typePath, String descriptor, boolean visible) {
+        return annotation(body, 'R', typeRef, typePath, descriptor, visible);
+    }
+
+    @Override
+    public void visitLocalVariable(String name, String descriptor, String signature, Label start, Label end, int index) {
+        if (profile == TextifierProfile.COMPACT) return;
+        body.putTag('V').putString(name).putString(descriptor).putString(signature).putInt(label(start)).putInt(label(end)).putInt(index);
+    }
+
+    @Override
+    public AnnotationVisitor visitLocalVariableAnnotation(int typeRef, TypePath typePath, Label[] start, Label[] end, int[] index, String descriptor, boolean visible) {
+        if (profile == TextifierProfile.COMPACT) return null;
+        AnnotationVisitor visitor = annotation(body, 'W', typeRef, typePath, descriptor, visible);
+        body.putInt(start.length);
+        for (int i = 0; i < start.length; i++) {
+            body.putInt(label(start[i])).putInt(label(end[i])).putInt(index[i]);
+        }
+        return visitor;
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        if (profile == TextifierProfile.COMPACT) return;
+        body.putTag('#').putInt(line).putInt(label(start));
+    }
+
+    @Override
+    public void visitMaxs(int maxStack, int maxLocals) {
+        body.putTag('X').putInt(maxStack).putInt(maxLocals);
+    }
+
+    @Override
+    public void visitEnd() {
+        Fingerprint bodyFingerprint = code ? body.finish() : null;
+        if (bodyFingerprint != null) {
+            hasher.putFingerprint(bodyFingerprint);
+        }
+        out.add(new MemberFingerprint(name, descriptor, hasher.finish(), bodyFingerprint));
+    }
+
+}
@@ -0,0 +1,186 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Type;
+
+import java.lang.reflect.Array;
+
+// streaming 128 bit hash, the block mixing is murmur3's x64_128 fed one long at a time,
+// every value is tagged with its kind so "ab","c" and "a","bc" don't collide
+public final class Hasher {
+    private static final long C1 = 0x87c37b91114253d5L;
+    private static final long C2 = 0x4cf5ad432745937fL;
+
+    private long h1;
+    private long h2;
+    private long length;
+
+    public Hasher() {
+        this(0);
+    }
+
+    public Hasher(long seed) {
+        this.h1 = seed;
+        this.h2 = seed;
+    }
+
+    public Hasher putLong(long k) {
+        long k1 = Long.rotateLeft(k * C1, 31) * C2;
+        h1 ^= k1;
+        h1 = Long.rotateLeft(h1, 27) + h2;
+        h1 = h1 * 5 + 0x52dce729;
+        long k2 = Long.rotateLeft(k * C2, 33) * C1;
+        h2 ^= k2;
+        h2 = Long.rotateLeft(h2, 31) + h1;
+        h2 = h2 * 5 + 0x38495ab5;
+        length++;
+        return this;
+    }
+
+    public Hasher putInt(int value) {
+        return putLong(value);
+    }
+
+    public Hasher putBoolean(boolean value) {
+        return putLong(value ? 1 : 0);
+    }
+
+    public Hasher putTag(char tag) {
+        return putLong(((long) tag << 48) | 0x7a6b);
+    }
+
+    public Hasher putString(String value) {
+        if (value == null) {
+            return putLong(-1);
+        }
+        int len = value.length();
+        putLong(len);
+        int i = 0;
+        for (; i + 4 <= len; i += 4) {
+            putLong((long) value.charAt(i) | (long) value.charAt(i + 1) << 16 | (long) value.charAt(i + 2) << 32 | (long) value.charAt(i + 3) << 48);
+        }
+        if (i < len) {
+            long last = 0;
+            for (int shift = 0; i < len; i++, shift += 16) {
+                last |= (long) value.charAt(i) << shift;
+            }
+            putLong(last);
+        }
+        return this;
+    }
+
+    public Hasher putBytes(byte[] value) {
+        if (value == null) {
+            return putLong(-1);
+        }
+        int len = value.length;
+        putLong(len);
+        long k = 0;
+        for (int i = 0; i < len; i++) {
+            k |= (value[i] & 0xFFL) << ((i & 7) << 3);
+            if ((i & 7) == 7) {
+                putLong(k);
+                k = 0;
+            }
+        }
+        if ((len & 7) != 0) {
+            putLong(k);
+        }
+        return this;
+    }
+
+    public Hasher putStrings(String[] values) {
+        if (values == null) {
+            return putLong(-1);
+        }
+        putLong(values.length);
+        for (String value : values) {
+            putString(value);
+        }
+        return this;
+    }
+
+    public Hasher putFingerprint(Fingerprint fingerprint) {
+        return putLong(fingerprint.hi()).putLong(fingerprint.lo());
+    }
+
+    public Hasher putHandle(Handle handle) {
+        putTag('H');
+        putInt(handle.getTag());
+        putString(handle.getOwner());
+        putString(handle.getName());
+        putString(handle.getDesc());
+        return putBoolean(handle.isInterface());
+    }
+
+    // anything that can show up as a constant, an annotation value or a bootstrap argument
+    public Hasher putValue(Object value) {
+        if (value == null) {
+            return putTag('0');
+        } else if (value instanceof String s) {
+            return putTag('s').putString(s);
+        } else if (value instanceof Integer i) {
+            return putTag('I').putInt(i);
+        } else if (value instanceof Long l) {
+            return putTag('J').putLong(l);
+        } else if (value instanceof Float f) {
+            return putTag('F').putInt(Float.floatToRawIntBits(f));
+        } else if (value instanceof Double d) {
+            return putTag('D').putLong(Double.doubleToRawLongBits(d));
+        } else if (value instanceof Boolean b) {
+            return putTag('Z').putBoolean(b);
+        } else if (value instanceof Byte b) {
+            return putTag('B').putInt(b);
+        } else if (value instanceof Character c) {
+            return putTag('C').putInt(c);
+        } else if (value instanceof Short s) {
+            return putTag('S').putInt(s);
+        } else if (value instanceof Type t) {
+            return putTag('T').putString(t.getDescriptor());
+        } else if (value instanceof Handle h) {
+            return putHandle(h);
+        } else if (value instanceof ConstantDynamic condy) {
+            putTag('K');
+            putString(condy.getName());
+            putString(condy.getDescriptor());
+            putHandle(condy.getBootstrapMethod());
+            putInt(condy.getBootstrapMethodArgumentCount());
+            for (int i = 0; i < condy.getBootstrapMethodArgumentCount(); i++) {
+                putValue(condy.getBootstrapMethodArgument(i));
+            }
+            return this;
+        } else if (value.getClass().isArray()) {
+            // primitive arrays from annotation values
+            int len = Array.getLength(value);
+            putTag('[').putInt(len);
+            for (int i = 0; i < len; i++) {
+                putValue(Array.get(value, i));
+            }
+            return this;
+        }
+        throw new IllegalArgumentException("Unsupported value " + value.getClass().getName());
+    }
+
+    public Fingerprint finish() {
+        long a = h1 ^ length;
+        long b = h2 ^ length;
+        a += b;
+        b += a;
+        a = fmix(a);
+        b = fmix(b);
+        a += b;
+        b += a;
+        return new Fingerprint(a, b);
+    }
+
+    private static long fmix(long k) {
+        k ^= k >>> 33;
+        k *= 0xff51afd7ed558ccdL;
+        k ^= k >>> 33;
+        k *= 0xc4ceb9fe1a85ec53L;
+        k ^= k >>> 33;
+        return k;
+    }
+
+}
@@ -0,0 +1,11 @@
+package xyz.wagyourtail.asmreader.fingerprint;
+
+// fingerprint covers the member's header (access, signature, exceptions...) as well as its body,
+// body is just the code and null for fields and methods without any
+public record MemberFingerprint(String name, String descriptor, Fingerprint fingerprint, Fingerprint body) {
+
+    public String key() {
+        return name + descriptor;
+    }
+
+}
@@ -0,0 +1,112 @@
+package xyz.wagyourtail.asmreader.grep;
+
+import xyz.wagyourtail.asmreader.file.AbstractReader;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+// a sequence of javasm instructions separated by ; or newlines, matched against consecutive instructions.
+// the opcode and operands are globs (* and ?) against the text DeterministicTextifier would print, for example
+//   INVOKEVIRTUAL java/util/Map.get *
+//   ALOAD 0; GETFIELD *; ...; ARETURN
+// leaving the operands out matches any, a lone * is any one instruction and ... is any number of them
+public class InsnPattern {
+    private final String source;
+    private final List<Step> steps;
+
+    private InsnPattern(String source, List<Step> steps) {
+        this.source = source;
+        this.steps = steps;
+    }
+
+    public static InsnPattern compile(String pattern) {
+        List<Step> steps = new ArrayList<>();
+        for (String part : pattern.split("[;\n]")) {
+            String insn = part.strip().replaceAll("\\s+", " ");
+            if (insn.isEmpty()) {
+                continue;
+            }
+            if (insn.equals("...")) {
+                steps.add(Step.GAP);
+                continue;
+            }
+            int space = insn.indexOf(' ');
+            String opcode = (space == -1 ? insn : insn.substring(0, space)).toUpperCase(Locale.ROOT);
+            String operands = space == -1 ? null : insn.substring(space + 1);
+            BitSet opcodes = new BitSet(256);
+            Pattern opcodeGlob = glob(opcode);
+            for (Map.Entry<String, Integer> entry : AbstractReader.OPCODES.entrySet()) {
+                if (!entry.getKey().isEmpty() && opcodeGlob.matcher(entry.getKey()).matches()) {
+                    opcodes.set(entry.getValue());
+                }
+            }
+            if (opcodes.isEmpty()) {
+                throw new IllegalArgumentException("Unknown opcode \"" + opcode + "\" in pattern \"" + pattern + "\"");
+            }
+            steps.add(new Step(opcodes, operands == null || operands.equals("*") ? null : glob(operands)));
+        }
+        if (steps.stream().allMatch(e -> e == Step.GAP)) {
+            throw new IllegalArgumentException("Empty pattern \"" + pattern + "\"");
+        }
+        // leading/trailing gaps don't change what matches
+        while (steps.get(0) == Step.GAP) steps.remove(0);
+        while (steps.get(steps.size() - 1) == Step.GAP) steps.remove(steps.size() - 1);
+        return new InsnPattern(pattern, List.copyOf(steps));
+    }
+
+    static Pattern glob(String glob) {
+        StringBuilder sb = new StringBuilder();
+        StringBuilder literal = new StringBuilder();
+        for (char c : glob.toCharArray()) {
+            if (c == '*' || c == '?') {
+                if (!literal.isEmpty()) {
+                    sb.append(Pattern.quote(literal.toString()));
+                    literal.setLength(0);
+                }
+                sb.append(c == '*' ? ".*" : ".");
+            } else {
+                literal.append(c);
+            }
+        }
+        if (!literal.isEmpty()) {
+            sb.append(Pattern.quote(literal.toString()));
+        }
+        return Pattern.compile(sb.toString(), Pattern.DOTALL);
+    }
+
+    public List<Step> steps() {
+        return steps;
+    }
+
+    // whether any step looks at operands for this opcode, so the matcher only formats them when it has to
+    boolean needsOperands(int opcode) {
+        for (Step step : steps) {
+            if (step.operands != null && step.opcodes.get(opcode)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    @Override
+    public String toString() {
+        return source;
+    }
+
+    public record Step(BitSet opcodes, Pattern operands) {
+        public static final Step GAP = new Step(null, null);
+
+        public boolean matches(int opcode, String operands) {
+            if (!opcodes.get(opcode)) {
+                return false;
+            }
+            return this.operands == null || this.operands.matcher(operands).matches();
+        }
+
+    }
+
+}
@@ -0,0 +1,113 @@
+package xyz.wagyourtail.asmreader.grep;
+
+import org.objectweb.asm.ClassReader;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.ParallelDisassembler;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.stream.Collectors;
+
+// matches an InsnPattern against every method of every class on the workers, only methods that match get
+// textified. results come out in input order
+public class JarGrep {
+    private final InsnPattern pattern;
+    private final int workers;
+    private final TextifierProfile profile;
+
+    public JarGrep(InsnPattern pattern, int workers, TextifierProfile profile) {
+        this.pattern = pattern;
+        this.workers = workers;
+        this.profile = profile;
+    }
+
+    public Result grep(IOSupplier<ClassEntry> source, Writer out) throws IOException {
+        long start = System.nanoTime();
+        long[] totals = new long[3];
+        new Pipeline<ClassEntry, ClassMatches>(workers, ClassStreams.DEFAULT_CAPACITY).run(source, this::grep, matches -> {
+            totals[0]++;
+            totals[1] += matches.methods();
+            totals[2] += matches.matches();
+            out.write(matches.text());
+        });
+        return new Result(totals[0], totals[1], totals[2], System.nanoTime() - start);
+    }
+
+    public ClassMatches grep(ClassEntry entry) {
+        // first pass only runs the pattern, most classes stop here
+        List<String> keys = new ArrayList<>();
+        List<PatternMethodVisitor> visitors = new ArrayList<>();
+        new ClassReader(entry.bytes()).accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                PatternMethodVisitor visitor = new PatternMethodVisitor(pattern);
+                keys.add(name + descriptor);
+                visitors.add(visitor);
+                return visitor;
+            }
+        }, ClassReader.SKIP_FRAMES);
+        int methods = 0;
+        int matches = 0;
+        for (PatternMethodVisitor visitor : visitors) {
+            if (visitor.matches() > 0) {
+                methods++;
+                matches += visitor.matches();
+            }
+        }
+        if (methods == 0) {
+            return new ClassMatches("", 0, 0);
+        }
+        ClassNode node = new ClassNode();
+        new ClassReader(entry.bytes()).accept(node, profile.readerFlags());
+        StringBuilder sb = new StringBuilder();
+        for (int i = 0; i < visitors.size(); i++) {
+            PatternMethodVisitor visitor = visitors.get(i);
+            if (visitor.matches() == 0) {
+                continue;
+            }
+            MethodNode method = node.methods.get(i);
+            sb.append("// ").append(node.name).append('.').append(keys.get(i)).append(": ");
+            sb.append(visitor.matches()).append(visitor.matches() == 1 ? " match" : " matches");
+            if (visitor.lines().stream().anyMatch(e -> e >= 0)) {
+                sb.append(" (line ").append(visitor.lines().stream().map(e -> e < 0 ? "?" : e.toString()).collect(Collectors.joining(", "))).append(')');
+            }
+            append(sb, ParallelDisassembler.textifyMethod(node, method, profile));
+            sb.append('\n');
+        }
+        return new ClassMatches(sb.toString(), methods, matches);
+    }
+
+    private static void append(StringBuilder sb, List<?> text) {
+        for (Object o : text) {
+            if (o instanceof List<?> l) {
+                append(sb, l);
+            } else {
+                sb.append(o);
+            }
+        }
+    }
+
+    public record ClassMatches(String text, int methods, int matches) {
+    }
+
+    public record Result(long classes, long methods, long matches, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("%d matches in %d methods, %d classes searched in %.2fs", matches, methods, classes, nanos / 1e9);
+        }
+
+    }
+
+}
@@ -0,0 +1,202 @@
+package xyz.wagyourtail.asmreader.grep;
+
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.util.Printer;
+import xyz.wagyourtail.asmreader.DeterministicTextifier;
+
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+// runs the pattern as an nfa over the instructions as they're visited, nothing is kept but the active states.
+// operands are only formatted for opcodes some step actually looks at
+public class PatternMethodVisitor extends MethodVisitor {
+    private final List<InsnPattern.Step> steps;
+    private final boolean[] needsOperands = new boolean[256];
+    private final Map<Label, Integer> labels = new HashMap<>();
+    private final List<Integer> lines = new ArrayList<>();
+    private BitSet active = new BitSet();
+    private int line = -1;
+    private int matches;
+    private DeterministicTextifier textifier;
+
+    public PatternMethodVisitor(InsnPattern pattern) {
+        super(Opcodes.ASM9);
+        this.steps = pattern.steps();
+        for (int i = 0; i < needsOperands.length; i++) {
+            needsOperands[i] = pattern.needsOperands(i);
+        }
+    }
+
+    public int matches() {
+        return matches;
+    }
+
+    // line of each match, -1 if there was no LINENUMBER before it
+    public List<Integer> lines() {
+        return lines;
+    }
+
+    private String label(Label label) {
+        return "L" + labels.computeIfAbsent(label, l -> labels.size());
+    }
+
+    private void step(int opcode, String operands) {
+        int size = steps.size();
+        active.set(0);
+        // a gap can be skipped without consuming anything
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            if (steps.get(i) == InsnPattern.Step.GAP) {
+                active.set(i + 1);
+            }
+        }
+        BitSet next = new BitSet(size);
+        boolean matched = false;
+        for (int i = active.nextSetBit(0); i >= 0; i = active.nextSetBit(i + 1)) {
+            InsnPattern.Step step = steps.get(i);
+            if (step == InsnPattern.Step.GAP) {
+                next.set(i);
+            } else if (step.matches(opcode, operands)) {
+                if (i + 1 == size) {
+                    matched = true;
+                } else {
+                    next.set(i + 1);
+                }
+            }
+        }
+        if (matched) {
+            matches++;
+            lines.add(line);
+        }
+        active = next;
+    }
+
+    @Override
+    public void visitLabel(Label label) {
+        label(label);
+    }
+
+    @Override
+    public void visitLineNumber(int line, Label start) {
+        this.line = line;
+        label(start);
+    }
+
+    @Override
+    public void visitTryCatchBlock(Label start, Label end, Label handler, String type) {
+        label(start);
+        label(end);
+        label(handler);
+    }
+
+    @Override
+    public void visitInsn(int opcode) {
+        step(opcode, "");
+    }
+
+    @Override
+    public void visitIntInsn(int opcode, int operand) {
+        step(opcode, needsOperands[opcode] ? opcode == Opcodes.NEWARRAY ? Printer.TYPES[operand] : Integer.toString(operand) : null);
+    }
+
+    @Override
+    public void visitVarInsn(int opcode, int varIndex) {
+        step(opcode, needsOperands[opcode] ? Integer.toString(varIndex) : null);
+    }
+
+    @Override
+    public void visitTypeInsn(int opcode, String type) {
+        step(opcode, type);
+    }
+
+    @Override
+    public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+        step(opcode, needsOperands[opcode] ? owner + "." + name + " : " + descriptor : null);
+    }
+
+    @Override
+    public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+        step(opcode, needsOperands[opcode] ? owner + "." + name + " " + descriptor + (isInterface ? " (itf)" : "") : null);
+    }
+
+    @Override
+    public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+        step(Opcodes.INVOKEDYNAMIC, needsOperands[Opcodes.INVOKEDYNAMIC] ? name + descriptor : null);
+    }
+
+    @Override
+    public void visitJumpInsn(int opcode, Label label) {
+        // always named, so the numbering stays in step with the textifier
+        String name = label(label);
+        step(opcode, name);
+    }
+
+    @Override
+    public void visitLdcInsn(Object value) {
+        step(Opcodes.LDC, needsOperands[Opcodes.LDC] ? constant(value) : null);
+    }
+
+    @Override
+    public void visitIincInsn(int varIndex, int increment) {
+        step(Opcodes.IINC, needsOperands[Opcodes.IINC] ? varIndex + " " + increment : null);
+    }
+
+    @Override
+    public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+        for (Label label : labels) {
+            label(label);
+        }
+        label(dflt);
+        step(Opcodes.TABLESWITCH, "");
+    }
+
+    @Override
+    public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+        for (Label label : labels) {
+            label(label);
+        }
+        label(dflt);
+        step(Opcodes.LOOKUPSWITCH, "");
+    }
+
+    @Override
+    public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+        step(Opcodes.MULTIANEWARRAY, needsOperands[Opcodes.MULTIANEWARRAY] ? descriptor + " " + numDimensions : null);
+    }
+
+    // same as DeterministicTextifier.appendValue for the constants ldc can load
+    private String constant(Object value) {
+        if (value instanceof Double) {
+            return value + "D";
+        } else if (value instanceof Float) {
+            return value + "F";
+        } else if (value instanceof Long) {
+            return value + "L";
+        } else if (value instanceof String s) {
+            StringBuilder sb = new StringBuilder();
+            Printer.appendString(sb, s);
+            return sb.toString();
+        } else if (value instanceof Type t) {
+            return t.getDescriptor() + ".class";
+        } else if (value instanceof ConstantDynamic || value instanceof Handle) {
+            // condy spans several lines with its own indenting, simplest to have the textifier print it
+            if (textifier == null) {
+                textifier = new DeterministicTextifier();
+            }
+            textifier.getText().clear();
+            textifier.visitLdcInsn(value);
+            String text = (String) textifier.getText().get(0);
+            // without the "LDC " in front and the newline after
+            return text.substring(text.indexOf("LDC ") + 4, text.length() - 1);
+        }
+        return String.valueOf(value);
+    }
+
+}
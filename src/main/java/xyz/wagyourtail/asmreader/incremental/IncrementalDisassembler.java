@@ -0,0 +1,148 @@
+package xyz.wagyourtail.asmreader.incremental;
+
+import org.objectweb.asm.ClassReader;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.fingerprint.Hasher;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.MemoryGovernor;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+// disassembles a jar to a directory like ClassStreams.disassembleToDirectory, but remembers every entry's crc
+// (straight from the central directory) and the hash, size and mtime of what was written for it in a manifest.
+// next time, entries with the same crc whose output is untouched are skipped without inflating them, and outputs
+// that no entry produces anymore are deleted
+public class IncrementalDisassembler {
+    public static final String MANIFEST = ".manifest";
+
+    private final int workers;
+    private final TextifierProfile profile;
+
+    public IncrementalDisassembler(int workers, TextifierProfile profile) {
+        this.workers = workers;
+        this.profile = profile;
+    }
+
+    public Result disassemble(ZipFile zip, Path dir) throws IOException {
+        long start = System.nanoTime();
+        Files.createDirectories(dir);
+        Path manifestFile = dir.resolve(MANIFEST);
+        Manifest previous = Manifest.read(manifestFile);
+        // a different profile means different text for every class
+        Map<String, Manifest.Entry> reusable = previous.profile() == profile ? previous.entries() : Map.of();
+        Map<String, Manifest.Entry> entries = new TreeMap<>();
+        // output to the entry that wrote it
+        Map<String, String> outputs = new ConcurrentHashMap<>();
+        long[] totals = new long[2];
+        Enumeration<? extends ZipEntry> zipEntries = zip.entries();
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ZipEntry, Outcome>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> Math.max(e.getSize(), 0)).run(() -> {
+                while (zipEntries.hasMoreElements()) {
+                    ZipEntry entry = zipEntries.nextElement();
+                    if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                        return entry;
+                    }
+                }
+                return null;
+            }, entry -> {
+                Manifest.Entry last = reusable.get(entry.getName());
+                if (last != null && entry.getCrc() != -1 && last.crc() == entry.getCrc()) {
+                    Manifest.Entry current = unchanged(dir, last);
+                    if (current != null) {
+                        ClassStreams.claim(outputs, current.output(), entry.getName());
+                        return new Outcome(current, false);
+                    }
+                }
+                byte[] bytes;
+                try (InputStream is = zip.getInputStream(entry)) {
+                    bytes = is.readAllBytes();
+                }
+                ClassReader reader = new ClassReader(bytes);
+                String output = ClassStreams.outputName(entry.getName(), reader.getClassName());
+                ClassStreams.claim(outputs, output, entry.getName());
+                byte[] text = Main.classToTextify(e -> reader.accept(e, profile.readerFlags()), profile).getBytes(StandardCharsets.UTF_8);
+                Path file = dir.resolve(output);
+                Files.createDirectories(file.getParent());
+                Files.write(file, text);
+                BasicFileAttributes attributes = Files.readAttributes(file, BasicFileAttributes.class);
+                return new Outcome(new Manifest.Entry(entry.getName(), entry.getCrc(), hash(text), output, attributes.size(), attributes.lastModifiedTime().toMillis()), true);
+            }, outcome -> {
+                entries.put(outcome.entry().name(), outcome.entry());
+                totals[outcome.written() ? 0 : 1]++;
+            });
+        }
+        // removed entries, and classes that moved to another name inside the same entry
+        long removed = 0;
+        for (Manifest.Entry e : previous.entries().values()) {
+            Path file = dir.resolve(e.output());
+            if (!outputs.containsKey(e.output()) && Files.deleteIfExists(file)) {
+                removed++;
+                // and the package directories it leaves empty
+                for (Path parent = file.getParent(); !parent.equals(dir) && isEmpty(parent); parent = parent.getParent()) {
+                    Files.delete(parent);
+                }
+            }
+        }
+        new Manifest(profile, entries).write(manifestFile);
+        return new Result(totals[0], totals[1], removed, System.nanoTime() - start);
+    }
+
+    // the output is still there and nobody edited it, the entry to remember it by or null. the hash is only
+    // checked when size or mtime moved, a touched but identical file gets its new mtime recorded
+    private static Manifest.Entry unchanged(Path dir, Manifest.Entry entry) throws IOException {
+        Path file = dir.resolve(entry.output());
+        BasicFileAttributes attributes;
+        try {
+            attributes = Files.readAttributes(file, BasicFileAttributes.class);
+        } catch (NoSuchFileException e) {
+            return null;
+        }
+        long modified = attributes.lastModifiedTime().toMillis();
+        if (attributes.size() != entry.size()) {
+            return null;
+        }
+        if (modified == entry.modified()) {
+            return entry;
+        }
+        if (!hash(Files.readAllBytes(file)).equals(entry.hash())) {
+            return null;
+        }
+        return new Manifest.Entry(entry.name(), entry.crc(), entry.hash(), entry.output(), entry.size(), modified);
+    }
+
+    private static boolean isEmpty(Path dir) throws IOException {
+        try (Stream<Path> list = Files.list(dir)) {
+            return list.findAny().isEmpty();
+        }
+    }
+
+    private static String hash(byte[] bytes) {
+        return new Hasher().putBytes(bytes).finish().toString();
+    }
+
+    private record Outcome(Manifest.Entry entry, boolean written) {
+    }
+
+    public record Result(long written, long skipped, long removed, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("%d classes written, %d unchanged, %d removed in %.2fs", written, skipped, removed, nanos / 1e9);
+        }
+
+    }
+
+}
@@ -0,0 +1,61 @@
+package xyz.wagyourtail.asmreader.incremental;
+
+import xyz.wagyourtail.asmreader.TextifierProfile;
+
+import java.io.BufferedReader;
+import java.io.IOException;
+import java.io.Writer;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Locale;
+import java.util.Map;
+import java.util.TreeMap;
+
+// what the last incremental run wrote, the profile on the first line and then one tab separated
+// "<entry> <crc> <hash> <output> <size> <mtime>" line per class entry, output is relative to the directory
+public record Manifest(TextifierProfile profile, Map<String, Entry> entries) {
+
+    public static Manifest read(Path file) throws IOException {
+        Map<String, Entry> entries = new TreeMap<>();
+        if (!Files.exists(file)) {
+            return new Manifest(null, entries);
+        }
+        try (BufferedReader in = Files.newBufferedReader(file, StandardCharsets.UTF_8)) {
+            String line = in.readLine();
+            if (line == null) {
+                return new Manifest(null, entries);
+            }
+            TextifierProfile profile = TextifierProfile.of(line);
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split("\t");
+                if (parts.length != 6) {
+                    throw new IOException("Invalid manifest line \"" + line + "\" in " + file);
+                }
+                entries.put(parts[0], new Entry(parts[0], Long.parseLong(parts[1], 16), parts[2], parts[3], Long.parseLong(parts[4]), Long.parseLong(parts[5])));
+            }
+            return new Manifest(profile, entries);
+        }
+    }
+
+    // written next to the real one and moved over it, a run that dies halfway leaves the old manifest behind
+    public void write(Path file) throws IOException {
+        Path tmp = file.resolveSibling(file.getFileName() + ".tmp");
+        try (Writer out = Files.newBufferedWriter(tmp, StandardCharsets.UTF_8)) {
+            out.write(profile.name().toLowerCase(Locale.ROOT));
+            out.write('\n');
+            for (Entry e : entries.values()) {
+                out.write(e.name() + '\t' + Long.toHexString(e.crc()) + '\t' + e.hash() + '\t' + e.output() + '\t' + e.size() + '\t' + e.modified() + '\n');
+            }
+        }
+        Files.move(tmp, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    public record Entry(String name, long crc, String hash, String output, long size, long modified) {
+    }
+
+}
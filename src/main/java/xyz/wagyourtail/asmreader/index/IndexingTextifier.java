@@ -0,0 +1,82 @@
+package xyz.wagyourtail.asmreader.index;
+
+import org.objectweb.asm.util.Textifier;
+import xyz.wagyourtail.asmreader.DeterministicTextifier;
+import xyz.wagyourtail.asmreader.FormatCache;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+
+import java.io.ByteArrayOutputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+
+// remembers which elements of the text list belong to which field/method, each one is its header line
+// followed by the nested textifier's list, so the byte ranges fall out when the text is encoded
+public class IndexingTextifier extends DeterministicTextifier {
+    private final List<String> keys = new ArrayList<>();
+    private final List<Integer> starts = new ArrayList<>();
+    private String name;
+
+    public IndexingTextifier(FormatCache cache, TextifierProfile profile) {
+        super(cache, profile);
+    }
+
+    @Override
+    public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+        super.visit(version, access, name, signature, superName, interfaces);
+        this.name = name;
+    }
+
+    @Override
+    public Textifier visitField(int access, String name, String descriptor, String signature, Object value) {
+        Textifier textifier = super.visitField(access, name, descriptor, signature, value);
+        keys.add(JavasmIndex.fieldKey(this.name, name, descriptor));
+        starts.add(text.size() - 2);
+        return textifier;
+    }
+
+    @Override
+    public DeterministicTextifier visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+        DeterministicTextifier textifier = super.visitMethod(access, name, descriptor, signature, exceptions);
+        keys.add(JavasmIndex.methodKey(this.name, name, descriptor));
+        starts.add(text.size() - 2);
+        return textifier;
+    }
+
+    // the class as utf-8 with the class entry first, offsets are relative to the start of the class
+    public IndexedClass encode() {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        List<JavasmIndex.Entry> entries = new ArrayList<>();
+        StringBuilder sb = new StringBuilder();
+        int member = 0;
+        int start = 0;
+        for (int i = 0; i < text.size(); i++) {
+            if (member < starts.size() && starts.get(member) == i) {
+                start = out.size();
+            }
+            sb.setLength(0);
+            append(sb, text.get(i));
+            out.writeBytes(sb.toString().getBytes(StandardCharsets.UTF_8));
+            if (member < starts.size() && starts.get(member) + 1 == i) {
+                entries.add(new JavasmIndex.Entry(keys.get(member), start, out.size() - start));
+                member++;
+            }
+        }
+        entries.add(0, new JavasmIndex.Entry(name, 0, out.size()));
+        return new IndexedClass(name, out.toByteArray(), entries);
+    }
+
+    private static void append(StringBuilder sb, Object o) {
+        if (o instanceof List<?> list) {
+            for (Object e : list) {
+                append(sb, e);
+            }
+        } else {
+            sb.append(o);
+        }
+    }
+
+    public record IndexedClass(String name, byte[] bytes, List<JavasmIndex.Entry> entries) {
+    }
+
+}
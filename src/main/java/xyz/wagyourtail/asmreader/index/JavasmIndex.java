@@ -0,0 +1,136 @@
+package xyz.wagyourtail.asmreader.index;
+
+import org.objectweb.asm.util.TraceClassVisitor;
+import xyz.wagyourtail.asmreader.FormatCache;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.MemoryGovernor;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+
+import java.io.*;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+// sidecar for a concatenated .javasm file, one "<offset> <length> <key>" line per class, field and method.
+// offsets are bytes into the utf-8 file. keys are the internal name for classes, owner.name(desc) for methods
+// and owner.name:desc for fields
+public class JavasmIndex implements Closeable {
+    public static final String SUFFIX = ".idx";
+
+    private final Path file;
+    private final Map<String, Entry> entries;
+    private final FileChannel channel;
+
+    private JavasmIndex(Path file, Map<String, Entry> entries, FileChannel channel) {
+        this.file = file;
+        this.entries = entries;
+        this.channel = channel;
+    }
+
+    public static Path indexFile(Path file) {
+        return file.resolveSibling(file.getFileName() + SUFFIX);
+    }
+
+    public static String fieldKey(String owner, String name, String descriptor) {
+        return owner + "." + name + ":" + descriptor;
+    }
+
+    public static String methodKey(String owner, String name, String descriptor) {
+        return owner + "." + name + descriptor;
+    }
+
+    public static boolean isClassKey(String key) {
+        return key.indexOf('.') == -1;
+    }
+
+    // disassembles to one concatenated file like ClassStreams.disassemble, and writes the index next to it
+    public static long write(IOSupplier<ClassEntry> source, Path file, TextifierProfile profile, int workers) throws IOException {
+        long[] offset = new long[1];
+        try (OutputStream out = new BufferedOutputStream(Files.newOutputStream(file));
+             Writer index = Files.newBufferedWriter(indexFile(file), StandardCharsets.UTF_8);
+             MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, IndexingTextifier.IndexedClass>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source, entry -> {
+                IndexingTextifier textifier = new IndexingTextifier(FormatCache.DEFAULT, profile);
+                new org.objectweb.asm.ClassReader(entry.bytes()).accept(new TraceClassVisitor(null, textifier, null), profile.readerFlags());
+                return textifier.encode();
+            }, indexed -> {
+                out.write(indexed.bytes());
+                for (Entry e : indexed.entries()) {
+                    index.write(String.valueOf(offset[0] + e.offset()));
+                    index.write(' ');
+                    index.write(String.valueOf(e.length()));
+                    index.write(' ');
+                    index.write(e.key());
+                    index.write('\n');
+                }
+                offset[0] += indexed.bytes().length;
+            });
+        }
+        return offset[0];
+    }
+
+    public static JavasmIndex open(Path file) throws IOException {
+        Map<String, Entry> entries = new HashMap<>();
+        try (BufferedReader in = Files.newBufferedReader(indexFile(file), StandardCharsets.UTF_8)) {
+            String line;
+            while ((line = in.readLine()) != null) {
+                if (line.isEmpty()) {
+                    continue;
+                }
+                String[] parts = line.split(" ", 3);
+                if (parts.length != 3) {
+                    throw new IOException("Invalid index line \"" + line + "\"");
+                }
+                entries.put(parts[2], new Entry(parts[2], Long.parseLong(parts[0]), Integer.parseInt(parts[1])));
+            }
+        }
+        return new JavasmIndex(file, entries, FileChannel.open(file, StandardOpenOption.READ));
+    }
+
+    public Entry entry(String key) {
+        return entries.get(key);
+    }
+
+    public Set<String> keys() {
+        return Collections.unmodifiableSet(entries.keySet());
+    }
+
+    // only the entry's bytes get mapped, so the size of the file doesn't matter
+    public String text(String key) throws IOException {
+        Entry entry = entries.get(key);
+        if (entry == null) {
+            return null;
+        }
+        if (entry.offset() + entry.length() > channel.size()) {
+            throw new IOException("Index is out of date with " + file);
+        }
+        return StandardCharsets.UTF_8.decode(channel.map(FileChannel.MapMode.READ_ONLY, entry.offset(), entry.length())).toString();
+    }
+
+    public TokenReader reader(String key) throws IOException {
+        String text = text(key);
+        if (text == null) {
+            throw new IllegalArgumentException("No entry for \"" + key + "\" in " + file);
+        }
+        return new TokenReader(new StringReader(text));
+    }
+
+    @Override
+    public void close() throws IOException {
+        channel.close();
+    }
+
+    public record Entry(String key, long offset, int length) {
+    }
+
+}
@@ -0,0 +1,10 @@
+package xyz.wagyourtail.asmreader.iofunction;
+
+import java.io.IOException;
+
+@FunctionalInterface
+public interface IOFunction<T, R> {
+
+    R apply(T t) throws IOException;
+
+}
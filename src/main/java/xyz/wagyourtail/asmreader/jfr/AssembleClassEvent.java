@@ -0,0 +1,21 @@
+package xyz.wagyourtail.asmreader.jfr;
+
+import jdk.jfr.*;
+
+// one class read out of javasm by ClassReader.accept, the duration includes whatever the visitor does
+@Name("xyz.wagyourtail.asmreader.AssembleClass")
+@Label("Assemble Class")
+@Category({"ASMReader", "Assemble"})
+@StackTrace(false)
+public class AssembleClassEvent extends Event {
+    @Label("Class Name")
+    public String className;
+
+    @Label("Methods")
+    public int methods;
+
+    @Label("Input Size")
+    @Description("Chars of javasm read for the class")
+    public long inputSize;
+
+}
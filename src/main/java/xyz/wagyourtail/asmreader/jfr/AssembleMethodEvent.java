@@ -0,0 +1,25 @@
+package xyz.wagyourtail.asmreader.jfr;
+
+import jdk.jfr.*;
+
+// one method read by MethodReader, owner is null when the method was read on its own
+@Name("xyz.wagyourtail.asmreader.AssembleMethod")
+@Label("Assemble Method")
+@Category({"ASMReader", "Assemble"})
+@StackTrace(false)
+public class AssembleMethodEvent extends Event {
+    @Label("Class Name")
+    public String className;
+
+    @Label("Method")
+    @Description("Name and descriptor")
+    public String method;
+
+    @Label("Instructions")
+    public int instructions;
+
+    @Label("Input Size")
+    @Description("Chars of javasm read for the method")
+    public long inputSize;
+
+}
@@ -0,0 +1,57 @@
+package xyz.wagyourtail.asmreader.jfr;
+
+import jdk.jfr.*;
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+
+// one class file textified
+@Name("xyz.wagyourtail.asmreader.DisassembleClass")
+@Label("Disassemble Class")
+@Category({"ASMReader", "Disassemble"})
+@StackTrace(false)
+public class DisassembleClassEvent extends Event {
+    @Label("Class Name")
+    public String className;
+
+    @Label("Methods")
+    public int methods;
+
+    @Label("Input Size")
+    @Description("Bytes of the class file")
+    @DataAmount
+    public long inputSize;
+
+    @Label("Output Size")
+    @Description("Chars of javasm written")
+    public long outputSize;
+
+    // picks up the name and method count on the way to the textifier, only put in between while recording
+    public ClassVisitor wrap(ClassVisitor visitor) {
+        if (!isEnabled()) {
+            return visitor;
+        }
+        return new ClassVisitor(Opcodes.ASM9, visitor) {
+            @Override
+            public void visit(int version, int access, String name, String signature, String superName, String[] interfaces) {
+                className = name;
+                super.visit(version, access, name, signature, superName, interfaces);
+            }
+
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                methods++;
+                return super.visitMethod(access, name, descriptor, signature, exceptions);
+            }
+        };
+    }
+
+    public void commit(long inputSize, long outputSize) {
+        if (shouldCommit()) {
+            this.inputSize = inputSize;
+            this.outputSize = outputSize;
+            commit();
+        }
+    }
+
+}
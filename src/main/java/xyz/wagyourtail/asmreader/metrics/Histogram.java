@@ -0,0 +1,69 @@
+package xyz.wagyourtail.asmreader.metrics;
+
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+
+// power of two buckets, bucket i holds values with i significant bits, so percentiles are only good to within 2x
+// but recording is a couple of adds no matter how many threads record at once
+public class Histogram {
+    private final LongAdder[] buckets = new LongAdder[65];
+    private final LongAdder count = new LongAdder();
+    private final LongAdder sum = new LongAdder();
+    private final LongAccumulator max = new LongAccumulator(Math::max, 0);
+
+    public Histogram() {
+        for (int i = 0; i < buckets.length; i++) {
+            buckets[i] = new LongAdder();
+        }
+    }
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        buckets[64 - Long.numberOfLeadingZeros(value)].increment();
+        count.increment();
+        sum.add(value);
+        max.accumulate(value);
+    }
+
+    public void reset() {
+        for (LongAdder bucket : buckets) {
+            bucket.reset();
+        }
+        count.reset();
+        sum.reset();
+        max.reset();
+    }
+
+    // not atomic, recordings that happen while it's taken may be in some of the numbers and not others
+    public Snapshot snapshot() {
+        long[] counts = new long[buckets.length];
+        for (int i = 0; i < buckets.length; i++) {
+            counts[i] = buckets[i].sum();
+        }
+        return new Snapshot(count.sum(), sum.sum(), max.get(), counts);
+    }
+
+    public record Snapshot(long count, long sum, long max, long[] buckets) {
+
+        public double mean() {
+            return count == 0 ? 0 : (double) sum / count;
+        }
+
+        // upper bound of the bucket the percentile falls in, capped at the max
+        public long percentile(double percentile) {
+            long rank = (long) Math.ceil(count * percentile / 100);
+            long seen = 0;
+            for (int i = 0; i < buckets.length; i++) {
+                seen += buckets[i];
+                if (seen >= rank && seen != 0) {
+                    return Math.min(i == 0 ? 0 : i == 64 ? Long.MAX_VALUE : (1L << i) - 1, max);
+                }
+            }
+            return max;
+        }
+
+    }
+
+}
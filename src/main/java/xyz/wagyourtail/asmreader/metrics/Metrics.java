@@ -0,0 +1,162 @@
+package xyz.wagyourtail.asmreader.metrics;
+
+import java.util.EnumMap;
+import java.util.Map;
+import java.util.concurrent.atomic.LongAdder;
+
+// process wide counters for the readers, off unless something turns them on (--stats, or whatever embeds us).
+// while off every call is one volatile read, so the readers call in here unconditionally
+public class Metrics {
+    private static volatile boolean enabled;
+    private static final LongAdder[] COUNTERS = adders(Counter.values().length);
+    private static final LongAdder[] INSTRUCTIONS = adders(OpcodeFamily.values().length);
+    private static final Histogram[] PHASES = new Histogram[Phase.values().length];
+
+    static {
+        for (int i = 0; i < PHASES.length; i++) {
+            PHASES[i] = new Histogram();
+        }
+    }
+
+    public static boolean enabled() {
+        return enabled;
+    }
+
+    public static void setEnabled(boolean enabled) {
+        Metrics.enabled = enabled;
+    }
+
+    public static void count(Counter counter, long amount) {
+        if (enabled) {
+            COUNTERS[counter.ordinal()].add(amount);
+        }
+    }
+
+    public static void instruction(int opcode) {
+        if (enabled) {
+            INSTRUCTIONS[OpcodeFamily.of(opcode).ordinal()].increment();
+        }
+    }
+
+    // nanos one class spent in a phase
+    public static void time(Phase phase, long nanos) {
+        if (enabled) {
+            PHASES[phase.ordinal()].record(nanos);
+        }
+    }
+
+    public static void reset() {
+        for (LongAdder counter : COUNTERS) {
+            counter.reset();
+        }
+        for (LongAdder instructions : INSTRUCTIONS) {
+            instructions.reset();
+        }
+        for (Histogram phase : PHASES) {
+            phase.reset();
+        }
+    }
+
+    public static Snapshot snapshot() {
+        Map<Counter, Long> counters = new EnumMap<>(Counter.class);
+        for (Counter counter : Counter.values()) {
+            counters.put(counter, COUNTERS[counter.ordinal()].sum());
+        }
+        Map<OpcodeFamily, Long> instructions = new EnumMap<>(OpcodeFamily.class);
+        for (OpcodeFamily family : OpcodeFamily.values()) {
+            instructions.put(family, INSTRUCTIONS[family.ordinal()].sum());
+        }
+        Map<Phase, Histogram.Snapshot> phases = new EnumMap<>(Phase.class);
+        for (Phase phase : Phase.values()) {
+            phases.put(phase, PHASES[phase.ordinal()].snapshot());
+        }
+        return new Snapshot(counters, instructions, phases);
+    }
+
+    private static LongAdder[] adders(int size) {
+        LongAdder[] adders = new LongAdder[size];
+        for (int i = 0; i < size; i++) {
+            adders[i] = new LongAdder();
+        }
+        return adders;
+    }
+
+    public enum Counter {
+        TOKENS,
+        CLASSES_ASSEMBLED,
+        METHODS_ASSEMBLED,
+        CLASSES_DISASSEMBLED,
+        // javasm chars lexed and class file bytes read, both count as input
+        BYTES_IN,
+        // class file bytes written and javasm chars textified
+        BYTES_OUT
+    }
+
+    public enum Phase {
+        // javasm text -> tokens
+        LEX,
+        // tokens -> visitor calls, including whatever the visitor does with them (usually building a ClassNode)
+        PARSE,
+        // class bytes -> textifier, the text is built as the class is visited
+        VISIT,
+        // ClassNode -> ClassWriter -> class bytes
+        WRITE
+    }
+
+    // the groups of the jvm spec's opcode table
+    public enum OpcodeFamily {
+        CONSTANTS,
+        LOADS,
+        STORES,
+        STACK,
+        MATH,
+        CONVERSIONS,
+        COMPARISONS,
+        CONTROL,
+        REFERENCES,
+        EXTENDED;
+
+        public static OpcodeFamily of(int opcode) {
+            if (opcode <= 20) return CONSTANTS; // NOP..LDC2_W
+            if (opcode <= 53) return LOADS; // ILOAD..SALOAD
+            if (opcode <= 86) return STORES; // ISTORE..SASTORE
+            if (opcode <= 95) return STACK; // POP..SWAP
+            if (opcode <= 132) return MATH; // IADD..IINC
+            if (opcode <= 147) return CONVERSIONS; // I2L..I2S
+            if (opcode <= 166) return COMPARISONS; // LCMP..IF_ACMPNE
+            if (opcode <= 177) return CONTROL; // GOTO..RETURN
+            if (opcode <= 195) return REFERENCES; // GETSTATIC..MONITOREXIT
+            return EXTENDED; // WIDE..JSR_W
+        }
+    }
+
+    public record Snapshot(Map<Counter, Long> counters, Map<OpcodeFamily, Long> instructions, Map<Phase, Histogram.Snapshot> phases) {
+
+        public long get(Counter counter) {
+            return counters.get(counter);
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            for (Map.Entry<Counter, Long> counter : counters.entrySet()) {
+                sb.append(String.format("%-22s %12d%n", counter.getKey().name().toLowerCase(), counter.getValue()));
+            }
+            long total = instructions.values().stream().mapToLong(Long::longValue).sum();
+            sb.append(String.format("instructions           %12d%n", total));
+            for (Map.Entry<OpcodeFamily, Long> family : instructions.entrySet()) {
+                if (family.getValue() != 0) {
+                    sb.append(String.format("  %-20s %12d %6.2f%%%n", family.getKey().name().toLowerCase(), family.getValue(), 100.0 * family.getValue() / total));
+                }
+            }
+            sb.append("per class phase times:");
+            for (Map.Entry<Phase, Histogram.Snapshot> phase : phases.entrySet()) {
+                Histogram.Snapshot times = phase.getValue();
+                sb.append(String.format("%n  %-6s %8d classes %10.2fms total %8.3fms mean %8.3fms p50 %8.3fms p99 %8.3fms max", phase.getKey().name().toLowerCase(), times.count(), times.sum() / 1e6, times.mean() / 1e6, times.percentile(50) / 1e6, times.percentile(99) / 1e6, times.max() / 1e6));
+            }
+            return sb.toString();
+        }
+
+    }
+
+}
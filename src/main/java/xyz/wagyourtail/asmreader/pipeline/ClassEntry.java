@@ -0,0 +1,4 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+public record ClassEntry(String name, byte[] bytes) {
+}
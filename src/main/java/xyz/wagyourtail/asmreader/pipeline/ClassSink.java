@@ -0,0 +1,19 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import java.io.IOException;
+
+public interface ClassSink<T> {
+
+    // called on the worker threads, anything expensive about writing an entry belongs here
+    T prepare(String internalName, byte[] bytes) throws IOException;
+
+    // called on the writer thread, in input order
+    void write(T entry) throws IOException;
+
+    void finish() throws IOException;
+
+    default void write(String internalName, byte[] bytes) throws IOException {
+        write(prepare(internalName, bytes));
+    }
+
+}
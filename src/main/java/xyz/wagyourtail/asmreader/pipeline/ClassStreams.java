@@ -0,0 +1,210 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.dedup.DedupDisassembler;
+import xyz.wagyourtail.asmreader.file.ClassReader;
+import xyz.wagyourtail.asmreader.iofunction.IOConsumer;
+import xyz.wagyourtail.asmreader.iofunction.IOFunction;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.jfr.DisassembleClassEvent;
+import xyz.wagyourtail.asmreader.metrics.Metrics;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+import xyz.wagyourtail.asmreader.token.TokenType;
+
+import java.io.*;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Enumeration;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.stream.Stream;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipFile;
+
+public class ClassStreams {
+    public static final int DEFAULT_CAPACITY = 64;
+    private static final String VERSIONS = "META-INF/versions/";
+
+    // concatenated javasm classes -> framed class bytes
+    public static void assemble(Reader in, OutputStream out, StreamFormat format, ClassLoader loader, TextifierProfile profile, int workers) throws IOException {
+        assemble(in, format.writer(out), loader, profile, workers);
+    }
+
+    // the profile the javasm was written with, compact needs frames computed
+    public static <T> void assemble(Reader in, ClassSink<T> sink, ClassLoader loader, TextifierProfile profile, int workers) throws IOException {
+        assemble(new TokenReader(in), sink, loader, profile, workers);
+    }
+
+    // a ShardedTokenReader lexes ahead on its own threads while the classes are parsed out of it here
+    public static <T> void assemble(TokenReader reader, ClassSink<T> sink, ClassLoader loader, TextifierProfile profile, int workers) throws IOException {
+        // parsing has to stay on one thread to find the class boundaries, writing the class doesn't
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassNode, T>(workers, DEFAULT_CAPACITY, governor, ClassStreams::estimateSize).run(() -> {
+                if (reader.peek().type == TokenType.EOF) {
+                    return null;
+                }
+                ClassNode node = new ClassNode();
+                new ClassReader(reader).accept(node);
+                return node;
+            }, node -> prepare(node, sink, loader, profile), sink::write);
+        }
+        sink.finish();
+    }
+
+    // every .javasm file under dir, files are parsed in parallel and the sink only sees finished classes
+    public static <T> void assembleDirectory(Path dir, ClassSink<T> sink, ClassLoader loader, TextifierProfile profile, int workers) throws IOException {
+        Iterator<Path> files;
+        Path bodiesDir = dir.resolve(DedupDisassembler.BODIES);
+        try (Stream<Path> walk = Files.walk(dir)) {
+            files = walk.filter(e -> e.toString().endsWith(".javasm") && !e.startsWith(bodiesDir)).sorted().toList().iterator();
+        }
+        IOFunction<String, String> bodies = DedupDisassembler.bodies(dir);
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<Path, List<T>>(workers, DEFAULT_CAPACITY, governor, e -> e.toFile().length()).run(() -> files.hasNext() ? files.next() : null, file -> {
+                List<T> classes = new ArrayList<>();
+                try (TokenReader reader = new TokenReader(Files.newBufferedReader(file))) {
+                    while (reader.peek().type != TokenType.EOF) {
+                        ClassNode node = new ClassNode();
+                        ClassReader classReader = new ClassReader(reader);
+                        classReader.setBodies(bodies);
+                        classReader.accept(node);
+                        classes.add(prepare(node, sink, loader, profile));
+                    }
+                } catch (TokenReader.UnexpectedTokenException e) {
+                    throw new IOException(file + ": " + e.getMessage(), e);
+                }
+                return classes;
+            }, classes -> {
+                for (T e : classes) {
+                    sink.write(e);
+                }
+            });
+        }
+        sink.finish();
+    }
+
+    private static <T> T prepare(ClassNode node, ClassSink<T> sink, ClassLoader loader, TextifierProfile profile) throws IOException {
+        return sink.prepare(node.name, write(node, Main.classWriter(profile.writerFlags(), loader)));
+    }
+
+    public static byte[] write(ClassNode node, ClassWriter writer) {
+        long start = System.nanoTime();
+        node.accept(writer);
+        byte[] bytes = writer.toByteArray();
+        Metrics.time(Metrics.Phase.WRITE, System.nanoTime() - start);
+        Metrics.count(Metrics.Counter.BYTES_OUT, bytes.length);
+        return bytes;
+    }
+
+    // framed class bytes -> concatenated javasm classes
+    public static void disassemble(InputStream in, Writer out, StreamFormat format, TextifierProfile profile, int workers) throws IOException {
+        IOSupplier<byte[]> frames = format.reader(in);
+        disassemble(() -> {
+            byte[] bytes = frames.get();
+            if (bytes == null) {
+                return null;
+            }
+            Metrics.count(Metrics.Counter.BYTES_IN, bytes.length);
+            return new ClassEntry(null, bytes);
+        }, e -> {
+            out.write(e.text());
+            out.flush();
+        }, profile, workers);
+    }
+
+    // one .javasm per class, mirroring the package layout. each worker streams its class straight into its file
+    public static void disassembleToDirectory(IOSupplier<ClassEntry> source, Path dir, TextifierProfile profile, int workers) throws IOException {
+        Map<String, String> claimed = new ConcurrentHashMap<>();
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, Path>(workers, DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source, entry -> {
+                org.objectweb.asm.ClassReader reader = new org.objectweb.asm.ClassReader(entry.bytes());
+                String output = outputName(entry.name(), reader.getClassName());
+                claim(claimed, output, entry.name() == null ? reader.getClassName() : entry.name());
+                Path file = dir.resolve(output);
+                Files.createDirectories(file.getParent());
+                DisassembleClassEvent event = new DisassembleClassEvent();
+                event.begin();
+                try (Writer out = Files.newBufferedWriter(file, StandardCharsets.UTF_8)) {
+                    long written = Main.classToTextify(e -> reader.accept(event.wrap(e), profile.readerFlags()), out, profile);
+                    event.commit(entry.bytes().length, written);
+                }
+                return file;
+            }, file -> {});
+        }
+    }
+
+    public static void disassemble(IOSupplier<ClassEntry> source, IOConsumer<ClassText> sink, TextifierProfile profile, int workers) throws IOException {
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, ClassText>(workers, DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source, entry -> {
+                org.objectweb.asm.ClassReader reader = new org.objectweb.asm.ClassReader(entry.bytes());
+                DisassembleClassEvent event = new DisassembleClassEvent();
+                event.begin();
+                String text = Main.classToTextify(e -> reader.accept(event.wrap(e), profile.readerFlags()), profile);
+                event.commit(entry.bytes().length, text.length());
+                return new ClassText(reader.getClassName(), text);
+            }, sink);
+        }
+    }
+
+    // multi release jars carry the same class once per version, those keep their META-INF/versions/<n>/ prefix
+    public static String versionPrefix(String entryName) {
+        if (entryName == null || !entryName.startsWith(VERSIONS)) {
+            return "";
+        }
+        int slash = entryName.indexOf('/', VERSIONS.length());
+        return slash == -1 ? "" : entryName.substring(0, slash + 1);
+    }
+
+    // where an entry's class goes in an output directory, relative to it
+    public static String outputName(String entryName, String className) {
+        return versionPrefix(entryName) + className + ".javasm";
+    }
+
+    // workers claim an output before writing it, so two entries for the same class (or a class twice in one
+    // version) fail instead of truncating each other's file halfway through
+    public static void claim(Map<String, String> claimed, String output, String entryName) throws IOException {
+        String other = claimed.putIfAbsent(output, entryName);
+        if (other != null) {
+            throw new IOException("\"" + other + "\" and \"" + entryName + "\" both disassemble to " + output);
+        }
+    }
+
+    public static IOSupplier<ClassEntry> classEntries(ZipFile zip) {
+        Enumeration<? extends ZipEntry> entries = zip.entries();
+        return () -> {
+            while (entries.hasMoreElements()) {
+                ZipEntry entry = entries.nextElement();
+                if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                    try (InputStream is = zip.getInputStream(entry)) {
+                        String name = entry.getName();
+                        byte[] bytes = is.readAllBytes();
+                        Metrics.count(Metrics.Counter.BYTES_IN, bytes.length);
+                        return new ClassEntry(name.substring(0, name.length() - ".class".length()), bytes);
+                    }
+                }
+            }
+            return null;
+        };
+    }
+
+    // rough size of the class file a node will turn into, used as the governor weight when there's no input size
+    public static long estimateSize(ClassNode node) {
+        long size = 64L + node.fields.size() * 16L;
+        for (MethodNode method : node.methods) {
+            size += 32L + method.instructions.size() * 4L;
+        }
+        return size;
+    }
+
+    public record ClassText(String name, String text) {
+    }
+
+}
@@ -0,0 +1,186 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.time.LocalDateTime;
+import java.util.*;
+import java.util.zip.CRC32;
+import java.util.zip.Deflater;
+import java.util.zip.ZipException;
+
+// entries are compressed (and crc'd) in prepare on the worker threads, write only stitches the
+// finished blobs into the zip, so the single writer never becomes the bottleneck.
+// ZipOutputStream can't take pre-deflated data, hence writing the zip structures by hand.
+public class JarSink implements ClassSink<JarSink.Entry> {
+    private static final int STORED = 0;
+    private static final int DEFLATED = 8;
+    private static final long ZIP64_LIMIT = 0xFFFFFFFFL;
+    private static final int ZIP64_ENTRY_LIMIT = 0xFFFF;
+
+    private static final ThreadLocal<Deflater> DEFLATERS = new ThreadLocal<>();
+
+    private final OutputStream out;
+    private final int level;
+    private final int dosTime;
+    private final List<Written> written = new ArrayList<>();
+    // ZipOutputStream refused duplicates, a second entry with the same name would leave the jar ambiguous
+    private final Set<String> names = new HashSet<>();
+    private final ByteBuffer header = ByteBuffer.allocate(128).order(ByteOrder.LITTLE_ENDIAN);
+    private long offset = 0;
+    private boolean finished = false;
+
+    public JarSink(OutputStream out, int level) {
+        if (level < Deflater.DEFAULT_COMPRESSION || level > Deflater.BEST_COMPRESSION) {
+            throw new IllegalArgumentException("Invalid compression level " + level);
+        }
+        this.out = out;
+        this.level = level;
+        this.dosTime = dosTime(LocalDateTime.now());
+    }
+
+    @Override
+    public Entry prepare(String internalName, byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        byte[] name = (internalName + ".class").getBytes(StandardCharsets.UTF_8);
+        if (level == Deflater.NO_COMPRESSION) {
+            return new Entry(name, STORED, crc.getValue(), bytes.length, bytes, bytes.length);
+        }
+        Deflater deflater = DEFLATERS.get();
+        if (deflater == null) {
+            deflater = new Deflater(level, true);
+            DEFLATERS.set(deflater);
+        } else {
+            deflater.reset();
+            deflater.setLevel(level);
+        }
+        deflater.setInput(bytes);
+        deflater.finish();
+        byte[] data = new byte[bytes.length + 64];
+        int length = 0;
+        while (!deflater.finished()) {
+            if (length == data.length) {
+                data = Arrays.copyOf(data, data.length * 2);
+            }
+            length += deflater.deflate(data, length, data.length - length);
+        }
+        if (length >= bytes.length) {
+            // didn't compress, not worth inflating on the other end
+            return new Entry(name, STORED, crc.getValue(), bytes.length, bytes, bytes.length);
+        }
+        return new Entry(name, DEFLATED, crc.getValue(), bytes.length, data, length);
+    }
+
+    @Override
+    public void write(Entry entry) throws IOException {
+        if (finished) throw new IllegalStateException("Already finished");
+        String name = new String(entry.name, StandardCharsets.UTF_8);
+        if (!names.add(name)) {
+            throw new ZipException("duplicate entry: " + name);
+        }
+        header.clear();
+        header.putInt(0x04034b50);
+        header.putShort((short) 20);
+        header.putShort((short) 0x0800);
+        header.putShort((short) entry.method);
+        header.putInt(dosTime);
+        header.putInt((int) entry.crc);
+        header.putInt(entry.length);
+        header.putInt((int) entry.size);
+        header.putShort((short) entry.name.length);
+        header.putShort((short) 0);
+        out.write(header.array(), 0, header.position());
+        out.write(entry.name);
+        out.write(entry.data, 0, entry.length);
+        written.add(new Written(entry.name, entry.method, entry.crc, entry.size, entry.length, offset));
+        offset += header.position() + entry.name.length + entry.length;
+    }
+
+    @Override
+    public void finish() throws IOException {
+        if (finished) return;
+        finished = true;
+        long cdStart = offset;
+        for (Written entry : written) {
+            boolean zip64 = entry.offset >= ZIP64_LIMIT;
+            header.clear();
+            header.putInt(0x02014b50);
+            header.putShort((short) (zip64 ? 45 : 20));
+            header.putShort((short) (zip64 ? 45 : 20));
+            header.putShort((short) 0x0800);
+            header.putShort((short) entry.method);
+            header.putInt(dosTime);
+            header.putInt((int) entry.crc);
+            header.putInt(entry.length);
+            header.putInt((int) entry.size);
+            header.putShort((short) entry.name.length);
+            header.putShort((short) (zip64 ? 12 : 0));
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putShort((short) 0);
+            header.putInt(0);
+            header.putInt(zip64 ? -1 : (int) entry.offset);
+            out.write(header.array(), 0, header.position());
+            out.write(entry.name);
+            offset += header.position() + entry.name.length;
+            if (zip64) {
+                header.clear();
+                header.putShort((short) 0x0001);
+                header.putShort((short) 8);
+                header.putLong(entry.offset);
+                out.write(header.array(), 0, header.position());
+                offset += header.position();
+            }
+        }
+        long cdSize = offset - cdStart;
+        int count = written.size();
+        if (count >= ZIP64_ENTRY_LIMIT || cdStart >= ZIP64_LIMIT || cdSize >= ZIP64_LIMIT) {
+            long zip64End = offset;
+            header.clear();
+            header.putInt(0x06064b50);
+            header.putLong(44);
+            header.putShort((short) 45);
+            header.putShort((short) 45);
+            header.putInt(0);
+            header.putInt(0);
+            header.putLong(count);
+            header.putLong(count);
+            header.putLong(cdSize);
+            header.putLong(cdStart);
+            // locator
+            header.putInt(0x07064b50);
+            header.putInt(0);
+            header.putLong(zip64End);
+            header.putInt(1);
+            out.write(header.array(), 0, header.position());
+        }
+        header.clear();
+        header.putInt(0x06054b50);
+        header.putShort((short) 0);
+        header.putShort((short) 0);
+        header.putShort((short) Math.min(count, ZIP64_ENTRY_LIMIT));
+        header.putShort((short) Math.min(count, ZIP64_ENTRY_LIMIT));
+        header.putInt((int) Math.min(cdSize, ZIP64_LIMIT));
+        header.putInt((int) Math.min(cdStart, ZIP64_LIMIT));
+        header.putShort((short) 0);
+        out.write(header.array(), 0, header.position());
+        out.flush();
+    }
+
+    private static int dosTime(LocalDateTime time) {
+        if (time.getYear() < 1980) {
+            return (1 << 21) | (1 << 16);
+        }
+        return (time.getYear() - 1980) << 25 | time.getMonthValue() << 21 | time.getDayOfMonth() << 16 | time.getHour() << 11 | time.getMinute() << 5 | time.getSecond() >> 1;
+    }
+
+    public record Entry(byte[] name, int method, long crc, long size, byte[] data, int length) {
+    }
+
+    private record Written(byte[] name, int method, long crc, long size, int length, long offset) {
+    }
+
+}
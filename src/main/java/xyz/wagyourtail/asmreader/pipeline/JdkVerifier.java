@@ -0,0 +1,143 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+
+import java.io.IOException;
+import java.io.PrintStream;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.function.Predicate;
+import java.util.stream.Stream;
+
+// Verifier over every class of the running jdk, read straight out of jrt:/ so it's a big real world corpus
+// that needs nothing downloaded. on top of the mismatches it keeps how long each class took, per module
+// and the slowest few, time is what the workers spent on a class so modules add up to more than the wall time
+public class JdkVerifier {
+    private final int workers;
+    private final PrintStream out;
+    private final int slowest;
+
+    public JdkVerifier(int workers, PrintStream out, int slowest) {
+        this.workers = workers;
+        this.out = out;
+        this.slowest = slowest;
+    }
+
+    public Result verify(Predicate<String> modules) throws IOException {
+        long start = System.nanoTime();
+        long[] totals = new long[3];
+        Map<String, ModuleTime> moduleTimes = new TreeMap<>();
+        // min heap, the fastest of the slowest gets dropped first
+        PriorityQueue<ClassTime> slow = new PriorityQueue<>(Comparator.comparingLong(ClassTime::nanos));
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        try (Stream<Path> walk = Files.walk(jrt.getPath("/modules")); MemoryGovernor governor = new MemoryGovernor()) {
+            // module-info is left out, there's no javasm syntax for module descriptors
+            Iterator<Path> files = walk.filter(e -> e.getNameCount() > 2 && e.toString().endsWith(".class") && !e.endsWith("module-info.class") && modules.test(e.getName(1).toString())).iterator();
+            new Pipeline<ClassEntry, Timed>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(entries(files), entry -> {
+                long classStart = System.nanoTime();
+                Verifier.Check check = Verifier.verify(entry);
+                return new Timed(check, System.nanoTime() - classStart);
+            }, timed -> {
+                Verifier.Check check = timed.check();
+                totals[0]++;
+                totals[1] += check.size();
+                String module = check.name().substring(0, check.name().indexOf('/'));
+                ModuleTime time = moduleTimes.computeIfAbsent(module, ModuleTime::new);
+                time.classes++;
+                time.bytes += check.size();
+                time.nanos += timed.nanos();
+                if (check.mismatch() != null) {
+                    totals[2]++;
+                    time.mismatches++;
+                    out.println(check.name() + ": " + check.mismatch());
+                }
+                slow.add(new ClassTime(check.name(), check.size(), timed.nanos()));
+                if (slow.size() > slowest) {
+                    slow.poll();
+                }
+            });
+        }
+        List<ClassTime> slowList = new ArrayList<>(slow);
+        slowList.sort(Comparator.comparingLong(ClassTime::nanos).reversed());
+        List<ModuleTime> moduleList = new ArrayList<>(moduleTimes.values());
+        moduleList.sort(Comparator.comparingLong(ModuleTime::nanos).reversed());
+        return new Result(new Verifier.Result(totals[0], totals[1], totals[2], System.nanoTime() - start), moduleList, slowList);
+    }
+
+    // names are "<module>/<internal name>", so a mismatch says which module it came from
+    private static IOSupplier<ClassEntry> entries(Iterator<Path> files) {
+        return () -> {
+            if (!files.hasNext()) {
+                return null;
+            }
+            Path file = files.next();
+            String name = file.subpath(1, file.getNameCount()).toString();
+            return new ClassEntry(name.substring(0, name.length() - ".class".length()), Files.readAllBytes(file));
+        };
+    }
+
+    public static Predicate<String> modules(String list) {
+        if (list == null) {
+            return e -> true;
+        }
+        Set<String> names = Set.of(list.split(","));
+        return names::contains;
+    }
+
+    private record Timed(Verifier.Check check, long nanos) {
+    }
+
+    public static class ModuleTime {
+        public final String module;
+        public long classes;
+        public long bytes;
+        public long mismatches;
+        public long nanos;
+
+        public ModuleTime(String module) {
+            this.module = module;
+        }
+
+        public long nanos() {
+            return nanos;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%-28s %6d classes %8.2f MB %8.2fs %6d mismatched", module, classes, bytes / (1024.0 * 1024.0), nanos / 1e9, mismatches);
+        }
+
+    }
+
+    public record ClassTime(String name, long bytes, long nanos) {
+
+        @Override
+        public String toString() {
+            return String.format("%8.2fms %8d bytes  %s", nanos / 1e6, bytes, name);
+        }
+
+    }
+
+    public record Result(Verifier.Result total, List<ModuleTime> modules, List<ClassTime> slowest) {
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            sb.append("modules, by time spent:\n");
+            for (ModuleTime module : modules) {
+                sb.append("  ").append(module).append('\n');
+            }
+            sb.append("slowest classes:\n");
+            for (ClassTime time : slowest) {
+                sb.append("  ").append(time).append('\n');
+            }
+            return sb.append(total).toString();
+        }
+
+    }
+
+}
@@ -0,0 +1,98 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import javax.management.ListenerNotFoundException;
+import javax.management.Notification;
+import javax.management.NotificationEmitter;
+import javax.management.NotificationListener;
+import java.lang.management.GarbageCollectorMXBean;
+import java.lang.management.ManagementFactory;
+import java.lang.management.MemoryMXBean;
+import java.lang.management.MemoryUsage;
+import java.util.ArrayList;
+import java.util.List;
+
+// limits the total input size of the items in flight, the limit is re-tuned after every gc based on how full
+// the heap still is. one item is always admitted so a single huge class can't deadlock the pipeline.
+public class MemoryGovernor implements AutoCloseable {
+    public static final String GC_NOTIFICATION = "com.sun.management.gc.notification";
+    // text/lists/ClassWriter buffers are a lot bigger than the input bytes
+    private static final int EXPANSION = 32;
+    private static final double HIGH_WATER = 0.75;
+    private static final double LOW_WATER = 0.5;
+    private static final long MIN_BUDGET = 1 << 20;
+
+    private final MemoryMXBean memory = ManagementFactory.getMemoryMXBean();
+    private final List<NotificationEmitter> emitters = new ArrayList<>();
+    private final NotificationListener listener = this::onNotification;
+    private final long maxBudget;
+    private long budget;
+    private long inFlight = 0;
+    private int items = 0;
+
+    public MemoryGovernor() {
+        this(heapMax(ManagementFactory.getMemoryMXBean().getHeapMemoryUsage()));
+    }
+
+    // budgets are in input bytes, which expand by EXPANSION once in flight. starts out at what would fill the
+    // heap to the low water mark and never grows past what would fill it to the high one
+    public MemoryGovernor(long max) {
+        maxBudget = Math.max(MIN_BUDGET, (long) (max * HIGH_WATER / EXPANSION));
+        budget = Math.max(MIN_BUDGET, (long) (max * LOW_WATER / EXPANSION));
+        for (GarbageCollectorMXBean gc : ManagementFactory.getGarbageCollectorMXBeans()) {
+            if (gc instanceof NotificationEmitter emitter) {
+                emitter.addNotificationListener(listener, n -> n.getType().equals(GC_NOTIFICATION), null);
+                emitters.add(emitter);
+            }
+        }
+    }
+
+    public synchronized void acquire(long weight) throws InterruptedException {
+        while (items > 0 && inFlight + weight > budget) {
+            wait();
+        }
+        inFlight += weight;
+        items++;
+    }
+
+    public synchronized void release(long weight) {
+        inFlight -= weight;
+        items--;
+        notifyAll();
+    }
+
+    public synchronized long budget() {
+        return budget;
+    }
+
+    private void onNotification(Notification notification, Object handback) {
+        MemoryUsage usage = memory.getHeapMemoryUsage();
+        onCollection(usage.getUsed(), heapMax(usage));
+    }
+
+    private static long heapMax(MemoryUsage usage) {
+        return usage.getMax() > 0 ? usage.getMax() : Runtime.getRuntime().maxMemory();
+    }
+
+    // heap still in use after a gc, halves the budget above the high water mark and grows it by half below the low one
+    public synchronized void onCollection(long used, long max) {
+        double fraction = (double) used / max;
+        if (fraction > HIGH_WATER) {
+            budget = Math.max(MIN_BUDGET, budget / 2);
+        } else if (fraction < LOW_WATER) {
+            budget = Math.min(maxBudget, budget + budget / 2);
+            notifyAll();
+        }
+    }
+
+    @Override
+    public void close() {
+        for (NotificationEmitter emitter : emitters) {
+            try {
+                emitter.removeNotificationListener(listener);
+            } catch (ListenerNotFoundException ignored) {
+            }
+        }
+        emitters.clear();
+    }
+
+}
@@ -0,0 +1,154 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import org.objectweb.asm.ClassVisitor;
+import org.objectweb.asm.MethodVisitor;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.Textifier;
+import org.objectweb.asm.util.TraceClassVisitor;
+import xyz.wagyourtail.asmreader.DeterministicTextifier;
+import xyz.wagyourtail.asmreader.FormatCache;
+import xyz.wagyourtail.asmreader.StreamingTextifier;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.jfr.DisassembleClassEvent;
+
+import java.io.*;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Future;
+
+// textifies the methods of one class on several threads, each method gets its own DeterministicTextifier
+// and the texts are joined back in the original order, output is the same as Main.classToTextify
+public class ParallelDisassembler {
+    public static final int DEFAULT_THRESHOLD = 64;
+
+    private final ExecutorService executor;
+    private final int workers;
+    private final int threshold;
+    private final TextifierProfile profile;
+
+    public ParallelDisassembler(ExecutorService executor, int workers) {
+        this(executor, workers, TextifierProfile.FULL);
+    }
+
+    public ParallelDisassembler(ExecutorService executor, int workers, TextifierProfile profile) {
+        this(executor, workers, DEFAULT_THRESHOLD, profile);
+    }
+
+    // classes with fewer than threshold methods aren't worth splitting
+    public ParallelDisassembler(ExecutorService executor, int workers, int threshold, TextifierProfile profile) {
+        this.executor = executor;
+        this.workers = workers;
+        this.threshold = threshold;
+        this.profile = profile;
+    }
+
+    // only a class with enough methods to split is worth building a ClassNode for
+    public boolean splits(byte[] bytes) {
+        return workers > 1 && methodCount(new org.objectweb.asm.ClassReader(bytes)) >= threshold;
+    }
+
+    public String textify(byte[] bytes) throws IOException {
+        DisassembleClassEvent event = new DisassembleClassEvent();
+        event.begin();
+        ByteArrayOutputStream baos = new ByteArrayOutputStream();
+        PrintWriter pw = new PrintWriter(baos);
+        Textifier textifier = new DeterministicTextifier(FormatCache.DEFAULT, profile);
+        if (splits(bytes)) {
+            textify(read(bytes, event), textifier);
+        } else {
+            new org.objectweb.asm.ClassReader(bytes).accept(event.wrap(new TraceClassVisitor(null, textifier, null)), profile.readerFlags());
+        }
+        textifier.print(pw);
+        pw.flush();
+        String text = baos.toString();
+        event.commit(bytes.length, text.length());
+        return text;
+    }
+
+    public void textify(byte[] bytes, Writer out) throws IOException {
+        DisassembleClassEvent event = new DisassembleClassEvent();
+        event.begin();
+        StreamingTextifier textifier = new StreamingTextifier(out, FormatCache.DEFAULT, profile);
+        try {
+            if (splits(bytes)) {
+                textify(read(bytes, event), textifier);
+            } else {
+                // straight from the class reader, each member is written out as soon as it's visited
+                new org.objectweb.asm.ClassReader(bytes).accept(event.wrap(new TraceClassVisitor(null, textifier, null)), profile.readerFlags());
+            }
+        } catch (UncheckedIOException e) {
+            throw e.getCause();
+        }
+        event.commit(bytes.length, textifier.written());
+    }
+
+    private void textify(ClassNode node, Textifier textifier) throws IOException {
+        List<List<Object>> methods = new ArrayList<>(node.methods.size());
+        int chunk = Math.max(1, node.methods.size() / (workers * 4));
+        List<Future<List<List<Object>>>> futures = new ArrayList<>();
+        for (int i = 0; i < node.methods.size(); i += chunk) {
+            List<MethodNode> part = node.methods.subList(i, Math.min(i + chunk, node.methods.size()));
+            futures.add(executor.submit(() -> {
+                List<List<Object>> texts = new ArrayList<>(part.size());
+                for (MethodNode method : part) {
+                    texts.add(textifyMethod(node, method, profile));
+                }
+                return texts;
+            }));
+        }
+        for (Future<List<List<Object>>> future : futures) {
+            methods.addAll(Pipeline.await(future));
+        }
+        // methods are the last thing visited before visitEnd, so their text goes right before the closing brace
+        node.accept(new ClassVisitor(Opcodes.ASM9, new TraceClassVisitor(null, textifier, null)) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return null;
+            }
+
+            @Override
+            public void visitEnd() {
+                for (List<Object> method : methods) {
+                    textifier.getText().addAll(method);
+                }
+                super.visitEnd();
+            }
+        });
+    }
+
+    // same text the method would have as part of its class
+    public static List<Object> textifyMethod(ClassNode owner, MethodNode method, TextifierProfile profile) {
+        DeterministicTextifier textifier = new DeterministicTextifier(FormatCache.DEFAULT, profile);
+        // the class access decides how signatures are printed
+        textifier.visit(owner.version, owner.access, owner.name, owner.signature, owner.superName, owner.interfaces.toArray(new String[0]));
+        textifier.getText().clear();
+        method.accept(new TraceClassVisitor(null, textifier, null));
+        return textifier.getText();
+    }
+
+    // walks the fields in the class file to get at methods_count, without parsing anything else
+    public static int methodCount(org.objectweb.asm.ClassReader reader) {
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+        int fields = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < fields; i++) {
+            int attributes = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributes; j++) {
+                offset += 6 + reader.readInt(offset + 2);
+            }
+        }
+        return reader.readUnsignedShort(offset);
+    }
+
+    private ClassNode read(byte[] bytes, DisassembleClassEvent event) {
+        ClassNode node = new ClassNode();
+        new org.objectweb.asm.ClassReader(bytes).accept(event.wrap(node), profile.readerFlags());
+        return node;
+    }
+
+}
@@ -0,0 +1,118 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import xyz.wagyourtail.asmreader.iofunction.IOConsumer;
+import xyz.wagyourtail.asmreader.iofunction.IOFunction;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+
+import java.io.IOException;
+import java.io.InterruptedIOException;
+import java.util.concurrent.*;
+import java.util.function.ToLongFunction;
+
+// source runs on its own thread, stage runs on the pool (or the source thread if there are no workers),
+// sink runs on the calling thread in the order the source produced the items
+public class Pipeline<I, O> {
+    private final int workers;
+    private final int capacity;
+    private final MemoryGovernor governor;
+    private final ToLongFunction<I> weight;
+
+    public Pipeline(int workers, int capacity) {
+        this(workers, capacity, null, e -> 0);
+    }
+
+    // weight is the item's input size, the governor decides how much of that can be in flight at once
+    public Pipeline(int workers, int capacity, MemoryGovernor governor, ToLongFunction<I> weight) {
+        if (capacity < 1) throw new IllegalArgumentException("capacity < 1");
+        this.workers = workers;
+        this.capacity = capacity;
+        this.governor = governor;
+        this.weight = weight;
+    }
+
+    public static int defaultWorkers() {
+        return Runtime.getRuntime().availableProcessors();
+    }
+
+    // source returns null when there are no more items
+    public void run(IOSupplier<I> source, IOFunction<I, O> stage, IOConsumer<O> sink) throws IOException {
+        BlockingQueue<Slot<O>> queue = new ArrayBlockingQueue<>(capacity);
+        Slot<O> end = new Slot<>(new CompletableFuture<>(), 0);
+        ExecutorService pool = workers > 0 ? Executors.newFixedThreadPool(workers, daemonFactory("asmreader-worker")) : null;
+        Thread reader = daemonFactory("asmreader-source").newThread(() -> {
+            try {
+                I item;
+                while ((item = source.get()) != null) {
+                    I current = item;
+                    long w = weight.applyAsLong(current);
+                    if (governor != null) {
+                        governor.acquire(w);
+                    }
+                    if (pool != null) {
+                        queue.put(new Slot<>(pool.submit(() -> stage.apply(current)), w));
+                    } else {
+                        queue.put(new Slot<>(CompletableFuture.completedFuture(stage.apply(current)), w));
+                    }
+                }
+                queue.put(end);
+            } catch (InterruptedException ignored) {
+            } catch (Throwable t) {
+                try {
+                    queue.put(new Slot<>(CompletableFuture.failedFuture(t), 0));
+                } catch (InterruptedException ignored) {
+                }
+            }
+        });
+        reader.start();
+        try {
+            Slot<O> next;
+            while ((next = take(queue)) != end) {
+                sink.accept(await(next.future));
+                if (governor != null) {
+                    governor.release(next.weight);
+                }
+            }
+        } finally {
+            reader.interrupt();
+            if (pool != null) {
+                pool.shutdownNow();
+            }
+        }
+    }
+
+    private static <T> T take(BlockingQueue<T> queue) throws IOException {
+        try {
+            return queue.take();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        }
+    }
+
+    public static <T> T await(Future<T> future) throws IOException {
+        try {
+            return future.get();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            throw new InterruptedIOException();
+        } catch (ExecutionException e) {
+            Throwable cause = e.getCause();
+            if (cause instanceof IOException io) throw io;
+            if (cause instanceof RuntimeException re) throw re;
+            if (cause instanceof Error err) throw err;
+            throw new IOException(cause);
+        }
+    }
+
+    private record Slot<O>(Future<O> future, long weight) {
+    }
+
+    public static ThreadFactory daemonFactory(String name) {
+        return r -> {
+            Thread t = new Thread(r, name);
+            t.setDaemon(true);
+            return t;
+        };
+    }
+
+}
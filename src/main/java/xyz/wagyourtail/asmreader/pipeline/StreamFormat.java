@@ -0,0 +1,108 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+
+import java.io.*;
+import java.util.Locale;
+import java.util.zip.Deflater;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipInputStream;
+
+public enum StreamFormat {
+    // 4 byte big endian length followed by the class bytes
+    FRAMES {
+        @Override
+        public IOSupplier<byte[]> reader(InputStream in) {
+            DataInputStream dis = new DataInputStream(new BufferedInputStream(in));
+            return () -> {
+                int b0 = dis.read();
+                if (b0 == -1) {
+                    return null;
+                }
+                int length = (b0 << 24) | (dis.readUnsignedByte() << 16) | (dis.readUnsignedShort());
+                if (length < 0) {
+                    throw new IOException("Invalid frame length " + length);
+                }
+                // readNBytes would hand a cut off class to the ClassReader
+                byte[] bytes = new byte[length];
+                dis.readFully(bytes);
+                return bytes;
+            };
+        }
+
+        @Override
+        public ClassSink<?> writer(OutputStream out) {
+            DataOutputStream dos = new DataOutputStream(new BufferedOutputStream(out));
+            return new ClassSink<byte[]>() {
+                @Override
+                public byte[] prepare(String internalName, byte[] bytes) {
+                    return bytes;
+                }
+
+                @Override
+                public void write(byte[] bytes) throws IOException {
+                    dos.writeInt(bytes.length);
+                    dos.write(bytes);
+                    dos.flush();
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    dos.flush();
+                }
+            };
+        }
+    },
+    // zip stream, non class entries are skipped
+    JAR {
+        @Override
+        public IOSupplier<byte[]> reader(InputStream in) {
+            ZipInputStream zis = new ZipInputStream(new BufferedInputStream(in));
+            return () -> {
+                ZipEntry entry;
+                while ((entry = zis.getNextEntry()) != null) {
+                    if (!entry.isDirectory() && entry.getName().endsWith(".class")) {
+                        return zis.readAllBytes();
+                    }
+                }
+                return null;
+            };
+        }
+
+        @Override
+        public ClassSink<?> writer(OutputStream out) {
+            BufferedOutputStream buffered = new BufferedOutputStream(out);
+            JarSink sink = new JarSink(buffered, Deflater.DEFAULT_COMPRESSION);
+            return new ClassSink<JarSink.Entry>() {
+                @Override
+                public JarSink.Entry prepare(String internalName, byte[] bytes) {
+                    return sink.prepare(internalName, bytes);
+                }
+
+                @Override
+                public void write(JarSink.Entry entry) throws IOException {
+                    sink.write(entry);
+                    buffered.flush();
+                }
+
+                @Override
+                public void finish() throws IOException {
+                    sink.finish();
+                }
+            };
+        }
+    };
+
+    public abstract IOSupplier<byte[]> reader(InputStream in);
+
+    public abstract ClassSink<?> writer(OutputStream out);
+
+    public static StreamFormat of(String name) {
+        try {
+            return valueOf(name.toUpperCase(Locale.ROOT));
+        } catch (IllegalArgumentException e) {
+            throw new IllegalArgumentException("Unknown stream format \"" + name + "\"");
+        }
+    }
+
+}
@@ -0,0 +1,88 @@
+package xyz.wagyourtail.asmreader.pipeline;
+
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+
+import java.io.IOException;
+import java.io.PrintStream;
+
+// textify -> compileJavasm -> textify again and compare, same as TestReader but over any number of classes
+public class Verifier {
+    private final int workers;
+    private final PrintStream out;
+
+    public Verifier(int workers, PrintStream out) {
+        this.workers = workers;
+        this.out = out;
+    }
+
+    public Result verify(IOSupplier<ClassEntry> source) throws IOException {
+        long start = System.nanoTime();
+        long[] totals = new long[3];
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, Check>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source, Verifier::verify, check -> {
+                totals[0]++;
+                totals[1] += check.size();
+                if (check.mismatch() != null) {
+                    totals[2]++;
+                    out.println(check.name() + ": " + check.mismatch());
+                }
+            });
+        }
+        return new Result(totals[0], totals[1], totals[2], System.nanoTime() - start);
+    }
+
+    public static Check verify(ClassEntry entry) {
+        String original;
+        try {
+            org.objectweb.asm.ClassReader reader = new org.objectweb.asm.ClassReader(entry.bytes());
+            original = Main.classToTextify(e -> reader.accept(e, 0));
+        } catch (Exception | StackOverflowError | LinkageError e) {
+            // deeply nested or broken classes take down only their own check, not the whole run
+            return new Check(entry.name(), entry.bytes().length, "failed to disassemble: " + e);
+        }
+        String recompiled;
+        try {
+            recompiled = Main.classToTextify(e -> Main.compileJavasm(original, e));
+        } catch (Exception | StackOverflowError | LinkageError e) {
+            return new Check(entry.name(), entry.bytes().length, "failed to reassemble: " + e);
+        }
+        return new Check(entry.name(), entry.bytes().length, firstDifference(original, recompiled));
+    }
+
+    public static String firstDifference(String expected, String actual) {
+        if (expected.equals(actual)) {
+            return null;
+        }
+        String[] expectedLines = expected.split("\n", -1);
+        String[] actualLines = actual.split("\n", -1);
+        int lines = Math.min(expectedLines.length, actualLines.length);
+        for (int i = 0; i < lines; i++) {
+            if (!expectedLines[i].equals(actualLines[i])) {
+                return "line " + (i + 1) + "\n  expected: " + expectedLines[i].strip() + "\n  actual:   " + actualLines[i].strip();
+            }
+        }
+        return "line " + (lines + 1) + "\n  expected " + expectedLines.length + " lines, got " + actualLines.length;
+    }
+
+    public record Check(String name, long size, String mismatch) {
+    }
+
+    public record Result(long classes, long bytes, long mismatches, long nanos) {
+
+        public double classesPerSecond() {
+            return classes / (nanos / 1e9);
+        }
+
+        public double megabytesPerSecond() {
+            return bytes / (1024.0 * 1024.0) / (nanos / 1e9);
+        }
+
+        @Override
+        public String toString() {
+            return String.format("%d classes (%.2f MB) in %.2fs, %.1f classes/sec, %.2f MB/sec, %d mismatched", classes, bytes / (1024.0 * 1024.0), nanos / 1e9, classesPerSecond(), megabytesPerSecond(), mismatches);
+        }
+
+    }
+
+}
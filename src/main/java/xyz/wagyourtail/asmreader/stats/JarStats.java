@@ -0,0 +1,239 @@
+package xyz.wagyourtail.asmreader.stats;
+
+import org.objectweb.asm.*;
+import xyz.wagyourtail.asmreader.file.AbstractReader;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.metrics.Histogram;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.MemoryGovernor;
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+
+import java.io.IOException;
+import java.util.*;
+
+// what a jar is made of, in javasm terms: how often each opcode shows up, how big methods are, how much of the
+// constant pool is strings and which bootstrap methods invokedynamic/condy go through. classes are only visited,
+// nothing is textified
+public class JarStats {
+    public static final String[] OPCODE_NAMES = new String[256];
+
+    static {
+        for (Map.Entry<String, Integer> opcode : AbstractReader.OPCODES.entrySet()) {
+            OPCODE_NAMES[opcode.getValue()] = opcode.getKey();
+        }
+    }
+
+    private final int workers;
+
+    public JarStats(int workers) {
+        this.workers = workers;
+    }
+
+    public Result analyze(IOSupplier<ClassEntry> source) throws IOException {
+        long start = System.nanoTime();
+        long[] totals = new long[5];
+        long[] opcodes = new long[256];
+        Histogram codeSizes = new Histogram();
+        Map<String, Long> bootstraps = new HashMap<>();
+        try (MemoryGovernor governor = new MemoryGovernor()) {
+            new Pipeline<ClassEntry, ClassStats>(workers, ClassStreams.DEFAULT_CAPACITY, governor, e -> e.bytes().length).run(source, JarStats::analyze, stats -> {
+                totals[0]++;
+                totals[1] += stats.size();
+                totals[2] += stats.utf8Entries();
+                totals[3] += stats.utf8Bytes();
+                totals[4] += stats.stringConstants();
+                for (int i = 0; i < opcodes.length; i++) {
+                    opcodes[i] += stats.opcodes()[i];
+                }
+                for (int size : stats.codeSizes()) {
+                    codeSizes.record(size);
+                }
+                stats.bootstraps().forEach((k, v) -> bootstraps.merge(k, (long) v, Long::sum));
+            });
+        }
+        return new Result(totals[0], totals[1], opcodes, codeSizes.snapshot(), totals[2], totals[3], totals[4], bootstraps, System.nanoTime() - start);
+    }
+
+    public static ClassStats analyze(ClassEntry entry) {
+        ClassReader reader = new ClassReader(entry.bytes());
+        long[] opcodes = new long[256];
+        Map<String, Integer> bootstraps = new HashMap<>();
+        MethodVisitor counter = new MethodVisitor(Opcodes.ASM9) {
+            @Override
+            public void visitInsn(int opcode) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitIntInsn(int opcode, int operand) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitVarInsn(int opcode, int varIndex) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitTypeInsn(int opcode, String type) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitFieldInsn(int opcode, String owner, String name, String descriptor) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitMethodInsn(int opcode, String owner, String name, String descriptor, boolean isInterface) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitInvokeDynamicInsn(String name, String descriptor, Handle bootstrapMethodHandle, Object... bootstrapMethodArguments) {
+                opcodes[Opcodes.INVOKEDYNAMIC]++;
+                bootstraps.merge("indy " + bootstrapMethodHandle.getOwner() + "." + bootstrapMethodHandle.getName(), 1, Integer::sum);
+            }
+
+            @Override
+            public void visitJumpInsn(int opcode, Label label) {
+                opcodes[opcode]++;
+            }
+
+            @Override
+            public void visitLdcInsn(Object value) {
+                opcodes[Opcodes.LDC]++;
+                if (value instanceof ConstantDynamic condy) {
+                    bootstraps.merge("condy " + condy.getBootstrapMethod().getOwner() + "." + condy.getBootstrapMethod().getName(), 1, Integer::sum);
+                }
+            }
+
+            @Override
+            public void visitIincInsn(int varIndex, int increment) {
+                opcodes[Opcodes.IINC]++;
+            }
+
+            @Override
+            public void visitTableSwitchInsn(int min, int max, Label dflt, Label... labels) {
+                opcodes[Opcodes.TABLESWITCH]++;
+            }
+
+            @Override
+            public void visitLookupSwitchInsn(Label dflt, int[] keys, Label[] labels) {
+                opcodes[Opcodes.LOOKUPSWITCH]++;
+            }
+
+            @Override
+            public void visitMultiANewArrayInsn(String descriptor, int numDimensions) {
+                opcodes[Opcodes.MULTIANEWARRAY]++;
+            }
+        };
+        // the same visitor does for every method, counts only ever add up
+        reader.accept(new ClassVisitor(Opcodes.ASM9) {
+            @Override
+            public MethodVisitor visitMethod(int access, String name, String descriptor, String signature, String[] exceptions) {
+                return counter;
+            }
+        }, ClassReader.SKIP_DEBUG | ClassReader.SKIP_FRAMES);
+        int utf8Entries = 0;
+        long utf8Bytes = 0;
+        int stringConstants = 0;
+        for (int i = 1; i < reader.getItemCount(); i++) {
+            int offset = reader.getItem(i);
+            // second slot of a long/double
+            if (offset == 0) {
+                continue;
+            }
+            int tag = reader.readByte(offset - 1);
+            if (tag == 1) {
+                utf8Entries++;
+                utf8Bytes += reader.readUnsignedShort(offset);
+            } else if (tag == 8) {
+                stringConstants++;
+            }
+        }
+        return new ClassStats(entry.bytes().length, opcodes, codeSizes(reader), utf8Entries, utf8Bytes, stringConstants, bootstraps);
+    }
+
+    // code_length of every method that has code, straight out of the class file since visitors never see it
+    public static int[] codeSizes(ClassReader reader) {
+        char[] buffer = new char[reader.getMaxStringLength()];
+        int offset = reader.header + 6;
+        offset += 2 + reader.readUnsignedShort(offset) * 2;
+        // fields
+        int count = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < count; i++) {
+            offset = skipAttributes(reader, offset + 6);
+        }
+        count = reader.readUnsignedShort(offset);
+        offset += 2;
+        int[] sizes = new int[count];
+        int methods = 0;
+        for (int i = 0; i < count; i++) {
+            int attributes = reader.readUnsignedShort(offset + 6);
+            offset += 8;
+            for (int j = 0; j < attributes; j++) {
+                if (reader.readUTF8(offset, buffer).equals("Code")) {
+                    // name, length, max_stack, max_locals, code_length
+                    sizes[methods++] = reader.readInt(offset + 10);
+                }
+                offset += 6 + reader.readInt(offset + 2);
+            }
+        }
+        return Arrays.copyOf(sizes, methods);
+    }
+
+    private static int skipAttributes(ClassReader reader, int offset) {
+        int attributes = reader.readUnsignedShort(offset);
+        offset += 2;
+        for (int i = 0; i < attributes; i++) {
+            offset += 6 + reader.readInt(offset + 2);
+        }
+        return offset;
+    }
+
+    public record ClassStats(long size, long[] opcodes, int[] codeSizes, int utf8Entries, long utf8Bytes, int stringConstants, Map<String, Integer> bootstraps) {
+    }
+
+    public record Result(long classes, long bytes, long[] opcodes, Histogram.Snapshot codeSizes, long utf8Entries, long utf8Bytes, long stringConstants, Map<String, Long> bootstraps, long nanos) {
+
+        public long instructions() {
+            return Arrays.stream(opcodes).sum();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder sb = new StringBuilder();
+            long instructions = instructions();
+            sb.append(String.format("%d instructions, by opcode:%n", instructions));
+            Integer[] order = new Integer[256];
+            for (int i = 0; i < order.length; i++) {
+                order[i] = i;
+            }
+            Arrays.sort(order, Comparator.comparingLong((Integer e) -> opcodes[e]).reversed());
+            for (int opcode : order) {
+                if (opcodes[opcode] != 0) {
+                    sb.append(String.format("  %-16s %12d %6.2f%%%n", OPCODE_NAMES[opcode], opcodes[opcode], 100.0 * opcodes[opcode] / instructions));
+                }
+            }
+            sb.append(String.format("%d methods with code, by code bytes:%n", codeSizes.count()));
+            long[] buckets = codeSizes.buckets();
+            for (int i = 0; i < buckets.length; i++) {
+                if (buckets[i] != 0) {
+                    long low = i == 0 ? 0 : 1L << (i - 1);
+                    long high = i == 0 ? 0 : (1L << i) - 1;
+                    sb.append(String.format("  %6d - %-6d %10d %6.2f%%%n", low, high, buckets[i], 100.0 * buckets[i] / codeSizes.count()));
+                }
+            }
+            sb.append(String.format("  mean %.1f, p50 <= %d, p99 <= %d, max %d%n", codeSizes.mean(), codeSizes.percentile(50), codeSizes.percentile(99), codeSizes.max()));
+            sb.append(String.format("constant pool: %d utf8 entries (%.2f MB), %d string constants%n", utf8Entries, utf8Bytes / (1024.0 * 1024.0), stringConstants));
+            sb.append("bootstrap methods:\n");
+            bootstraps.entrySet().stream().sorted(Map.Entry.<String, Long>comparingByValue().reversed()).forEach(e -> sb.append(String.format("  %8d %s%n", e.getValue(), e.getKey())));
+            return sb.append(String.format("%d classes (%.2f MB) in %.2fs", classes, bytes / (1024.0 * 1024.0), nanos / 1e9)).toString();
+        }
+
+    }
+
+}
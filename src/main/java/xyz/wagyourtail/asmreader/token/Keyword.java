@@ -0,0 +1,77 @@
+package xyz.wagyourtail.asmreader.token;
+
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+// the words and comments javasm gives a meaning of their own outside method bodies (those already go through one
+// switch), see docs/javasm.ebnf. the readers look a token up here once and switch on the result instead of trying
+// every construct in turn
+public enum Keyword {
+    // class members, case sensitive
+    NESTMEMBER(Scope.MEMBER),
+    PERMITTEDSUBCLASS(Scope.MEMBER),
+    NESTHOST(Scope.MEMBER),
+    RECORDCOMPONENT(Scope.MEMBER),
+    INNERCLASS(Scope.MEMBER),
+    OUTERCLASS(Scope.MEMBER),
+    // comments, by how they start. the pattern in AbstractReader still has to match the whole thing
+    COMPILED_FROM(Scope.COMMENT, "compiled", true),
+    DEPRECATED(Scope.COMMENT, "DEPRECATED", false),
+    SIGNATURE(Scope.COMMENT, "signature", true),
+    ACCESS_FLAGS(Scope.COMMENT, "access", true),
+    PARAMETER(Scope.COMMENT, "parameter", false),
+    ANNOTABLE_PARAMETER_COUNT(Scope.COMMENT, "annotable", true),
+    HANDLE_KIND(Scope.COMMENT, "handle", true),
+    CONSTANT_DYNAMIC(Scope.COMMENT, "constant", true);
+
+    private static final Map<String, Keyword> MEMBER = new HashMap<>();
+    private static final Keyword[] COMMENTS;
+
+    static {
+        for (Keyword keyword : values()) {
+            if (keyword.scope == Scope.MEMBER) {
+                MEMBER.put(keyword.name(), keyword);
+            }
+        }
+        COMMENTS = Arrays.stream(values()).filter(e -> e.scope == Scope.COMMENT).toArray(Keyword[]::new);
+    }
+
+    public final Scope scope;
+    private final String prefix;
+    private final boolean ignoreCase;
+
+    Keyword(Scope scope) {
+        this(scope, null, false);
+    }
+
+    Keyword(Scope scope, String prefix, boolean ignoreCase) {
+        this.scope = scope;
+        this.prefix = prefix;
+        this.ignoreCase = ignoreCase;
+    }
+
+    public static Keyword member(String value) {
+        return MEMBER.get(value);
+    }
+
+    // leading whitespace is skipped the way String.trim does, which covers the \s* the patterns start with
+    public static Keyword comment(String value) {
+        int start = 0;
+        while (start < value.length() && value.charAt(start) <= ' ') {
+            start++;
+        }
+        for (Keyword keyword : COMMENTS) {
+            if (value.regionMatches(keyword.ignoreCase, start, keyword.prefix, 0, keyword.prefix.length())) {
+                return keyword;
+            }
+        }
+        return null;
+    }
+
+    public enum Scope {
+        MEMBER,
+        COMMENT
+    }
+
+}
@@ -0,0 +1,250 @@
+package xyz.wagyourtail.asmreader.token;
+
+import xyz.wagyourtail.asmreader.pipeline.Pipeline;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.io.StringReader;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Deque;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+
+// no token spans a line (strings, chars and comments all end on theirs), so a big input can be cut at newlines
+// and the pieces lexed on their own. shards are read and lexed a few ahead of whoever is popping, in order, so
+// only the window of shards not popped yet is ever held, never the whole input
+public class ShardedTokenReader extends TokenReader {
+    public static final int SHARD_SIZE = 4 * 1024 * 1024;
+    // below this lexing as we go is as fast as handing it out
+    public static final long MIN_SIZE = 4L * SHARD_SIZE;
+    private static final Token EOF = new Token(null, TokenType.EOF);
+
+    private final Reader in;
+    private final int shardSize;
+    private final int window;
+    private final ExecutorService pool;
+    private final Deque<Future<Shard>> pending = new ArrayDeque<>();
+    // read from in but not handed to a shard yet, whatever followed the newline the last shard was cut at
+    private char[] buffer;
+    private int buffered;
+    private boolean drained;
+    private Shard shard;
+    // lines and chars of the shards before the current one
+    private int lineBase;
+    private long charBase;
+    private int index;
+    private boolean eof;
+    private long waitNanos;
+
+    public ShardedTokenReader(String text, int threads) throws IOException {
+        this(new StringReader(text), threads, SHARD_SIZE);
+    }
+
+    public ShardedTokenReader(String text, int threads, int shardSize) throws IOException {
+        this(new StringReader(text), threads, shardSize);
+    }
+
+    public ShardedTokenReader(Reader in, int threads, int shardSize) throws IOException {
+        super(Reader.nullReader());
+        if (threads < 1) throw new IllegalArgumentException("threads < 1");
+        if (shardSize < 1) throw new IllegalArgumentException("shardSize < 1");
+        this.in = in;
+        this.shardSize = shardSize;
+        this.window = threads * 2;
+        this.buffer = new char[shardSize + 8192];
+        this.pool = Executors.newFixedThreadPool(threads, Pipeline.daemonFactory("asmreader-lexer"));
+        fill();
+    }
+
+    // a plain TokenReader for anything small enough that sharding doesn't pay
+    public static TokenReader open(Path file, int threads) throws IOException {
+        if (threads > 1 && Files.size(file) >= MIN_SIZE) {
+            return new ShardedTokenReader(Files.newBufferedReader(file), threads, SHARD_SIZE);
+        }
+        return new TokenReader(Files.newBufferedReader(file));
+    }
+
+    private void fill() throws IOException {
+        while (pending.size() < window) {
+            String text = readShard();
+            if (text == null) {
+                break;
+            }
+            pending.add(pool.submit(() -> lex(text)));
+        }
+        if (pending.isEmpty()) {
+            pool.shutdown();
+        }
+    }
+
+    // at least shardSize chars, up to and including the first newline after that, or whatever is left at the end
+    private String readShard() throws IOException {
+        int scanned = shardSize;
+        while (true) {
+            for (int i = scanned; i < buffered; i++) {
+                if (buffer[i] == '\n') {
+                    return cut(i + 1);
+                }
+            }
+            scanned = Math.max(scanned, buffered);
+            if (drained) {
+                return buffered == 0 ? null : cut(buffered);
+            }
+            if (buffered == buffer.length) {
+                // one very long line
+                buffer = Arrays.copyOf(buffer, buffer.length * 2);
+            }
+            int read = in.read(buffer, buffered, buffer.length - buffered);
+            if (read == -1) {
+                drained = true;
+            } else {
+                buffered += read;
+            }
+        }
+    }
+
+    private String cut(int end) {
+        String text = new String(buffer, 0, end);
+        System.arraycopy(buffer, end, buffer, 0, buffered - end);
+        buffered -= end;
+        return text;
+    }
+
+    private Shard lex(String text) throws IOException {
+        Shard shard = new Shard();
+        try (TokenReader reader = new TokenReader(new StringReader(text))) {
+            try {
+                Token tk;
+                while ((tk = reader.pop()).type != TokenType.EOF) {
+                    shard.add(tk, reader.line(), reader.column(), reader.charsRead(), reader.fullLine());
+                }
+            } catch (UnexpectedTokenException e) {
+                // thrown once everything before it has been popped, same as lexing as we go would
+                shard.error = e;
+            }
+            // the line count at EOF is one past the last line
+            shard.lines = reader.line() - 1;
+            shard.chars = reader.charsRead();
+        }
+        return shard;
+    }
+
+    @Override
+    protected Token readNext() throws IOException {
+        if (eof) {
+            throw new IllegalStateException("Cannot read next token after EOF");
+        }
+        while (shard == null || index == shard.size) {
+            if (shard != null) {
+                if (shard.error != null) {
+                    UnexpectedTokenException e = shard.error;
+                    throw new UnexpectedTokenException(e.msg, lineBase + e.line, e.column, e.fullLine, e.token);
+                }
+                lineBase += shard.lines;
+                charBase += shard.chars;
+                shard = null;
+            }
+            if (pending.isEmpty()) {
+                eof = true;
+                return EOF;
+            }
+            long start = System.nanoTime();
+            shard = Pipeline.await(pending.poll());
+            waitNanos += System.nanoTime() - start;
+            index = 0;
+            fill();
+        }
+        return shard.tokens[index++];
+    }
+
+    // lexing happens on the pool, all the reading thread spends on it is waiting for shards that aren't done yet
+    @Override
+    public long lexNanos() {
+        return waitNanos;
+    }
+
+    @Override
+    public int line() {
+        if (eof) {
+            // TokenReader counts the readLine that came back null as one more line
+            return lineBase + 1;
+        }
+        if (shard == null || index == 0) {
+            return lineBase;
+        }
+        return lineBase + shard.lineNumbers[index - 1];
+    }
+
+    @Override
+    public int column() {
+        if (shard == null || index == 0) {
+            return 0;
+        }
+        return shard.columns[index - 1];
+    }
+
+    @Override
+    public long charsRead() {
+        if (shard == null || index == 0) {
+            return charBase;
+        }
+        return charBase + shard.charsRead[index - 1];
+    }
+
+    @Override
+    public String fullLine() {
+        if (shard == null || index == 0) {
+            return null;
+        }
+        return shard.lineTexts[shard.lineNumbers[index - 1] - 1];
+    }
+
+    // AbstractReader throws and catches these to try one reading after another, so they have to stay cheap
+    @Override
+    public void throwAtPos(String msg, int offset) throws IOException {
+        throw new UnexpectedTokenException(msg, line(), column() + offset, fullLine(), peek().value);
+    }
+
+    @Override
+    public void close() throws IOException {
+        pool.shutdownNow();
+        in.close();
+        super.close();
+    }
+
+    private static class Shard {
+        Token[] tokens = new Token[1024];
+        int[] lineNumbers = new int[1024];
+        int[] columns = new int[1024];
+        int[] charsRead = new int[1024];
+        // by line within the shard, only lines with tokens on them are filled in
+        String[] lineTexts = new String[1024];
+        int size;
+        int lines;
+        long chars;
+        UnexpectedTokenException error;
+
+        void add(Token tk, int line, int column, long chars, String fullLine) {
+            if (size == tokens.length) {
+                tokens = Arrays.copyOf(tokens, size * 2);
+                lineNumbers = Arrays.copyOf(lineNumbers, size * 2);
+                columns = Arrays.copyOf(columns, size * 2);
+                charsRead = Arrays.copyOf(charsRead, size * 2);
+            }
+            tokens[size] = tk;
+            lineNumbers[size] = line;
+            columns[size] = column;
+            charsRead[size] = (int) chars;
+            size++;
+            if (line > lineTexts.length) {
+                lineTexts = Arrays.copyOf(lineTexts, Math.max(line, lineTexts.length * 2));
+            }
+            lineTexts[line - 1] = fullLine;
+        }
+    }
+
+}
@@ -1,5 +1,7 @@
 package xyz.wagyourtail.asmreader.token;
 
+import xyz.wagyourtail.asmreader.metrics.Metrics;
+
 import java.io.BufferedReader;
 import java.io.IOException;
 import java.io.Reader;
@@ -17,8 +19,13 @@ public class TokenReader implements AutoCloseable {
     private int column = 0;
     private String fullLine;
     private String current;
+    private int pos;
     private Token last;
     private Token next;
+    private Token keywordOf;
+    private Keyword keyword;
+    private long lexNanos;
+    private long charsRead;
 
     public TokenReader(Reader in) {
         if (in instanceof BufferedReader) {
@@ -29,87 +36,128 @@ public class TokenReader implements AutoCloseable {
     }
 
     protected Token readNext() throws IOException {
-        if (last != null) {
-            if (last.type == TokenType.EOF) {
-                throw new IllegalStateException("Cannot read next token after EOF");
-            }
-            column += last.value.length();
+        if (last != null && last.type == TokenType.EOF) {
+            throw new IllegalStateException("Cannot read next token after EOF");
+        }
+        if (!Metrics.enabled()) {
+            return lex();
         }
-        while (current == null || current.isBlank()) {
+        long start = System.nanoTime();
+        Token token = lex();
+        lexNanos += System.nanoTime() - start;
+        Metrics.count(Metrics.Counter.TOKENS, 1);
+        return token;
+    }
+
+    // nanos spent lexing so far, only counted while metrics are enabled
+    public long lexNanos() {
+        return lexNanos;
+    }
+
+    // where the last token read (popped or peeked) starts, 1 based line and 0 based column
+    public int line() {
+        return line;
+    }
+
+    public int column() {
+        return column;
+    }
+
+    public String fullLine() {
+        return fullLine;
+    }
+
+    // whole lines, including ones only peeked into so far
+    public long charsRead() {
+        return charsRead;
+    }
+
+    // works on an index into the current line, cutting each token off the front copied the rest of the
+    // line every time, which is quadratic for the long single line annotations and condy end up on
+    private Token lex() throws IOException {
+        while (true) {
+            if (current != null) {
+                while (pos < current.length() && Character.isWhitespace(current.charAt(pos))) {
+                    pos++;
+                }
+                if (pos < current.length()) {
+                    break;
+                }
+            }
             current = in.readLine();
             fullLine = current;
             line++;
+            pos = 0;
             column = 0;
             if (current == null) {
                 return new Token(null, TokenType.EOF);
             }
+            charsRead += current.length() + 1;
+            Metrics.count(Metrics.Counter.BYTES_IN, current.length() + 1);
         }
-        int l = current.length();
-        current = current.stripLeading();
-        column += l - current.length();
-        if (current.startsWith("\"")) {
+        column = pos;
+        if (current.startsWith("\"", pos)) {
             // read string
-            String ret = current.substring(1);
-            Matcher m = STRING_CHAR.matcher(ret);
-            if (!m.find()) {
-                throwAtPos("expected end of string");
+            int end = closingQuote(current, pos + 1, '"');
+            if (end == -1) {
+                throw new UnexpectedTokenException("expected end of string", line, column, fullLine, current.substring(pos));
             }
-            current = ret.substring(m.end());
-            return new Token(ret.substring(0, m.end() - 1), TokenType.STRING);
+            String ret = current.substring(pos + 1, end);
+            pos = end + 1;
+            return new Token(ret, TokenType.STRING);
         }
-        if (current.startsWith("'")) {
+        if (current.startsWith("'", pos)) {
             // read char
-            String ret = current.substring(1);
-            Matcher m = CHAR_CHAR.matcher(ret);
-            if (!m.find()) {
-                throwAtPos("expected end of char");
+            int end = closingQuote(current, pos + 1, '\'');
+            if (end == -1) {
+                throw new UnexpectedTokenException("expected end of char", line, column, fullLine, current.substring(pos));
             }
-            current = ret.substring(m.end());
-            return new Token(ret.substring(0, m.end() - 1), TokenType.CHAR);
+            String ret = current.substring(pos + 1, end);
+            pos = end + 1;
+            return new Token(ret, TokenType.CHAR);
         }
-        if (current.startsWith("//")) {
-            String ret = current;
-            current = null;
-            return new Token(ret.substring(2), TokenType.COMMENT);
+        if (current.startsWith("//", pos)) {
+            String ret = current.substring(pos + 2);
+            pos = current.length();
+            return new Token(ret, TokenType.COMMENT);
         }
-        if (current.startsWith("/*")) {
+        if (current.startsWith("/*", pos)) {
             // find */
-            int end = current.indexOf("*/");
+            int end = current.indexOf("*/", pos + 2);
             if (end == -1) {
-                throwAtPos("Currently don't support multiline comments!!!");
-            } else {
-                String ret = current.substring(0, end);
-                current = current.substring(end + 2);
-                return new Token(ret.substring(2), TokenType.COMMENT);
+                throw new UnexpectedTokenException("Currently don't support multiline comments!!!", line, column, fullLine, current.substring(pos));
             }
+            String ret = current.substring(pos + 2, end);
+            pos = end + 2;
+            return new Token(ret, TokenType.COMMENT);
+        }
+        // up to a space, a string/char or a comment, whichever comes first
+        int end = pos;
+        while (end < current.length()) {
+            char c = current.charAt(end);
+            if (c == ' ' || c == '"' || c == '\'' || c == '/' && end + 1 < current.length() && (current.charAt(end + 1) == '*' || current.charAt(end + 1) == '/')) {
+                break;
+            }
+            end++;
         }
-        int end = current.indexOf(' ');
-        String ret;
-        if (end == -1) {
-            ret = current;
-        } else {
-            ret = current.substring(0, end);
-        }
-        int hasQuote = ret.indexOf("\"");
-        if (hasQuote != -1) {
-            ret = ret.substring(0, hasQuote);
-        }
-        int hasChar = ret.indexOf("'");
-        if (hasChar != -1) {
-            ret = ret.substring(0, hasChar);
-        }
-        int hasComment2 = ret.indexOf("/*");
-        if (hasComment2 != -1) {
-            ret = ret.substring(0, hasComment2);
-        }
-        int hasComment = ret.indexOf("//");
-        if (hasComment != -1) {
-            ret = ret.substring(0, hasComment);
-        }
-        current = current.substring(ret.length());
+        String ret = current.substring(pos, end);
+        pos = end;
         return new Token(ret, TokenType.TOKEN);
     }
 
+    // index of the first quote that isn't escaped, same thing STRING_CHAR/CHAR_CHAR match without the regex
+    public static int closingQuote(String s, int from, char quote) {
+        for (int i = from; i < s.length(); i++) {
+            char c = s.charAt(i);
+            if (c == '\\') {
+                i++;
+            } else if (c == quote) {
+                return i;
+            }
+        }
+        return -1;
+    }
+
     public Token peek() throws IOException {
         if (next == null) next = readNext();
         return next;
@@ -155,6 +203,20 @@ public class TokenReader implements AutoCloseable {
         return predicate.test(peek());
     }
 
+    // what Keyword the next token is, if any. cached, a parse loop asks for every token it looks at
+    public Keyword peekKeyword() throws IOException {
+        Token tk = peek();
+        if (keywordOf != tk) {
+            keywordOf = tk;
+            keyword = switch (tk.type) {
+                case TOKEN -> Keyword.member(tk.value);
+                case COMMENT -> Keyword.comment(tk.value);
+                default -> null;
+            };
+        }
+        return keyword;
+    }
+
     public Token pop() throws IOException {
         if (next == null) next = readNext();
         Token ret = next;
@@ -164,9 +226,7 @@ public class TokenReader implements AutoCloseable {
     }
 
     public Token popNonComment() throws IOException {
-        while (peek().type == TokenType.COMMENT) {
-            pop();
-        }
+        skipComments();
         return pop();
     }
 
@@ -178,10 +238,64 @@ public class TokenReader implements AutoCloseable {
     }
 
     public Token popNonCommentIf(Predicate<Token> predicate) throws IOException {
+        skipComments();
+        return popIf(predicate);
+    }
+
+    // the same lookahead with fixed arguments instead of a Predicate, every reader probes through these with
+    // a different lambda otherwise and the call sites never get to inline them
+    public Token popIf(TokenType type) throws IOException {
+        if (peek().type == type) {
+            return pop();
+        }
+        return null;
+    }
+
+    public Token popIf(TokenType type, String value) throws IOException {
+        if (peekExpect(type, value)) {
+            return pop();
+        }
+        return null;
+    }
+
+    // find, not matches, like the patterns in AbstractReader are written for
+    public Token popIf(TokenType type, Pattern pattern) throws IOException {
+        Token tk = peek();
+        if (tk.type == type && pattern.matcher(tk.value).find()) {
+            return pop();
+        }
+        return null;
+    }
+
+    public Token popIf(Keyword keyword) throws IOException {
+        if (peekKeyword() == keyword) {
+            return pop();
+        }
+        return null;
+    }
+
+    // the keyword rules out most tokens before the pattern has to run
+    public Token popIf(Keyword keyword, Pattern pattern) throws IOException {
+        if (peekKeyword() == keyword && pattern.matcher(peek().value).find()) {
+            return pop();
+        }
+        return null;
+    }
+
+    public Token popNonCommentIf(TokenType type) throws IOException {
+        skipComments();
+        return popIf(type);
+    }
+
+    public Token popNonCommentIf(TokenType type, String value) throws IOException {
+        skipComments();
+        return popIf(type, value);
+    }
+
+    public void skipComments() throws IOException {
         while (peek().type == TokenType.COMMENT) {
             pop();
         }
-        return popIf(predicate);
     }
 
     public Token popExpect(TokenType type) throws IOException {
@@ -0,0 +1,220 @@
+package xyz.wagyourtail.asm.test;
+
+import org.objectweb.asm.*;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+
+import java.io.IOException;
+
+import static org.objectweb.asm.Opcodes.*;
+
+// pathological but valid classes, for seeing how the readers scale with the size of a class rather than
+// how they do on the tiny test classes. size means something different for every kind, see generate
+public class StressCorpus {
+    private static final String OBJECT = "java/lang/Object";
+    private static final Handle CONCAT = new Handle(H_INVOKESTATIC, "java/lang/invoke/StringConcatFactory", "makeConcatWithConstants", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/invoke/MethodType;Ljava/lang/String;[Ljava/lang/Object;)Ljava/lang/invoke/CallSite;", false);
+    private static final Handle NULL_CONSTANT = new Handle(H_INVOKESTATIC, "java/lang/invoke/ConstantBootstraps", "nullConstant", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;", false);
+    private static final Handle EXPLICIT_CAST = new Handle(H_INVOKESTATIC, "java/lang/invoke/ConstantBootstraps", "explicitCast", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;Ljava/lang/Object;)Ljava/lang/Object;", false);
+
+    public enum Kind {
+        // one method made of size add blocks, 6 bytes each so ~10900 gets close to the 64KB code limit
+        LONG_METHOD(10000),
+        // a TABLESWITCH with size entries spread over at most 64 targets
+        TABLESWITCH(15000),
+        // a LOOKUPSWITCH with size sparse (and negative) keys, 8 bytes per key caps it around 8000
+        LOOKUPSWITCH(7500),
+        // size fields and size methods
+        MEMBERS(5000),
+        // annotations nested size deep, each level with an array of annotations next to it
+        ANNOTATIONS(64),
+        // size string concat call sites, each with its own recipe
+        INDY(500),
+        // size LDCs of condy, every other one wrapping another condy
+        CONDY(500);
+
+        public final int defaultSize;
+
+        Kind(int defaultSize) {
+            this.defaultSize = defaultSize;
+        }
+    }
+
+    public static byte[] generate(Kind kind, int size) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_FRAMES | ClassWriter.COMPUTE_MAXS);
+        String name = "stress/" + kind.name().toLowerCase() + "/Stress" + size;
+        cw.visit(V17, ACC_PUBLIC | ACC_SUPER, name, null, OBJECT, null);
+        MethodVisitor init = cw.visitMethod(ACC_PUBLIC, "<init>", "()V", null, null);
+        init.visitCode();
+        init.visitVarInsn(ALOAD, 0);
+        init.visitMethodInsn(INVOKESPECIAL, OBJECT, "<init>", "()V", false);
+        init.visitInsn(RETURN);
+        init.visitMaxs(0, 0);
+        init.visitEnd();
+        switch (kind) {
+            case LONG_METHOD -> longMethod(cw, size);
+            case TABLESWITCH -> tableSwitch(cw, size);
+            case LOOKUPSWITCH -> lookupSwitch(cw, size);
+            case MEMBERS -> members(cw, size);
+            case ANNOTATIONS -> annotations(cw, size);
+            case INDY -> indy(cw, size);
+            case CONDY -> condy(cw, size);
+        }
+        cw.visitEnd();
+        return cw.toByteArray();
+    }
+
+    public static String javasm(Kind kind, int size) throws IOException {
+        return javasm(generate(kind, size), TextifierProfile.FULL);
+    }
+
+    public static String javasm(byte[] bytes, TextifierProfile profile) throws IOException {
+        ClassReader reader = new ClassReader(bytes);
+        return Main.classToTextify(e -> reader.accept(e, profile.readerFlags()), profile);
+    }
+
+    private static void longMethod(ClassWriter cw, int size) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "big", "(I)I", null, null);
+        mv.visitCode();
+        for (int i = 0; i < size; i++) {
+            mv.visitVarInsn(ILOAD, 0);
+            // alternate between negative and positive constants, and both push sizes
+            int value = (i & 1) == 0 ? -(i % 30000) - 1 : i % 100;
+            mv.visitIntInsn(value >= Byte.MIN_VALUE && value <= Byte.MAX_VALUE ? BIPUSH : SIPUSH, value);
+            mv.visitInsn(IADD);
+            mv.visitVarInsn(ISTORE, 0);
+        }
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void tableSwitch(ClassWriter cw, int size) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "table", "(I)I", null, null);
+        mv.visitCode();
+        Label[] targets = new Label[Math.min(size, 64)];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = new Label();
+        }
+        Label dflt = new Label();
+        Label[] labels = new Label[size];
+        for (int i = 0; i < size; i++) {
+            labels[i] = targets[i % targets.length];
+        }
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitTableSwitchInsn(-size / 2, -size / 2 + size - 1, dflt, labels);
+        for (int i = 0; i < targets.length; i++) {
+            mv.visitLabel(targets[i]);
+            mv.visitIntInsn(BIPUSH, i);
+            mv.visitInsn(IRETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void lookupSwitch(ClassWriter cw, int size) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "lookup", "(I)I", null, null);
+        mv.visitCode();
+        Label[] targets = new Label[Math.min(size, 64)];
+        for (int i = 0; i < targets.length; i++) {
+            targets[i] = new Label();
+        }
+        Label dflt = new Label();
+        int[] keys = new int[size];
+        Label[] labels = new Label[size];
+        for (int i = 0; i < size; i++) {
+            keys[i] = (i - size / 2) * 7919;
+            labels[i] = targets[i % targets.length];
+        }
+        mv.visitVarInsn(ILOAD, 0);
+        mv.visitLookupSwitchInsn(dflt, keys, labels);
+        for (int i = 0; i < targets.length; i++) {
+            mv.visitLabel(targets[i]);
+            mv.visitIntInsn(BIPUSH, i);
+            mv.visitInsn(IRETURN);
+        }
+        mv.visitLabel(dflt);
+        mv.visitInsn(ICONST_M1);
+        mv.visitInsn(IRETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void members(ClassWriter cw, int size) {
+        for (int i = 0; i < size; i++) {
+            cw.visitField(ACC_PRIVATE | (i % 3 == 0 ? ACC_STATIC | ACC_FINAL : 0), "field" + i, i % 2 == 0 ? "I" : "Ljava/lang/String;", null, i % 3 == 0 ? (i % 2 == 0 ? (Object) i : "value" + i) : null).visitEnd();
+            MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "method" + i, "(IJ)I", null, null);
+            mv.visitCode();
+            mv.visitVarInsn(ILOAD, 1);
+            mv.visitLdcInsn(i * 31);
+            mv.visitInsn(IXOR);
+            mv.visitInsn(IRETURN);
+            mv.visitMaxs(0, 0);
+            mv.visitEnd();
+        }
+    }
+
+    private static void annotations(ClassWriter cw, int size) {
+        AnnotationVisitor av = cw.visitAnnotation("Lstress/Nested;", true);
+        nest(av, size);
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC, "annotated", "(I)V", null, null);
+        nest(mv.visitAnnotation("Lstress/Nested;", false), size);
+        nest(mv.visitParameterAnnotation(0, "Lstress/Nested;", true), size / 2);
+        mv.visitCode();
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void nest(AnnotationVisitor av, int depth) {
+        av.visit("depth", depth);
+        av.visit("name", "level" + depth);
+        av.visitEnum("kind", "Ljava/lang/annotation/ElementType;", depth % 2 == 0 ? "METHOD" : "FIELD");
+        AnnotationVisitor array = av.visitArray("siblings");
+        for (int i = 0; i < 3; i++) {
+            AnnotationVisitor sibling = array.visitAnnotation(null, "Lstress/Leaf;");
+            sibling.visit("value", new int[]{depth, i});
+            sibling.visitEnd();
+        }
+        array.visitEnd();
+        if (depth > 0) {
+            nest(av.visitAnnotation("child", "Lstress/Nested;"), depth - 1);
+        }
+        av.visitEnd();
+    }
+
+    private static void indy(ClassWriter cw, int size) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "concat", "(ILjava/lang/String;)Ljava/lang/String;", null, null);
+        mv.visitCode();
+        for (int i = 0; i < size; i++) {
+            mv.visitVarInsn(ILOAD, 0);
+            mv.visitVarInsn(ALOAD, 1);
+            mv.visitInvokeDynamicInsn("makeConcatWithConstants", "(ILjava/lang/String;)Ljava/lang/String;", CONCAT, "\u0001:" + i + ":\u0001\u0002", "const\n" + i);
+            mv.visitVarInsn(ASTORE, 1);
+        }
+        mv.visitVarInsn(ALOAD, 1);
+        mv.visitInsn(ARETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+    private static void condy(ClassWriter cw, int size) {
+        MethodVisitor mv = cw.visitMethod(ACC_PUBLIC | ACC_STATIC, "constants", "()V", null, null);
+        mv.visitCode();
+        for (int i = 0; i < size; i++) {
+            ConstantDynamic constant = new ConstantDynamic("c" + i, "Ljava/lang/Object;", NULL_CONSTANT);
+            if ((i & 1) == 1) {
+                constant = new ConstantDynamic("cast" + i, "Ljava/lang/Object;", EXPLICIT_CAST, constant);
+            }
+            mv.visitLdcInsn(constant);
+            mv.visitInsn(POP);
+        }
+        mv.visitInsn(RETURN);
+        mv.visitMaxs(0, 0);
+        mv.visitEnd();
+    }
+
+}
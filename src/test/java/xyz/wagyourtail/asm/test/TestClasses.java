@@ -0,0 +1,76 @@
+package xyz.wagyourtail.asm.test;
+
+import org.objectweb.asm.ClassWriter;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.AbstractInsnNode;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.MethodNode;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Map;
+import java.util.jar.JarOutputStream;
+import java.util.zip.ZipEntry;
+
+// small classes built on the spot, for the tests that need a particular shape rather than one of the compiled Worlds
+final class TestClasses {
+
+    private TestClasses() {
+    }
+
+    // public class extending Object with the given methods, maxs computed
+    static ClassNode classNode(String name, MethodNode... methods) {
+        ClassNode node = new ClassNode();
+        node.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, name, null, "java/lang/Object", null);
+        node.methods.addAll(List.of(methods));
+        return node;
+    }
+
+    static byte[] classBytes(ClassNode node) {
+        ClassWriter cw = new ClassWriter(ClassWriter.COMPUTE_MAXS);
+        node.accept(cw);
+        return cw.toByteArray();
+    }
+
+    static byte[] classBytes(String name, MethodNode... methods) {
+        return classBytes(classNode(name, methods));
+    }
+
+    // public static, straight line code
+    static MethodNode method(String name, String descriptor, AbstractInsnNode... instructions) {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, name, descriptor, null, null);
+        for (AbstractInsnNode insn : instructions) {
+            method.instructions.add(insn);
+        }
+        return method;
+    }
+
+    // ()V methods that just return
+    static MethodNode[] voidMethods(String... names) {
+        MethodNode[] methods = new MethodNode[names.length];
+        for (int i = 0; i < names.length; i++) {
+            methods[i] = method(names[i], "()V", new InsnNode(Opcodes.RETURN));
+        }
+        return methods;
+    }
+
+    // ()I method returning the constant its opcode pushes
+    static MethodNode constantMethod(String name, int opcode) {
+        return method(name, "()I", new InsnNode(opcode), new InsnNode(Opcodes.IRETURN));
+    }
+
+    // entry names as they go in the jar, in the map's order
+    static void writeJar(Path jar, Map<String, byte[]> entries) throws IOException {
+        try (JarOutputStream out = new JarOutputStream(Files.newOutputStream(jar))) {
+            for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                out.putNextEntry(new ZipEntry(entry.getKey()));
+                out.write(entry.getValue());
+                out.closeEntry();
+            }
+        }
+    }
+
+}
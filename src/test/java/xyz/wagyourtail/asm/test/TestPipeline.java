@@ -0,0 +1,489 @@
+package xyz.wagyourtail.asm.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.dedup.DedupDisassembler;
+import xyz.wagyourtail.asmreader.file.ClassReader;
+import xyz.wagyourtail.asmreader.incremental.IncrementalDisassembler;
+import xyz.wagyourtail.asmreader.iofunction.IOSupplier;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.JarSink;
+import xyz.wagyourtail.asmreader.pipeline.MemoryGovernor;
+import xyz.wagyourtail.asmreader.pipeline.ParallelDisassembler;
+import xyz.wagyourtail.asmreader.pipeline.StreamFormat;
+import xyz.wagyourtail.asmreader.pipeline.Verifier;
+import xyz.wagyourtail.asmreader.token.TokenReader;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.io.StringReader;
+import java.io.StringWriter;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+import java.util.*;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.jar.JarOutputStream;
+import java.util.stream.Collectors;
+import java.util.stream.Stream;
+import java.util.jar.JarInputStream;
+import java.util.zip.CRC32;
+import java.util.zip.ZipEntry;
+import java.util.zip.ZipException;
+import java.util.zip.ZipFile;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.wagyourtail.asm.test.TestClasses.*;
+
+@TestInstance(value = TestInstance.Lifecycle.PER_CLASS)
+public class TestPipeline {
+
+    @Test
+    public void testJarSinkStored() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/Compressible", "compressible ".repeat(200).getBytes(StandardCharsets.UTF_8));
+        entries.put("a/Random", random(1, 4096));
+        entries.put("b/Empty", new byte[0]);
+        assertTrue(assertJarReadsBack(entries, 0).values().stream().allMatch(e -> e == ZipEntry.STORED));
+    }
+
+    @Test
+    public void testJarSinkDeflated() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        entries.put("a/Compressible", "compressible ".repeat(200).getBytes(StandardCharsets.UTF_8));
+        // doesn't shrink, goes in stored next to the deflated ones
+        entries.put("a/Random", random(2, 4096));
+        entries.put("b/Empty", new byte[0]);
+        entries.put("b/Unicode\u00e9", "\u00e9\u4e16".repeat(100).getBytes(StandardCharsets.UTF_8));
+        Map<String, Integer> methods = assertJarReadsBack(entries, 9);
+        assertEquals(ZipEntry.DEFLATED, (int) methods.get("a/Compressible.class"));
+        assertEquals(ZipEntry.STORED, (int) methods.get("a/Random.class"));
+    }
+
+    @Test
+    public void testJarSinkZip64Entries() throws IOException {
+        Map<String, byte[]> entries = new LinkedHashMap<>();
+        // past the 65535 entries the end of central directory record can count
+        for (int i = 0; i < 0x10000 + 10; i++) {
+            entries.put("e/C" + i, ("class " + i).getBytes(StandardCharsets.UTF_8));
+        }
+        assertJarReadsBack(entries, 1);
+    }
+
+    @Test
+    public void testJarSinkDuplicate() throws IOException {
+        JarSink sink = new JarSink(OutputStream.nullOutputStream(), 1);
+        sink.write("a/B", new byte[]{1, 2, 3});
+        assertThrows(ZipException.class, () -> sink.write("a/B", new byte[]{4, 5, 6}));
+    }
+
+    @Test
+    public void testVerifierFailure() {
+        // not a class file, reported against the entry with the exception type rather than thrown
+        Verifier.Check check = Verifier.verify(new ClassEntry("a/Broken", new byte[]{(byte) 0xCA, (byte) 0xFE, 0, 0}));
+        assertEquals("a/Broken", check.name());
+        assertNotNull(check.mismatch());
+        assertTrue(check.mismatch().startsWith("failed to disassemble: java.lang."), check.mismatch());
+    }
+
+    @Test
+    public void testMemoryGovernor() throws InterruptedException {
+        long max = 1L << 30;
+        try (MemoryGovernor governor = new MemoryGovernor(max)) {
+            // in flight input expands 32x, half the heap to start with
+            assertEquals(max / 2 / 32, governor.budget());
+            // between the water marks nothing moves
+            governor.onCollection(max * 6 / 10, max);
+            assertEquals(max / 2 / 32, governor.budget());
+            // grows by half while the heap stays empty, up to three quarters of it
+            governor.onCollection(max / 10, max);
+            assertEquals(max * 3 / 4 / 32, governor.budget());
+            governor.onCollection(max / 10, max);
+            assertEquals(max * 3 / 4 / 32, governor.budget());
+            // halves while it's full, down to 1mb
+            governor.onCollection(max * 9 / 10, max);
+            assertEquals(max * 3 / 8 / 32, governor.budget());
+            for (int i = 0; i < 20; i++) {
+                governor.onCollection(max * 9 / 10, max);
+            }
+            assertEquals(1 << 20, governor.budget());
+
+            // one item always gets in, however big
+            governor.acquire(10L << 20);
+            Thread waiting = new Thread(() -> {
+                try {
+                    governor.acquire(1);
+                    governor.release(1);
+                } catch (InterruptedException e) {
+                    throw new RuntimeException(e);
+                }
+            });
+            waiting.start();
+            waiting.join(200);
+            assertTrue(waiting.isAlive());
+            governor.release(10L << 20);
+            waiting.join(10000);
+            assertFalse(waiting.isAlive());
+        }
+    }
+
+    @Test
+    public void testParallelDisassembler() throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        for (int i = 1; i <= 9; i++) {
+            try (InputStream in = TestPipeline.class.getResourceAsStream("test" + i + "/World.class")) {
+                assertNotNull(in, "test" + i);
+                classes.add(in.readAllBytes());
+            }
+        }
+        classes.add(StressCorpus.generate(StressCorpus.Kind.MEMBERS, 500));
+        ExecutorService executor = Executors.newFixedThreadPool(4);
+        try {
+            for (TextifierProfile profile : List.of(TextifierProfile.FULL, TextifierProfile.COMPACT)) {
+                // threshold 1 splits every class that has a method
+                ParallelDisassembler split = new ParallelDisassembler(executor, 4, 1, profile);
+                ParallelDisassembler streamed = new ParallelDisassembler(executor, 1, 1, profile);
+                for (byte[] bytes : classes) {
+                    org.objectweb.asm.ClassReader reader = new org.objectweb.asm.ClassReader(bytes);
+                    String expected = Main.classToTextify(v -> reader.accept(v, profile.readerFlags()), profile);
+                    StringWriter streamedOut = new StringWriter();
+                    Main.classToTextify(v -> reader.accept(v, profile.readerFlags()), streamedOut, profile);
+                    assertEquals(expected, streamedOut.toString(), reader.getClassName());
+
+                    assertTrue(split.splits(bytes), reader.getClassName());
+                    assertEquals(expected, split.textify(bytes), reader.getClassName());
+                    StringWriter out = new StringWriter();
+                    split.textify(bytes, out);
+                    assertEquals(expected, out.toString(), reader.getClassName());
+
+                    assertFalse(streamed.splits(bytes));
+                    out = new StringWriter();
+                    streamed.textify(bytes, out);
+                    assertEquals(expected, out.toString(), reader.getClassName());
+                }
+            }
+        } finally {
+            executor.shutdown();
+        }
+    }
+
+    @Test
+    public void testIncrementalDisassembler() throws IOException {
+        Path dir = Files.createTempDirectory("incremental");
+        Path jar = dir.resolve("in.jar");
+        Path out = dir.resolve("out");
+        IncrementalDisassembler disassembler = new IncrementalDisassembler(2, TextifierProfile.FULL);
+        try {
+            Map<String, byte[]> entries = new LinkedHashMap<>();
+            entries.put("a/A.class", classBytes("a/A", voidMethods("one")));
+            entries.put("a/B.class", classBytes("a/B", voidMethods("one")));
+            entries.put("c/C.class", classBytes("c/C", voidMethods("one")));
+            // same class for a later release, next to the base one rather than on top of it
+            entries.put("META-INF/versions/11/a/A.class", classBytes("a/A", voidMethods("eleven")));
+            assertIncremental(entries, jar, out, disassembler, 4, 0, 0);
+            assertIncremental(entries, jar, out, disassembler, 0, 4, 0);
+
+            // modify A, remove B, add D
+            entries.put("a/A.class", classBytes("a/A", voidMethods("one", "two")));
+            entries.remove("a/B.class");
+            entries.put("d/D.class", classBytes("d/D", voidMethods("one")));
+            assertIncremental(entries, jar, out, disassembler, 2, 2, 1);
+            assertFalse(Files.exists(out.resolve("a/B.javasm")));
+
+            // rename C to E, the old output and its package directory go
+            entries.remove("c/C.class");
+            entries.put("e/E.class", classBytes("e/E", voidMethods("one")));
+            assertIncremental(entries, jar, out, disassembler, 1, 3, 1);
+            assertFalse(Files.exists(out.resolve("c")));
+
+            // touched but identical is still unchanged, an edited output is redone
+            Files.setLastModifiedTime(out.resolve("d/D.javasm"), FileTime.fromMillis(0));
+            Files.writeString(out.resolve("e/E.javasm"), "edited");
+            assertIncremental(entries, jar, out, disassembler, 1, 3, 0);
+
+            // two entries for one class
+            entries.put("x/Y.class", classBytes("a/A", voidMethods("one")));
+            writeJar(jar, entries);
+            try (ZipFile zip = new ZipFile(jar.toFile())) {
+                assertThrows(IOException.class, () -> disassembler.disassemble(zip, out));
+            }
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testDisassembleToDirectory() throws IOException {
+        List<ClassEntry> classes = List.of(
+            new ClassEntry("a/A", classBytes("a/A", voidMethods("one"))),
+            new ClassEntry("META-INF/versions/11/a/A", classBytes("a/A", voidMethods("eleven"))),
+            new ClassEntry("b/B", classBytes("b/B", voidMethods("one")))
+        );
+        Path dir = Files.createTempDirectory("todirectory");
+        try {
+            ClassStreams.disassembleToDirectory(entries(classes), dir, TextifierProfile.FULL, 2);
+            assertTrue(Files.readString(dir.resolve("a/A.javasm")).contains(" one()V"));
+            assertTrue(Files.readString(dir.resolve("META-INF/versions/11/a/A.javasm")).contains(" eleven()V"));
+            assertTrue(Files.exists(dir.resolve("b/B.javasm")));
+
+            // two entries for one class
+            List<ClassEntry> duplicate = new ArrayList<>(classes);
+            duplicate.add(new ClassEntry("x/Y", classBytes("b/B", voidMethods("two"))));
+            assertThrows(IOException.class, () -> ClassStreams.disassembleToDirectory(entries(duplicate), dir, TextifierProfile.FULL, 2));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    private static IOSupplier<ClassEntry> entries(List<ClassEntry> classes) {
+        Iterator<ClassEntry> it = classes.iterator();
+        return () -> it.hasNext() ? it.next() : null;
+    }
+
+    private void assertIncremental(Map<String, byte[]> entries, Path jar, Path out, IncrementalDisassembler disassembler, long written, long skipped, long removed) throws IOException {
+        writeJar(jar, entries);
+        IncrementalDisassembler.Result result;
+        try (ZipFile zip = new ZipFile(jar.toFile())) {
+            result = disassembler.disassemble(zip, out);
+        }
+        assertEquals(written, result.written(), result.toString());
+        assertEquals(skipped, result.skipped(), result.toString());
+        assertEquals(removed, result.removed(), result.toString());
+        Set<Path> expected = new HashSet<>();
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            org.objectweb.asm.ClassReader reader = new org.objectweb.asm.ClassReader(entry.getValue());
+            String prefix = entry.getKey().startsWith("META-INF/") ? entry.getKey().substring(0, entry.getKey().indexOf('/', "META-INF/versions/".length()) + 1) : "";
+            Path file = out.resolve(prefix + reader.getClassName() + ".javasm");
+            expected.add(file);
+            assertEquals(Main.classToTextify(v -> reader.accept(v, 0)), Files.readString(file), entry.getKey());
+        }
+        try (Stream<Path> files = Files.walk(out)) {
+            assertEquals(expected, files.filter(Files::isRegularFile).filter(e -> e.toString().endsWith(".javasm")).collect(Collectors.toSet()));
+        }
+    }
+
+    @Test
+    public void testDedupRoundTrip() throws IOException {
+        List<ClassEntry> classes = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            try (InputStream in = TestPipeline.class.getResourceAsStream("test" + i + "/World.class")) {
+                byte[] bytes = in.readAllBytes();
+                classes.add(new ClassEntry(new org.objectweb.asm.ClassReader(bytes).getClassName(), bytes));
+            }
+        }
+        // three empty bodies between them
+        classes.add(new ClassEntry("d/A", classBytes("d/A", voidMethods("one", "two"))));
+        classes.add(new ClassEntry("d/B", classBytes("d/B", voidMethods("three"))));
+        // a later release of d/A, next to the base one rather than on top of it
+        classes.add(new ClassEntry("META-INF/versions/11/d/A", classBytes("d/A", voidMethods("one", "eleven"))));
+        Path dir = Files.createTempDirectory("dedup");
+        try {
+            // left over from an earlier run
+            Path stale = dir.resolve(DedupDisassembler.BODIES).resolve("0".repeat(32) + ".javasm");
+            Files.createDirectories(stale.getParent());
+            Files.writeString(stale, "    RETURN\n");
+
+            DedupDisassembler disassembler = new DedupDisassembler(2, TextifierProfile.FULL, 1);
+            DedupDisassembler.Result result = disassembler.disassemble(() -> entries(classes), dir);
+            assertEquals(classes.size(), result.classes());
+            assertTrue(result.bodies() > 0, result.toString());
+            assertTrue(result.refs() >= 2 * result.bodies(), result.toString());
+            assertFalse(Files.exists(stale));
+            try (Stream<Path> bodies = Files.list(dir.resolve(DedupDisassembler.BODIES))) {
+                assertEquals(result.bodies(), bodies.count());
+            }
+
+            long refs = 0;
+            for (ClassEntry entry : classes) {
+                Path file = dir.resolve(entry.name() + ".javasm");
+                String text = Files.readString(file);
+                refs += text.lines().filter(e -> e.startsWith("    BODYREF ")).count();
+                ClassNode node = new ClassNode();
+                try (TokenReader tokens = new TokenReader(Files.newBufferedReader(file))) {
+                    ClassReader reader = new ClassReader(tokens);
+                    reader.setBodies(DedupDisassembler.bodies(dir));
+                    reader.accept(node);
+                }
+                org.objectweb.asm.ClassReader original = new org.objectweb.asm.ClassReader(entry.bytes());
+                assertEquals(Main.classToTextify(v -> original.accept(v, 0)), Main.classToTextify(node::accept), entry.name());
+            }
+            assertEquals(result.refs(), refs);
+
+            // two entries for one class
+            List<ClassEntry> duplicate = new ArrayList<>(classes);
+            duplicate.add(new ClassEntry("x/Y", classBytes("d/B", voidMethods("three"))));
+            assertThrows(IOException.class, () -> disassembler.disassemble(() -> entries(duplicate), dir));
+        } finally {
+            try (Stream<Path> files = Files.walk(dir)) {
+                for (Path file : files.sorted(Comparator.reverseOrder()).toList()) {
+                    Files.delete(file);
+                }
+            }
+        }
+    }
+
+    @Test
+    public void testStreamFrames() throws IOException {
+        List<byte[]> classes = streamClasses();
+        ByteArrayOutputStream frames = new ByteArrayOutputStream();
+        DataOutputStream dos = new DataOutputStream(frames);
+        for (byte[] bytes : classes) {
+            dos.writeInt(bytes.length);
+            dos.write(bytes);
+        }
+        String text = assertStreamRoundTrip(classes, frames.toByteArray(), StreamFormat.FRAMES);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClassStreams.assemble(new StringReader(text), out, StreamFormat.FRAMES, TestPipeline.class.getClassLoader(), TextifierProfile.FULL, 2);
+        DataInputStream in = new DataInputStream(new ByteArrayInputStream(out.toByteArray()));
+        List<byte[]> assembled = new ArrayList<>();
+        while (in.available() > 0) {
+            assembled.add(in.readNBytes(in.readInt()));
+        }
+        assertAssembled(classes, assembled);
+        // a frame cut short
+        ByteArrayInputStream truncated = new ByteArrayInputStream(Arrays.copyOf(frames.toByteArray(), 100));
+        assertThrows(IOException.class, () -> ClassStreams.disassemble(truncated, new StringWriter(), StreamFormat.FRAMES, TextifierProfile.FULL, 2));
+    }
+
+    @Test
+    public void testStreamJar() throws IOException {
+        List<byte[]> classes = streamClasses();
+        ByteArrayOutputStream jar = new ByteArrayOutputStream();
+        try (JarOutputStream out = new JarOutputStream(jar)) {
+            // not classes, skipped
+            out.putNextEntry(new ZipEntry("a/"));
+            out.putNextEntry(new ZipEntry("a/readme.txt"));
+            out.write("not a class".getBytes(StandardCharsets.UTF_8));
+            for (int i = 0; i < classes.size(); i++) {
+                out.putNextEntry(new ZipEntry("c/C" + i + ".class"));
+                out.write(classes.get(i));
+            }
+        }
+        String text = assertStreamRoundTrip(classes, jar.toByteArray(), StreamFormat.JAR);
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        ClassStreams.assemble(new StringReader(text), out, StreamFormat.JAR, TestPipeline.class.getClassLoader(), TextifierProfile.FULL, 2);
+        List<byte[]> assembled = new ArrayList<>();
+        try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(out.toByteArray()))) {
+            ZipEntry entry;
+            while ((entry = in.getNextEntry()) != null) {
+                byte[] bytes = in.readAllBytes();
+                assertEquals(new org.objectweb.asm.ClassReader(bytes).getClassName() + ".class", entry.getName());
+                assembled.add(bytes);
+            }
+        }
+        assertAssembled(classes, assembled);
+    }
+
+    private static List<byte[]> streamClasses() throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            try (InputStream in = TestPipeline.class.getResourceAsStream("test" + i + "/World.class")) {
+                classes.add(in.readAllBytes());
+            }
+        }
+        classes.add(StressCorpus.generate(StressCorpus.Kind.INDY, 100));
+        return classes;
+    }
+
+    // stdin to stdout is every class's text, in input order
+    private static String assertStreamRoundTrip(List<byte[]> classes, byte[] input, StreamFormat format) throws IOException {
+        StringBuilder expected = new StringBuilder();
+        for (byte[] bytes : classes) {
+            expected.append(Main.classToTextify(v -> new org.objectweb.asm.ClassReader(bytes).accept(v, 0)));
+        }
+        StringWriter out = new StringWriter();
+        ClassStreams.disassemble(new ByteArrayInputStream(input), out, format, TextifierProfile.FULL, 2);
+        assertEquals(expected.toString(), out.toString());
+        return out.toString();
+    }
+
+    private static void assertAssembled(List<byte[]> classes, List<byte[]> assembled) throws IOException {
+        assertEquals(classes.size(), assembled.size());
+        for (int i = 0; i < classes.size(); i++) {
+            byte[] original = classes.get(i);
+            byte[] bytes = assembled.get(i);
+            assertEquals(Main.classToTextify(v -> new org.objectweb.asm.ClassReader(original).accept(v, 0)), Main.classToTextify(v -> new org.objectweb.asm.ClassReader(bytes).accept(v, 0)));
+        }
+    }
+
+    // compression method of each entry by name
+    private Map<String, Integer> assertJarReadsBack(Map<String, byte[]> entries, int level) throws IOException {
+        Map<String, Integer> methods = new HashMap<>();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        JarSink sink = new JarSink(out, level);
+        for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+            sink.write(entry.getKey(), entry.getValue());
+        }
+        sink.finish();
+        byte[] jar = out.toByteArray();
+
+        Path file = Files.createTempFile("jarsink", ".jar");
+        try {
+            Files.write(file, jar);
+            try (ZipFile zip = new ZipFile(file.toFile())) {
+                assertEquals(entries.size(), zip.size());
+                List<String> names = new ArrayList<>();
+                zip.stream().forEach(e -> names.add(e.getName()));
+                assertEquals(entries.keySet().stream().map(e -> e + ".class").toList(), names);
+                for (Map.Entry<String, byte[]> entry : entries.entrySet()) {
+                    ZipEntry zipEntry = zip.getEntry(entry.getKey() + ".class");
+                    assertEquals(crc(entry.getValue()), zipEntry.getCrc());
+                    methods.put(zipEntry.getName(), zipEntry.getMethod());
+                    try (InputStream in = zip.getInputStream(zipEntry)) {
+                        assertArrayEquals(entry.getValue(), in.readAllBytes());
+                    }
+                }
+            }
+        } finally {
+            Files.delete(file);
+        }
+
+        // local headers only, the way a streaming reader sees the jar
+        try (JarInputStream in = new JarInputStream(new ByteArrayInputStream(jar))) {
+            Iterator<Map.Entry<String, byte[]>> expected = entries.entrySet().iterator();
+            ZipEntry zipEntry;
+            while ((zipEntry = in.getNextEntry()) != null) {
+                Map.Entry<String, byte[]> entry = expected.next();
+                assertEquals(entry.getKey() + ".class", zipEntry.getName());
+                byte[] bytes = in.readAllBytes();
+                assertArrayEquals(entry.getValue(), bytes);
+                assertEquals(crc(entry.getValue()), zipEntry.getCrc());
+            }
+            assertFalse(expected.hasNext());
+        }
+        return methods;
+    }
+
+    private static byte[] random(long seed, int size) {
+        byte[] bytes = new byte[size];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private static long crc(byte[] bytes) {
+        CRC32 crc = new CRC32();
+        crc.update(bytes);
+        return crc.getValue();
+    }
+
+}
@@ -1,23 +1,49 @@
 package xyz.wagyourtail.asm.test;
 
+import jdk.jfr.Recording;
+import jdk.jfr.consumer.RecordedEvent;
+import jdk.jfr.consumer.RecordingFile;
+import org.junit.jupiter.api.Tag;
 import org.junit.jupiter.api.Test;
 import org.junit.jupiter.api.TestInstance;
 import org.objectweb.asm.ClassVisitor;
 import org.objectweb.asm.MethodVisitor;
 import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.tree.ClassNode;
 import org.objectweb.asm.util.ASMifier;
 import org.objectweb.asm.util.TraceClassVisitor;
 import xyz.wagyourtail.asmreader.DeterministicTextifier;
 import xyz.wagyourtail.asmreader.file.ClassReader;
 import xyz.wagyourtail.asmreader.iofunction.IOConsumer;
+import xyz.wagyourtail.asmreader.jfr.AssembleClassEvent;
+import xyz.wagyourtail.asmreader.jfr.AssembleMethodEvent;
+import xyz.wagyourtail.asmreader.metrics.Metrics;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.Verifier;
+import xyz.wagyourtail.asmreader.stats.JarStats;
+import xyz.wagyourtail.asmreader.token.ShardedTokenReader;
+import xyz.wagyourtail.asmreader.token.Token;
 import xyz.wagyourtail.asmreader.token.TokenReader;
+import xyz.wagyourtail.asmreader.token.TokenType;
 
 import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.PrintWriter;
 import java.io.StringReader;
+import java.lang.management.ManagementFactory;
+import java.net.URI;
+import java.nio.file.FileSystem;
+import java.nio.file.FileSystems;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Map;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
 
 @TestInstance(value = TestInstance.Lifecycle.PER_CLASS)
 public class TestReader {
@@ -150,6 +176,215 @@ public class TestReader {
         assertEquals(originalAsm, recompiledAsm);
     }
 
+    @Test
+    public void testStress() throws IOException {
+        for (StressCorpus.Kind kind : StressCorpus.Kind.values()) {
+            byte[] bytes = StressCorpus.generate(kind, kind.defaultSize);
+            String original = classToTextify(e -> new org.objectweb.asm.ClassReader(bytes).accept(e, 0));
+            String recompiled = classToTextify(e -> compileJavasm(original, e));
+            assertEquals(original, recompiled, kind.name());
+            // asmifier original and recompiled
+            String originalAsm = classToAsmify(e -> new org.objectweb.asm.ClassReader(bytes).accept(e, 0));
+            String recompiledAsm = classToAsmify(e -> compileJavasm(original, e));
+            assertEquals(originalAsm, recompiledAsm, kind.name());
+        }
+    }
+
+    // wall clock, so it's off unless asked for (-Ptiming), StressBenchmark tracks the same thing under jmh
+    @Test
+    @Tag("timing")
+    public void testStressScaling() throws IOException {
+        for (StressCorpus.Kind kind : StressCorpus.Kind.values()) {
+            String small = StressCorpus.javasm(kind, kind.defaultSize / 8);
+            String large = StressCorpus.javasm(kind, kind.defaultSize);
+            // best of a few runs so jit and gc don't decide it, quadratic would be 8x the time per char here
+            long smallTime = bestParseTime(small);
+            long largeTime = bestParseTime(large);
+            double ratio = (double) largeTime / smallTime * small.length() / large.length();
+            assertTrue(ratio < 4, kind.name() + " parse time grows " + ratio + "x faster than its input");
+        }
+    }
+
+    @Test
+    public void testStressAllocationScaling() throws IOException {
+        // what testStressScaling checks, on allocated bytes instead of time, which machine load doesn't move.
+        // anything copying the rest of its input per token would allocate 8x per char on the larger one
+        for (StressCorpus.Kind kind : StressCorpus.Kind.values()) {
+            String small = StressCorpus.javasm(kind, kind.defaultSize / 8);
+            String large = StressCorpus.javasm(kind, kind.defaultSize);
+            double ratio = allocatedPerChar(large) / allocatedPerChar(small);
+            assertTrue(ratio < 2, kind.name() + " allocates " + ratio + "x more per char than at an eighth of the size");
+        }
+    }
+
+    @Test
+    public void testJdkClasses() throws IOException {
+        // one class for every kind of mismatch the jdkRoundTrip task turned up
+        FileSystem jrt = FileSystems.getFileSystem(URI.create("jrt:/"));
+        for (String name : List.of(
+                "java.base/java/io/Console", // native methods with throws
+                "java.base/java/util/Collection", // abstract methods with signatures
+                "java.base/java/lang/Double", // negative exponents
+                "java.base/java/lang/Deprecated", // default=value
+                "java.base/java/lang/Thread$UncaughtExceptionHandler", // access flags after an annotation
+                "java.base/java/util/AbstractList", // ACC_SUPER on an abstract class
+                "java.base/java/lang/constant/ConstantDesc", // PERMITTEDSUBCLASS
+                "java.base/java/util/Collections$1", // OUTERCLASS
+                "java.desktop/java/beans/BeanProperty", // default={}
+                "jdk.jdeps/com/sun/tools/jdeps/JdepsConfiguration", // string concat recipe ending in .class
+                "jdk.jfr/jdk/jfr/internal/jfc/model/Constraint" // record component with a signature
+        )) {
+            byte[] bytes = Files.readAllBytes(jrt.getPath("/modules/" + name + ".class"));
+            Verifier.Check check = Verifier.verify(new ClassEntry(name, bytes));
+            assertNull(check.mismatch(), name);
+        }
+    }
+
+    @Test
+    public void testAllocationBudget() throws IOException {
+        // bytes allocated per char of javasm lexed and parsed into a visitor that does nothing, budgets are
+        // about 1.5x what it took when they were recorded, so a regression in the reader shows up here
+        for (int i = 1; i <= 8; i++) {
+            String path = "test" + i + "/World.class";
+            String asm = classToTextify(e -> readInClass(path, e));
+            assertAllocatedPerChar(path, asm, 128);
+        }
+        for (StressCorpus.Kind kind : StressCorpus.Kind.values()) {
+            String asm = StressCorpus.javasm(kind, kind.defaultSize / 4);
+            assertAllocatedPerChar(kind.name(), asm, switch (kind) {
+                case LONG_METHOD -> 180;
+                case TABLESWITCH -> 120;
+                case LOOKUPSWITCH -> 104;
+                case MEMBERS -> 110;
+                case ANNOTATIONS -> 200;
+                case INDY -> 36;
+                case CONDY -> 24;
+            });
+        }
+    }
+
+    @Test
+    public void testMetrics() throws IOException {
+        String original = classToTextify(e -> readInClass("test2/World.class", e));
+        Metrics.reset();
+        Metrics.setEnabled(true);
+        Metrics.Snapshot snapshot;
+        try {
+            compileJavasm(original, new ClassNode());
+            snapshot = Metrics.snapshot();
+        } finally {
+            Metrics.setEnabled(false);
+            Metrics.reset();
+        }
+        assertEquals(1, snapshot.get(Metrics.Counter.CLASSES_ASSEMBLED));
+        assertEquals(7, snapshot.get(Metrics.Counter.METHODS_ASSEMBLED));
+        assertEquals(original.length(), snapshot.get(Metrics.Counter.BYTES_IN));
+        assertTrue(snapshot.get(Metrics.Counter.TOKENS) > 0);
+        assertEquals(35, snapshot.instructions().values().stream().mapToLong(Long::longValue).sum());
+        assertEquals(1, snapshot.phases().get(Metrics.Phase.LEX).count());
+        assertEquals(1, snapshot.phases().get(Metrics.Phase.PARSE).count());
+    }
+
+    @Test
+    public void testJfrEvents() throws IOException {
+        String original = classToTextify(e -> readInClass("test2/World.class", e));
+        Path file = Files.createTempFile("asmreader", ".jfr");
+        try (Recording recording = new Recording()) {
+            recording.enable(AssembleClassEvent.class).withoutThreshold();
+            recording.enable(AssembleMethodEvent.class).withoutThreshold();
+            recording.start();
+            compileJavasm(original, new ClassNode());
+            recording.stop();
+            recording.dump(file);
+            List<RecordedEvent> events = RecordingFile.readAllEvents(file);
+            List<RecordedEvent> classes = events.stream().filter(e -> e.getEventType().getName().equals("xyz.wagyourtail.asmreader.AssembleClass")).toList();
+            assertEquals(1, classes.size());
+            assertEquals("xyz/wagyourtail/asm/test/test2/World", classes.get(0).getString("className"));
+            assertEquals(7, classes.get(0).getInt("methods"));
+            assertEquals(original.length(), classes.get(0).getLong("inputSize"));
+            assertEquals(7, events.stream().filter(e -> e.getEventType().getName().equals("xyz.wagyourtail.asmreader.AssembleMethod")).count());
+        } finally {
+            Files.delete(file);
+        }
+    }
+
+    @Test
+    public void testJarStats() throws IOException {
+        byte[] bytes = TestReader.class.getResourceAsStream("test2/World.class").readAllBytes();
+        JarStats.ClassStats stats = JarStats.analyze(new ClassEntry(null, bytes));
+        // same counts the metrics come up with when the javasm is read back in
+        assertEquals(35, Arrays.stream(stats.opcodes()).sum());
+        assertEquals(7, stats.codeSizes().length);
+        assertTrue(Arrays.stream(stats.codeSizes()).allMatch(e -> e > 0));
+        // a record, toString/hashCode/equals go through ObjectMethods
+        assertEquals(Map.of("indy java/lang/runtime/ObjectMethods.bootstrap", 3), stats.bootstraps());
+    }
+
+    @Test
+    public void testShardedTokenReader() throws IOException {
+        StringBuilder sb = new StringBuilder();
+        for (StressCorpus.Kind kind : StressCorpus.Kind.values()) {
+            sb.append(StressCorpus.javasm(kind, kind.defaultSize / 8));
+        }
+        String asm = sb.toString();
+        // small shards so there are plenty of them, and more of them than the window
+        try (TokenReader expected = new TokenReader(new StringReader(asm)); TokenReader actual = new ShardedTokenReader(new StringReader(asm), 3, 4096)) {
+            Token tk;
+            do {
+                tk = expected.pop();
+                Token sharded = actual.pop();
+                assertEquals(tk.type, sharded.type);
+                assertEquals(tk.value, sharded.value);
+                if (tk.type != TokenType.EOF) {
+                    assertEquals(expected.line(), actual.line());
+                    assertEquals(expected.column(), actual.column());
+                    assertEquals(expected.charsRead(), actual.charsRead());
+                    assertEquals(expected.fullLine(), actual.fullLine());
+                }
+            } while (tk.type != TokenType.EOF);
+            assertEquals(expected.line(), actual.line());
+            assertEquals(expected.charsRead(), actual.charsRead());
+        }
+        // lexing errors come out where they would have, with the line counted from the start of the input
+        String broken = asm + "LDC \"unterminated\n";
+        int line = (int) broken.lines().count();
+        try (TokenReader reader = new ShardedTokenReader(broken, 3, 4096)) {
+            TokenReader.UnexpectedTokenException e = assertThrows(TokenReader.UnexpectedTokenException.class, () -> {
+                while (reader.pop().type != TokenType.EOF) {
+                }
+            });
+            assertEquals(line, e.line);
+            assertEquals(4, e.column);
+            assertEquals("LDC \"unterminated", e.fullLine);
+        }
+    }
+
+    private void assertAllocatedPerChar(String name, String asm, int budget) throws IOException {
+        double perChar = allocatedPerChar(asm);
+        assertTrue(perChar <= budget, name + " allocated " + String.format("%.1f", perChar) + " bytes per char, budget is " + budget);
+    }
+
+    private double allocatedPerChar(String asm) throws IOException {
+        com.sun.management.ThreadMXBean threads = (com.sun.management.ThreadMXBean) ManagementFactory.getThreadMXBean();
+        // least of a few runs, the first ones also allocate for class loading and jit
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long before = threads.getCurrentThreadAllocatedBytes();
+            compileJavasm(asm, new NoopClassVisitor());
+            best = Math.min(best, threads.getCurrentThreadAllocatedBytes() - before);
+        }
+        return (double) best / asm.length();
+    }
+
+    private long bestParseTime(String asm) throws IOException {
+        long best = Long.MAX_VALUE;
+        for (int i = 0; i < 10; i++) {
+            long start = System.nanoTime();
+            compileJavasm(asm, new ClassNode());
+            best = Math.min(best, System.nanoTime() - start);
+        }
+        return best;
+    }
 
     private static class FixASMIfier extends ASMifier {
         public FixASMIfier() {
@@ -0,0 +1,573 @@
+package xyz.wagyourtail.asm.test;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.TestInstance;
+import org.objectweb.asm.ConstantDynamic;
+import org.objectweb.asm.Handle;
+import org.objectweb.asm.Label;
+import org.objectweb.asm.Opcodes;
+import org.objectweb.asm.Type;
+import org.objectweb.asm.tree.ClassNode;
+import org.objectweb.asm.tree.InsnNode;
+import org.objectweb.asm.tree.LdcInsnNode;
+import org.objectweb.asm.tree.MethodNode;
+import org.objectweb.asm.util.TraceClassVisitor;
+import xyz.wagyourtail.asmreader.DeterministicTextifier;
+import xyz.wagyourtail.asmreader.FormatCache;
+import xyz.wagyourtail.asmreader.Main;
+import xyz.wagyourtail.asmreader.TextifierProfile;
+import xyz.wagyourtail.asmreader.diff.ClassSet;
+import xyz.wagyourtail.asmreader.diff.JarDiff;
+import xyz.wagyourtail.asmreader.diff.UnifiedDiff;
+import xyz.wagyourtail.asmreader.fingerprint.ClassFingerprint;
+import xyz.wagyourtail.asmreader.fingerprint.FingerprintClassVisitor;
+import xyz.wagyourtail.asmreader.fingerprint.FingerprintMethodVisitor;
+import xyz.wagyourtail.asmreader.fingerprint.MemberFingerprint;
+import xyz.wagyourtail.asmreader.grep.InsnPattern;
+import xyz.wagyourtail.asmreader.file.ClassReader;
+import xyz.wagyourtail.asmreader.file.MethodReader;
+import xyz.wagyourtail.asmreader.grep.PatternMethodVisitor;
+import xyz.wagyourtail.asmreader.index.JavasmIndex;
+import xyz.wagyourtail.asmreader.pipeline.ClassEntry;
+import xyz.wagyourtail.asmreader.pipeline.ClassStreams;
+import xyz.wagyourtail.asmreader.pipeline.ParallelDisassembler;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.PrintWriter;
+import java.io.RandomAccessFile;
+import java.io.StringWriter;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.*;
+import java.util.stream.Collectors;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.*;
+import static xyz.wagyourtail.asm.test.TestClasses.*;
+
+@TestInstance(value = TestInstance.Lifecycle.PER_CLASS)
+public class TestTools {
+
+    @Test
+    public void testUnifiedDiffHunks() {
+        assertEquals("@@ -1,3 +1,4 @@\n a\n b\n+x\n c\n", UnifiedDiff.diff("a\nb\nc\n", "a\nb\nx\nc\n", null));
+        assertEquals("@@ -1,3 +1,2 @@ m()V\n a\n-b\n c\n", UnifiedDiff.diff("a\nb\nc\n", "a\nc\n", "m()V"));
+        assertEquals("@@ -1,3 +1,3 @@\n a\n-b\n+x\n c\n", UnifiedDiff.diff("a\nb\nc\n", "a\nx\nc\n", null));
+        // a whole method added or removed
+        assertEquals("@@ -0,0 +1,2 @@\n+a\n+b\n", UnifiedDiff.diff("", "a\nb\n", null));
+        assertEquals("@@ -1,2 +0,0 @@\n-a\n-b\n", UnifiedDiff.diff("a\nb\n", "", null));
+    }
+
+    @Test
+    public void testUnifiedDiffContext() {
+        String lines = numbers(Map.of());
+        // 5 lines apart, within twice the context, share a hunk
+        assertEquals("""
+            @@ -2,13 +2,13 @@
+             2
+             3
+             4
+            -5
+            +five
+             6
+             7
+             8
+             9
+             10
+            -11
+            +eleven
+             12
+             13
+             14
+            """, UnifiedDiff.diff(lines, numbers(Map.of(5, "five", 11, "eleven")), null));
+        // 9 lines apart don't
+        assertEquals("""
+            @@ -2,7 +2,7 @@
+             2
+             3
+             4
+            -5
+            +five
+             6
+             7
+             8
+            @@ -12,7 +12,7 @@
+             12
+             13
+             14
+            -15
+            +fifteen
+             16
+             17
+             18
+            """, UnifiedDiff.diff(lines, numbers(Map.of(5, "five", 15, "fifteen")), null));
+    }
+
+    @Test
+    public void testUnifiedDiffIdentical() {
+        String lines = numbers(Map.of());
+        assertEquals("", UnifiedDiff.diff(lines, lines, null));
+        assertEquals("", UnifiedDiff.diff("", "", null));
+        assertTrue(UnifiedDiff.edits(UnifiedDiff.lines(lines), UnifiedDiff.lines(lines)).stream().allMatch(e -> e.op() == ' '));
+    }
+
+    @Test
+    public void testUnifiedDiffMinimal() {
+        Random random = new Random(36);
+        for (int i = 0; i < 200; i++) {
+            List<String> a = randomLines(random);
+            List<String> b = randomLines(random);
+            List<UnifiedDiff.Edit> edits = UnifiedDiff.edits(a, b);
+            // both sides come back out of the edits
+            assertEquals(a, edits.stream().filter(e -> e.op() != '+').map(UnifiedDiff.Edit::line).toList());
+            assertEquals(b, edits.stream().filter(e -> e.op() != '-').map(UnifiedDiff.Edit::line).toList());
+            // and nothing is kept that a longest common subsequence would have
+            assertEquals(lcs(a, b), edits.stream().filter(e -> e.op() == ' ').count());
+        }
+    }
+
+    @Test
+    public void testJarDiff() throws IOException {
+        Path dir = Files.createTempDirectory("jardiff");
+        Path oldJar = dir.resolve("old.jar");
+        Path newJar = dir.resolve("new.jar");
+        try {
+            writeJar(oldJar, new TreeMap<>(Map.of(
+                "a/A.class", classBytes("a/A", constantMethod("changed", Opcodes.ICONST_1), constantMethod("same", Opcodes.ICONST_0)),
+                "a/Same.class", classBytes("a/Same", constantMethod("same", Opcodes.ICONST_0)),
+                "b/Removed.class", classBytes("b/Removed")
+            )));
+            writeJar(newJar, new TreeMap<>(Map.of(
+                "a/A.class", classBytes("a/A", constantMethod("changed", Opcodes.ICONST_2), constantMethod("same", Opcodes.ICONST_0)),
+                "a/Same.class", classBytes("a/Same", constantMethod("same", Opcodes.ICONST_0)),
+                "c/Added.class", classBytes("c/Added")
+            )));
+            StringWriter out = new StringWriter();
+            JarDiff.Result result;
+            try (ClassSet oldSet = ClassSet.open(oldJar); ClassSet newSet = ClassSet.open(newJar)) {
+                result = new JarDiff(2, TextifierProfile.FULL).diff(oldSet, newSet, out);
+            }
+            assertEquals(4, result.classes());
+            assertEquals(1, result.changed());
+            assertEquals(1, result.added());
+            assertEquals(1, result.removed());
+            assertEquals(1, result.methods());
+            String text = out.toString();
+            assertTrue(text.startsWith("--- a/a/A.javasm\n+++ b/a/A.javasm\n@@ "), text);
+            assertTrue(text.contains(" @@ changed()I\n"), text);
+            assertTrue(text.contains("\n-    ICONST_1\n+    ICONST_2\n"), text);
+            assertFalse(text.contains("same()I"), text);
+            assertTrue(text.contains("Only in old: b/Removed\n"), text);
+            assertTrue(text.contains("Only in new: c/Added\n"), text);
+            // classes come out in name order
+            assertTrue(text.indexOf("a/A.javasm") < text.indexOf("b/Removed") && text.indexOf("b/Removed") < text.indexOf("c/Added"), text);
+        } finally {
+            Files.deleteIfExists(oldJar);
+            Files.deleteIfExists(newJar);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testJarDiffMethodOrder() throws IOException {
+        Path dir = Files.createTempDirectory("jardiff");
+        Path oldJar = dir.resolve("old.jar");
+        Path newJar = dir.resolve("new.jar");
+        try {
+            writeJar(oldJar, Map.of("a/A.class", classBytes("a/A", constantMethod("one", Opcodes.ICONST_1), constantMethod("two", Opcodes.ICONST_2))));
+            writeJar(newJar, Map.of("a/A.class", classBytes("a/A", constantMethod("two", Opcodes.ICONST_2), constantMethod("one", Opcodes.ICONST_1))));
+            StringWriter out = new StringWriter();
+            JarDiff.Result result;
+            try (ClassSet oldSet = ClassSet.open(oldJar); ClassSet newSet = ClassSet.open(newJar)) {
+                result = new JarDiff(1, TextifierProfile.FULL).diff(oldSet, newSet, out);
+            }
+            // no method changed, the order did
+            assertEquals(1, result.changed());
+            assertEquals(0, result.methods());
+            String text = out.toString();
+            assertTrue(text.startsWith("--- a/a/A.javasm\n+++ b/a/A.javasm\n@@ "), text);
+            assertTrue(text.contains(" @@ method order\n"), text);
+            assertTrue(text.contains("\n-one()I\n") || text.contains("\n-two()I\n"), text);
+        } finally {
+            Files.deleteIfExists(oldJar);
+            Files.deleteIfExists(newJar);
+            Files.delete(dir);
+        }
+    }
+
+    @Test
+    public void testInsnPatternCompile() {
+        InsnPattern pattern = InsnPattern.compile("ALOAD 0;  getfield  * \n...; ARETURN");
+        List<InsnPattern.Step> steps = pattern.steps();
+        assertEquals(4, steps.size());
+        assertTrue(steps.get(0).matches(Opcodes.ALOAD, "0"));
+        assertFalse(steps.get(0).matches(Opcodes.ALOAD, "1"));
+        assertFalse(steps.get(0).matches(Opcodes.ILOAD, "0"));
+        // opcodes are case insensitive, a lone * takes any operands
+        assertNull(steps.get(1).operands());
+        assertTrue(steps.get(1).matches(Opcodes.GETFIELD, null));
+        assertSame(InsnPattern.Step.GAP, steps.get(2));
+        assertTrue(steps.get(3).matches(Opcodes.ARETURN, ""));
+
+        // opcode globs
+        InsnPattern.Step ifs = InsnPattern.compile("IF_ICMP??").steps().get(0);
+        assertEquals(6, ifs.opcodes().cardinality());
+        assertTrue(ifs.matches(Opcodes.IF_ICMPEQ, "L0"));
+        assertFalse(ifs.matches(Opcodes.IFEQ, "L0"));
+        assertFalse(ifs.matches(Opcodes.IF_ACMPEQ, "L0"));
+        // operand globs match the whole operand text
+        InsnPattern.Step get = InsnPattern.compile("INVOKE* java/util/Map.get *").steps().get(0);
+        assertTrue(get.matches(Opcodes.INVOKEINTERFACE, "java/util/Map.get (Ljava/lang/Object;)Ljava/lang/Object; (itf)"));
+        assertFalse(get.matches(Opcodes.INVOKEINTERFACE, "java/util/Map.getOrDefault (Ljava/lang/Object;Ljava/lang/Object;)Ljava/lang/Object; (itf)"));
+        assertFalse(get.matches(Opcodes.GETFIELD, "java/util/Map.get (Ljava/lang/Object;)Ljava/lang/Object; (itf)"));
+
+        // gaps at either end don't do anything
+        assertEquals(1, InsnPattern.compile("...; *; ...").steps().size());
+        assertThrows(IllegalArgumentException.class, () -> InsnPattern.compile("NOTANOPCODE"));
+        assertThrows(IllegalArgumentException.class, () -> InsnPattern.compile("...; ..."));
+    }
+
+    @Test
+    public void testPatternMethodVisitor() {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC, "get", "(Ljava/lang/Object;)Ljava/lang/Object;", null, null);
+        Label start = new Label();
+        method.visitLabel(start);
+        method.visitLineNumber(10, start);
+        method.visitVarInsn(Opcodes.ALOAD, 0);
+        method.visitFieldInsn(Opcodes.GETFIELD, "a/A", "map", "Ljava/util/Map;");
+        method.visitVarInsn(Opcodes.ALOAD, 1);
+        Label next = new Label();
+        method.visitLabel(next);
+        method.visitLineNumber(11, next);
+        method.visitMethodInsn(Opcodes.INVOKEINTERFACE, "java/util/Map", "get", "(Ljava/lang/Object;)Ljava/lang/Object;", true);
+        method.visitLdcInsn(new ConstantDynamic("nothing", "Ljava/lang/Object;", new Handle(Opcodes.H_INVOKESTATIC, "java/lang/invoke/ConstantBootstraps", "nullConstant", "(Ljava/lang/invoke/MethodHandles$Lookup;Ljava/lang/String;Ljava/lang/Class;)Ljava/lang/Object;", false)));
+        method.visitInsn(Opcodes.POP);
+        method.visitLdcInsn(Type.getType("La/A;"));
+        method.visitInsn(Opcodes.POP);
+        method.visitInsn(Opcodes.ARETURN);
+
+        // glob operands, and a gap. a match is on the line of its last instruction
+        assertEquals(List.of(11), match("ALOAD 0; GETFIELD a/A.map : *; ...; ARETURN", method));
+        assertEquals(List.of(11), match("INVOKEINTERFACE java/util/Map.get *", method));
+        // opcode only
+        assertEquals(List.of(10, 10), match("ALOAD", method));
+        assertEquals(List.of(11, 11), match("POP", method));
+        // misses: not consecutive, wrong operand
+        assertEquals(List.of(), match("ALOAD 1; ARETURN", method));
+        assertEquals(List.of(), match("ALOAD 2", method));
+        assertEquals(List.of(), match("INVOKEINTERFACE java/util/Map.put *", method));
+        // constants are matched against the text the textifier prints for them
+        // ; separates instructions, so descriptors go in with a ?
+        assertEquals(List.of(11), match("LDC La/A?.class", method));
+        assertEquals(List.of(11), match("LDC // constant dynamic:*nothing*ConstantBootstraps.nullConstant*", method));
+        assertEquals(List.of(), match("LDC *explicitCast*", method));
+        String printed = methodText(method);
+        assertTrue(printed.contains("ConstantBootstraps.nullConstant"), printed);
+    }
+
+    private static List<Integer> match(String pattern, MethodNode method) {
+        PatternMethodVisitor visitor = new PatternMethodVisitor(InsnPattern.compile(pattern));
+        method.accept(visitor);
+        assertEquals(visitor.lines().size(), visitor.matches());
+        return visitor.lines();
+    }
+
+    private static String methodText(MethodNode method) {
+        ClassNode owner = new ClassNode();
+        owner.visit(Opcodes.V17, Opcodes.ACC_PUBLIC, "a/A", null, "java/lang/Object", null);
+        StringBuilder sb = new StringBuilder();
+        for (Object line : ParallelDisassembler.textifyMethod(owner, method, TextifierProfile.FULL)) {
+            sb.append(line);
+        }
+        return sb.toString();
+    }
+
+    @Test
+    public void testFormatCache() throws IOException {
+        List<byte[]> classes = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            try (InputStream in = TestTools.class.getResourceAsStream("test" + i + "/World.class")) {
+                classes.add(in.readAllBytes());
+            }
+        }
+        for (StressCorpus.Kind kind : StressCorpus.Kind.values()) {
+            classes.add(StressCorpus.generate(kind, kind.defaultSize / 8));
+        }
+        // size 0 skips the maps, every lookup is formatted from scratch
+        FormatCache uncached = new FormatCache(0);
+        // shared across all the classes and small enough to be evicting all the time
+        FormatCache small = new FormatCache(4);
+        FormatCache large = new FormatCache(FormatCache.DEFAULT_MAX_SIZE);
+        for (TextifierProfile profile : TextifierProfile.values()) {
+            for (byte[] bytes : classes) {
+                String expected = textify(bytes, uncached, profile);
+                assertEquals(expected, textify(bytes, small, profile));
+                assertEquals(expected, textify(bytes, large, profile));
+                // and a second time, out of the warm cache
+                assertEquals(expected, textify(bytes, large, profile));
+            }
+        }
+
+        FormatCache cache = new FormatCache(2);
+        String a = cache.className(Type.getType("La/A;"));
+        assertEquals("a.A", a);
+        assertSame(a, cache.className(Type.getType("La/A;")));
+        assertEquals("a.B", cache.className(Type.getType("La/B;")));
+        // the third name finds the map full and drops it
+        assertEquals("a.C", cache.className(Type.getType("La/C;")));
+        String again = cache.className(Type.getType("La/A;"));
+        assertEquals(a, again);
+        assertNotSame(a, again);
+        assertSame(cache.access(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC), cache.access(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+        assertEquals("public static ", cache.access(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC));
+        // even straight after the same lookup
+        assertNotSame(uncached.className(Type.getType("La/A;")), uncached.className(Type.getType("La/A;")));
+    }
+
+    @Test
+    public void testCompactProfileRoundTrip() throws Exception {
+        List<byte[]> classes = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            try (InputStream in = TestTools.class.getResourceAsStream("test" + i + "/World.class")) {
+                classes.add(in.readAllBytes());
+            }
+        }
+        // plenty of branch targets to need frames at
+        classes.add(StressCorpus.generate(StressCorpus.Kind.TABLESWITCH, 200));
+        classes.add(StressCorpus.generate(StressCorpus.Kind.LOOKUPSWITCH, 200));
+        classes.add(StressCorpus.generate(StressCorpus.Kind.LONG_METHOD, 2000));
+        ClassLoader loader = TestTools.class.getClassLoader();
+        for (byte[] bytes : classes) {
+            String name = new org.objectweb.asm.ClassReader(bytes).getClassName();
+            String compact = textify(bytes, FormatCache.DEFAULT, TextifierProfile.COMPACT);
+            for (String line : compact.split("\n")) {
+                String insn = line.strip();
+                assertFalse(insn.startsWith("FRAME ") || insn.startsWith("LINENUMBER ") || insn.startsWith("LOCALVARIABLE "), name + ": " + line);
+            }
+            byte[] assembled = assembleCompact(compact, loader);
+            // labels only the dropped debug info pointed at are gone after one trip, past that it's a fixpoint
+            String reassembled = textify(assembled, FormatCache.DEFAULT, TextifierProfile.COMPACT);
+            assertEquals(withoutLabels(compact).size(), withoutLabels(reassembled).size(), name);
+            assertEquals(reassembled, textify(assembleCompact(reassembled, loader), FormatCache.DEFAULT, TextifierProfile.COMPACT), name);
+            // frames are back wherever the original had them
+            boolean framed = textify(bytes, FormatCache.DEFAULT, TextifierProfile.FULL).contains("    FRAME ");
+            assertEquals(framed, textify(assembled, FormatCache.DEFAULT, TextifierProfile.FULL).contains("    FRAME "), name);
+            // and the jvm accepts them, initializing the class verifies it
+            Class.forName(name.replace('/', '.'), true, new ClassLoader(loader) {
+                @Override
+                protected Class<?> loadClass(String className, boolean resolve) throws ClassNotFoundException {
+                    if (className.equals(name.replace('/', '.'))) {
+                        synchronized (getClassLoadingLock(className)) {
+                            Class<?> c = findLoadedClass(className);
+                            return c != null ? c : defineClass(className, assembled, 0, assembled.length);
+                        }
+                    }
+                    return super.loadClass(className, resolve);
+                }
+            });
+        }
+    }
+
+    @Test
+    public void testFingerprintLabels() {
+        for (TextifierProfile profile : TextifierProfile.values()) {
+            MemberFingerprint fingerprint = FingerprintMethodVisitor.fingerprint(branchy(Opcodes.ICONST_1, Opcodes.IFLE, false, false), profile);
+            // label objects made in another order get the same L0, L1... by first use
+            assertEquals(fingerprint, FingerprintMethodVisitor.fingerprint(branchy(Opcodes.ICONST_1, Opcodes.IFLE, true, false), profile));
+            // and so do the ones a ClassReader makes from offsets, in a class where other code comes first
+            ClassFingerprint read = FingerprintClassVisitor.fingerprint(classBytes("f/A", branchy(Opcodes.ICONST_1, Opcodes.IFLE, false, false)), profile);
+            MethodNode before = branchy(Opcodes.ICONST_2, Opcodes.IFGE, false, true);
+            before.name = "before";
+            ClassFingerprint shifted = FingerprintClassVisitor.fingerprint(classBytes("f/A", before, branchy(Opcodes.ICONST_1, Opcodes.IFLE, true, false)), profile);
+            assertEquals(fingerprint.body(), read.methods().get(0).body(), profile.name());
+            assertEquals(read.methods().get(0), shifted.methods().get(1), profile.name());
+            assertEquals(read.header(), shifted.header(), profile.name());
+        }
+    }
+
+    @Test
+    public void testFingerprintChanges() {
+        for (TextifierProfile profile : TextifierProfile.values()) {
+            byte[] base = classBytes("f/A", branchy(Opcodes.ICONST_1, Opcodes.IFLE, false, false));
+            ClassFingerprint fingerprint = FingerprintClassVisitor.fingerprint(base, profile);
+            assertEquals(fingerprint, FingerprintClassVisitor.fingerprint(base, profile));
+            // a changed constant, a changed jump and a jump to the other label
+            for (MethodNode changed : List.of(branchy(Opcodes.ICONST_2, Opcodes.IFLE, false, false), branchy(Opcodes.ICONST_1, Opcodes.IFGE, false, false), branchy(Opcodes.ICONST_1, Opcodes.IFLE, false, true))) {
+                byte[] bytes = classBytes("f/A", changed);
+                ClassFingerprint other = FingerprintClassVisitor.fingerprint(bytes, profile);
+                assertNotEquals(fingerprint.methods().get(0).body(), other.methods().get(0).body(), profile.name());
+                assertNotEquals(fingerprint.methods().get(0).fingerprint(), other.methods().get(0).fingerprint(), profile.name());
+                assertNotEquals(fingerprint.fingerprint(), other.fingerprint(), profile.name());
+                assertEquals(fingerprint.header(), other.header(), profile.name());
+                // the text differs too, fingerprints stand in for it
+                assertNotEquals(textify(base, FormatCache.DEFAULT, profile), textify(bytes, FormatCache.DEFAULT, profile));
+            }
+        }
+    }
+
+    // static int m(int x) { if (x <= 0) return 0; return C; }, with a line number and a local to tell the profiles apart
+    private static MethodNode branchy(int constant, int jump, boolean reverseLabels, boolean jumpToStart) {
+        MethodNode method = new MethodNode(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC, "m", "(I)I", null, null);
+        Label start, negative, end;
+        if (reverseLabels) {
+            end = new Label();
+            negative = new Label();
+            start = new Label();
+        } else {
+            start = new Label();
+            negative = new Label();
+            end = new Label();
+        }
+        method.visitCode();
+        method.visitLabel(start);
+        method.visitLineNumber(1, start);
+        method.visitVarInsn(Opcodes.ILOAD, 0);
+        method.visitJumpInsn(jump, jumpToStart ? start : negative);
+        method.visitInsn(constant);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitLabel(negative);
+        method.visitFrame(Opcodes.F_SAME, 0, null, 0, null);
+        method.visitInsn(Opcodes.ICONST_0);
+        method.visitInsn(Opcodes.IRETURN);
+        method.visitLabel(end);
+        method.visitLocalVariable("x", "I", null, start, end, 0);
+        method.visitMaxs(1, 1);
+        method.visitEnd();
+        return method;
+    }
+
+    @Test
+    public void testJavasmIndex() throws IOException {
+        List<ClassEntry> classes = new ArrayList<>();
+        for (int i = 1; i <= 8; i++) {
+            try (InputStream in = TestTools.class.getResourceAsStream("test" + i + "/World.class")) {
+                classes.add(new ClassEntry("test" + i + "/World.class", in.readAllBytes()));
+            }
+        }
+        // multi byte chars, offsets are in bytes not chars
+        String value = "h\u00e9llo \u4e16\u754c";
+        ClassNode strings = classNode("i/Strings", method("value", "()Ljava/lang/String;", new LdcInsnNode(value), new InsnNode(Opcodes.ARETURN)));
+        strings.visitField(Opcodes.ACC_PUBLIC | Opcodes.ACC_STATIC | Opcodes.ACC_FINAL, "CONSTANT", "Ljava/lang/String;", null, value);
+        classes.add(new ClassEntry("i/Strings.class", classBytes(strings)));
+        Path dir = Files.createTempDirectory("javasmindex");
+        try {
+            for (int workers : new int[] { 1, 4 }) {
+                Path file = dir.resolve("out" + workers + ".javasm");
+                Iterator<ClassEntry> source = classes.iterator();
+                long size = JavasmIndex.write(() -> source.hasNext() ? source.next() : null, file, TextifierProfile.FULL, workers);
+                assertEquals(Files.size(file), size);
+                assertTrue(Files.exists(JavasmIndex.indexFile(file)));
+                try (JavasmIndex index = JavasmIndex.open(file)) {
+                    StringBuilder all = new StringBuilder();
+                    for (ClassEntry entry : classes) {
+                        assertIndexed(index, entry.bytes());
+                        all.append(index.text(new org.objectweb.asm.ClassReader(entry.bytes()).getClassName()));
+                    }
+                    // classes come out in order, back to back
+                    assertEquals(Files.readString(file), all.toString());
+                    assertNull(index.text("i/Missing"));
+                    assertNull(index.entry("i/Missing"));
+                    assertThrows(IllegalArgumentException.class, () -> index.reader("i/Missing"));
+                }
+                // the index outliving a shorter rewrite of its file
+                try (RandomAccessFile raf = new RandomAccessFile(file.toFile(), "rw")) {
+                    raf.setLength(size / 2);
+                }
+                try (JavasmIndex index = JavasmIndex.open(file)) {
+                    assertThrows(IOException.class, () -> index.text("i/Strings"));
+                }
+            }
+        } finally {
+            try (var files = Files.list(dir)) {
+                for (Path path : files.toList()) {
+                    Files.delete(path);
+                }
+            }
+            Files.delete(dir);
+        }
+    }
+
+    private static void assertIndexed(JavasmIndex index, byte[] bytes) throws IOException {
+        ClassFingerprint fingerprint = FingerprintClassVisitor.fingerprint(bytes, TextifierProfile.FULL);
+        String name = fingerprint.name();
+        assertEquals(textify(bytes, FormatCache.DEFAULT, TextifierProfile.FULL), index.text(name));
+        // the whole class, assembled straight from its slice
+        ClassNode node = new ClassNode();
+        ClassReader.accept(index, name, node);
+        byte[] assembled = ClassStreams.write(node, Main.classWriter(TextifierProfile.FULL.writerFlags(), TestTools.class.getClassLoader()));
+        assertEquals(fingerprint, FingerprintClassVisitor.fingerprint(assembled, TextifierProfile.FULL));
+        Set<String> keys = new HashSet<>();
+        keys.add(name);
+        for (MemberFingerprint field : fingerprint.fields()) {
+            String key = JavasmIndex.fieldKey(name, field.name(), field.descriptor());
+            keys.add(key);
+            ClassNode members = new ClassNode();
+            ClassReader.accept(index, key, members);
+            assertNull(members.name, key);
+            assertEquals(1, members.fields.size(), key);
+            assertEquals(field.name(), members.fields.get(0).name, key);
+            assertEquals(field.descriptor(), members.fields.get(0).desc, key);
+        }
+        for (MemberFingerprint method : fingerprint.methods()) {
+            String key = JavasmIndex.methodKey(name, method.name(), method.descriptor());
+            keys.add(key);
+            ClassNode members = new ClassNode();
+            ClassReader.accept(index, key, members);
+            assertNull(members.name, key);
+            assertEquals(0, members.fields.size(), key);
+            assertEquals(1, members.methods.size(), key);
+            assertEquals(method, FingerprintMethodVisitor.fingerprint(members.methods.get(0), TextifierProfile.FULL), key);
+            MethodNode[] read = new MethodNode[1];
+            MethodReader.accept(index, key, (access, methodName, descriptor, signature, exceptions) -> read[0] = new MethodNode(access, methodName, descriptor, signature, exceptions));
+            assertEquals(method, FingerprintMethodVisitor.fingerprint(read[0], TextifierProfile.FULL), key);
+        }
+        for (String key : keys) {
+            assertNotNull(index.entry(key), key);
+        }
+    }
+
+    private static byte[] assembleCompact(String text, ClassLoader loader) throws IOException {
+        ClassNode node = new ClassNode();
+        Main.compileJavasm(text, node);
+        return ClassStreams.write(node, Main.classWriter(TextifierProfile.COMPACT.writerFlags(), loader));
+    }
+
+    private static List<String> withoutLabels(String text) {
+        return text.lines().filter(line -> !line.matches(" +L\\d+")).toList();
+    }
+
+    private static String textify(byte[] bytes, FormatCache cache, TextifierProfile profile) {
+        StringWriter sw = new StringWriter();
+        PrintWriter pw = new PrintWriter(sw);
+        new org.objectweb.asm.ClassReader(bytes).accept(new TraceClassVisitor(null, new DeterministicTextifier(cache, profile), pw), profile.readerFlags());
+        pw.flush();
+        return sw.toString();
+    }
+
+    // 1..20, one per line, with some of them replaced
+    private static String numbers(Map<Integer, String> replaced) {
+        return IntStream.rangeClosed(1, 20).mapToObj(i -> replaced.getOrDefault(i, Integer.toString(i)) + "\n").collect(Collectors.joining());
+    }
+
+    // few distinct lines, so there's plenty in common and plenty of ways to line it up
+    private static List<String> randomLines(Random random) {
+        List<String> lines = new ArrayList<>();
+        int size = random.nextInt(30);
+        for (int i = 0; i < size; i++) {
+            lines.add(Character.toString('a' + random.nextInt(4)));
+        }
+        return lines;
+    }
+
+    private static long lcs(List<String> a, List<String> b) {
+        int[][] table = new int[a.size() + 1][b.size() + 1];
+        for (int i = a.size() - 1; i >= 0; i--) {
+            for (int j = b.size() - 1; j >= 0; j--) {
+                table[i][j] = a.get(i).equals(b.get(j)) ? table[i + 1][j + 1] + 1 : Math.max(table[i + 1][j], table[i][j + 1]);
+            }
+        }
+        return table[0][0];
+    }
+
+}